@@ -0,0 +1,82 @@
+package bench;
+
+import graph.AlternativePathSearch;
+import graph.CompactGraph;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.CsvNetworkLoader;
+
+/**
+ * Measures the latency of finding the k shortest loopless paths, ranked by
+ * stops and by interchanges, cycling through the same random pairs of
+ * connected stations.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar
+ * AlternativePathBenchmark -p network=<csv file | number of stations> -p
+ * k=1,5,10 -p budget=<ms>}, where a number of stations generates a synthetic
+ * network, and a budget above 0 bounds the time of every query.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlternativePathBenchmark {
+	// number of pairs of stations the search cycles through
+	private static final int PAIRS = 256;
+
+	@Param("10000")
+	public String network;
+
+	@Param({ "1", "3", "10" })
+	public int k;
+
+	@Param({ "HOPS", "INTERCHANGES" })
+	public AlternativePathSearch.Ranking ranking;
+
+	@Param("0")
+	public long budget;
+
+	private CompactGraph graph;
+	private final int[] starts = new int[PAIRS];
+	private final int[] ends = new int[PAIRS];
+	private long maxNanos;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = CsvNetworkLoader.load(NetworkGenerator.csv(network, false));
+		maxNanos = budget > 0 ? budget * 1000000 : Long.MAX_VALUE;
+
+		// only pairs with a path between them are worth measuring
+		Random random = new Random(42);
+		for (int q = 0; q < PAIRS; q++) {
+			do {
+				starts[q] = random.nextInt(graph.stationCount());
+				ends[q] = random.nextInt(graph.stationCount());
+			} while (starts[q] == ends[q] || !graph.isConnected(starts[q], ends[q]));
+		}
+	}
+
+	@Benchmark
+	public int[][] paths() {
+		int q = next++ & (PAIRS - 1);
+		return AlternativePathSearch.local().paths(graph, starts[q], ends[q], k, ranking, Long.MAX_VALUE, maxNanos);
+	}
+}
@@ -0,0 +1,148 @@
+package bench;
+
+import graph.BreadthFirstSearch;
+import graph.CompactGraph;
+import graph.ContractionHierarchy;
+import graph.ContractionSearch;
+import graph.NetworkSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.CsvNetworkLoader;
+
+/**
+ * Measures what a contraction hierarchy costs to precompute and what it
+ * saves: the time taken to build it on a pool of the given number of
+ * threads, the time taken to write it to a snapshot and read it back, and
+ * the time taken by searches over it against plain and bidirectional
+ * breadth-first searches over the same random pairs of stations.
+ *
+ * Before measuring, the shortcuts and memory the hierarchy adds and the
+ * stations every search expands on average are printed, as none of them
+ * depend on timing.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar
+ * ContractionBenchmark -p network=<csv file | number of stations> -p
+ * threads=1,4}, where a number of stations generates a synthetic network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContractionBenchmark {
+	// number of pairs of stations every search cycles through
+	private static final int PAIRS = 1024;
+
+	@Param("10000")
+	public String network;
+
+	@Param("1")
+	public int threads;
+
+	private CompactGraph graph;
+	private ContractionHierarchy hierarchy;
+	private ForkJoinPool pool;
+	private String snapshot;
+	private final int[] starts = new int[PAIRS];
+	private final int[] ends = new int[PAIRS];
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = CsvNetworkLoader.load(NetworkGenerator.csv(network, false));
+		pool = new ForkJoinPool(threads);
+		hierarchy = new ContractionHierarchy(graph, pool);
+		File file = File.createTempFile("network", ".snapshot");
+		file.deleteOnExit();
+		snapshot = file.getPath();
+		NetworkSnapshot.write(snapshot, graph, null, hierarchy);
+
+		Random random = new Random(42);
+		for (int q = 0; q < PAIRS; q++) {
+			starts[q] = random.nextInt(graph.stationCount());
+			ends[q] = random.nextInt(graph.stationCount());
+		}
+		System.out.printf("%n%d stations, %d lines, %d segments and shortcuts, %d shortcuts, %d KiB%n",
+				graph.stationCount(), graph.lineCount(), hierarchy.edgeCount(), hierarchy.shortcutCount(),
+				hierarchy.footprint() / 1024);
+		printExpanded();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public ContractionHierarchy build() {
+		return new ContractionHierarchy(graph, pool);
+	}
+
+	@Benchmark
+	public void snapshotWrite() throws IOException {
+		NetworkSnapshot.write(snapshot, graph, null, hierarchy);
+	}
+
+	@Benchmark
+	public NetworkSnapshot snapshotRead() throws IOException {
+		return new NetworkSnapshot(snapshot);
+	}
+
+	@Benchmark
+	public int[] breadthFirst() {
+		int q = next++ & (PAIRS - 1);
+		return BreadthFirstSearch.local().path(graph, starts[q], ends[q]);
+	}
+
+	@Benchmark
+	public int[] bidirectional() {
+		int q = next++ & (PAIRS - 1);
+		return BreadthFirstSearch.local().bidirectionalPath(graph, starts[q], ends[q]);
+	}
+
+	@Benchmark
+	public int[] hierarchy() {
+		int q = next++ & (PAIRS - 1);
+		return ContractionSearch.local().path(hierarchy, starts[q], ends[q]);
+	}
+
+	/*
+	 * Prints the stations every search expands on average.
+	 */
+	private void printExpanded() {
+		BreadthFirstSearch breadthFirst = BreadthFirstSearch.local();
+		ContractionSearch contraction = ContractionSearch.local();
+		long plain = 0;
+		long bidirectional = 0;
+		long upward = 0;
+		for (int q = 0; q < PAIRS; q++) {
+			breadthFirst.path(graph, starts[q], ends[q]);
+			plain += breadthFirst.lastExpanded();
+			breadthFirst.bidirectionalPath(graph, starts[q], ends[q]);
+			bidirectional += breadthFirst.lastExpanded();
+			contraction.path(hierarchy, starts[q], ends[q]);
+			upward += contraction.lastExpanded();
+		}
+		System.out.printf("expanded per query: bfs %.1f, bidirectional %.1f, hierarchy %.1f%n", (double) plain / PAIRS,
+				(double) bidirectional / PAIRS, (double) upward / PAIRS);
+	}
+}
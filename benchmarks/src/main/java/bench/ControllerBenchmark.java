@@ -0,0 +1,171 @@
+package bench;
+
+import graph.CompactGraph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.Controller;
+import mtr.CsvNetworkLoader;
+import mtr.InstrumentedController;
+import mtr.WorkingController;
+
+/**
+ * Benchmarks every kind of controller query, reporting the throughput and
+ * the average time per operation, and with {@code -prof gc} the allocation
+ * rate, the bytes allocated per operation and the collections run.
+ *
+ * Paths are searched for with the route cache disabled, so that searches
+ * rather than cache lookups are measured. Near pairs of stations are a few
+ * stops apart on one line, and far pairs about as far apart as any in the
+ * network. Every benchmark cycles through its own pairs or lines. Queries are
+ * measured on a plain controller, and with {@code metrics} on an
+ * instrumented one, to show the overhead of recording metrics.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar ControllerBenchmark
+ * -p network=<csv file | number of stations> -prof gc}, where a number of
+ * stations, from 50 to 5 million, generates a synthetic MTR-like network.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+	// number of pairs of stations every path benchmark cycles through
+	private static final int PAIRS = 64;
+	// stops between the stations of near pairs
+	private static final int NEAR = 3;
+
+	@Param("10000")
+	public String network;
+
+	@Param({ "false", "true" })
+	public boolean metrics;
+
+	private Controller controller;
+	private String[][] near;
+	private String[][] far;
+	private String[] lines;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		int stations = network.matches("\\d+") ? Integer.parseInt(network) : -1;
+		if (stations != -1 && (stations < 50 || stations > 5000000)) {
+			throw new IllegalArgumentException("Networks are generated with 50 to 5000000 stations");
+		}
+		String csv = NetworkGenerator.csv(network, false);
+		WorkingController working = new WorkingController(csv);
+		working.setRouteCacheCapacity(0);
+		controller = metrics ? new InstrumentedController(working) : working;
+
+		CompactGraph graph = CsvNetworkLoader.load(csv);
+		near = nearPairs(graph);
+		far = farPairs(graph);
+		lines = new String[PAIRS];
+		Random random = new Random(42);
+		for (int i = 0; i < PAIRS; i++) {
+			lines[i] = graph.lineName(random.nextInt(graph.lineCount()));
+		}
+	}
+
+	@Benchmark
+	public String showPathBetweenNear() {
+		String[] pair = near[next++ & (PAIRS - 1)];
+		return controller.showPathBetween(pair[0], pair[1]);
+	}
+
+	@Benchmark
+	public String showPathBetweenFar() {
+		String[] pair = far[next++ & (PAIRS - 1)];
+		return controller.showPathBetween(pair[0], pair[1]);
+	}
+
+	@Benchmark
+	public String directlyConnectedLines() {
+		return controller.listAllDirectlyConnectedLines(lines[next++ & (PAIRS - 1)]);
+	}
+
+	@Benchmark
+	public String listAllTermini() {
+		return controller.listAllTermini();
+	}
+
+	/*
+	 * Picks pairs of stations a few stops apart on the same line.
+	 */
+	private static String[][] nearPairs(CompactGraph graph) {
+		Random random = new Random(42);
+		String[][] pairs = new String[PAIRS][];
+		for (int i = 0; i < PAIRS; i++) {
+			int line = random.nextInt(graph.lineCount());
+			int stops = graph.stopCount(line);
+			int first = random.nextInt(Math.max(1, stops - NEAR));
+			pairs[i] = new String[] { graph.stationName(graph.stop(line, first)),
+					graph.stationName(graph.stop(line, Math.min(stops - 1, first + NEAR))) };
+		}
+		return pairs;
+	}
+
+	/*
+	 * Picks pairs of stations about as far apart as any in the network: from
+	 * random stations to the stations furthest from them, and from those to
+	 * the stations furthest from them in turn.
+	 */
+	private static String[][] farPairs(CompactGraph graph) {
+		Random random = new Random(42);
+		String[][] pairs = new String[PAIRS][];
+		// sweeping the whole graph is costly, so only a few pairs are
+		// found that way and the rest repeat them
+		List<String[]> found = new ArrayList<String[]>();
+		for (int i = 0; i < Math.min(8, PAIRS); i++) {
+			int a = furthest(graph, random.nextInt(graph.stationCount()));
+			int b = furthest(graph, a);
+			found.add(new String[] { graph.stationName(a), graph.stationName(b) });
+		}
+		for (int i = 0; i < PAIRS; i++) {
+			pairs[i] = found.get(i % found.size());
+		}
+		return pairs;
+	}
+
+	/*
+	 * Finds the station furthest in stops from the given one.
+	 */
+	private static int furthest(CompactGraph graph, int start) {
+		boolean[] visited = new boolean[graph.stationCount()];
+		int[] queue = new int[graph.stationCount()];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		visited[start] = true;
+		while (head < tail) {
+			int station = queue[head++];
+			for (int slot = graph.firstSlot(station); slot < graph.endSlot(station); slot++) {
+				int next = graph.target(slot);
+				if (!visited[next]) {
+					visited[next] = true;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return queue[tail - 1];
+	}
+}
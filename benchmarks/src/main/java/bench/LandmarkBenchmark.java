@@ -0,0 +1,155 @@
+package bench;
+
+import graph.BreadthFirstSearch;
+import graph.CompactGraph;
+import graph.LandmarkIndex;
+import graph.LandmarkSearch;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.CsvNetworkLoader;
+
+/**
+ * Measures what landmarks cost to precompute and what they save: the time
+ * taken to build the index for each way of picking landmarks, and the time
+ * taken by bounds, by the landmark search and by plain and bidirectional
+ * breadth-first searches over the same random pairs of stations.
+ *
+ * Before measuring, the index's memory, how close its bounds come to the true
+ * stops and the stations every search expands on average are printed, as
+ * none of them depend on timing.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar LandmarkBenchmark
+ * -p network=<csv file | number of stations> -p landmarks=16}, where a number
+ * of stations generates a synthetic network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LandmarkBenchmark {
+	// number of pairs of stations every search cycles through
+	private static final int PAIRS = 1024;
+
+	@Param("10000")
+	public String network;
+
+	@Param("16")
+	public int landmarks;
+
+	@Param({ "FARTHEST", "DEGREE" })
+	public LandmarkIndex.Selection selection;
+
+	private CompactGraph graph;
+	private LandmarkIndex index;
+	private final int[] starts = new int[PAIRS];
+	private final int[] ends = new int[PAIRS];
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = CsvNetworkLoader.load(NetworkGenerator.csv(network, false));
+		index = new LandmarkIndex(graph, landmarks, selection);
+		Random random = new Random(42);
+		for (int q = 0; q < PAIRS; q++) {
+			starts[q] = random.nextInt(graph.stationCount());
+			ends[q] = random.nextInt(graph.stationCount());
+		}
+		System.out.printf("%n%d stations, %d lines, %d landmarks, %d KiB%n", graph.stationCount(), graph.lineCount(),
+				index.landmarks().length, index.footprint() / 1024);
+		printBounds();
+		printExpanded();
+	}
+
+	@Benchmark
+	public LandmarkIndex build() {
+		return new LandmarkIndex(graph, landmarks, selection);
+	}
+
+	@Benchmark
+	public int bounds() {
+		int q = next++ & (PAIRS - 1);
+		return index.lowerBound(starts[q], ends[q]) + index.upperBound(starts[q], ends[q]);
+	}
+
+	@Benchmark
+	public int[] breadthFirst() {
+		int q = next++ & (PAIRS - 1);
+		return BreadthFirstSearch.local().path(graph, starts[q], ends[q]);
+	}
+
+	@Benchmark
+	public int[] bidirectional() {
+		int q = next++ & (PAIRS - 1);
+		return BreadthFirstSearch.local().bidirectionalPath(graph, starts[q], ends[q]);
+	}
+
+	@Benchmark
+	public int[] landmarkSearch() {
+		int q = next++ & (PAIRS - 1);
+		return LandmarkSearch.local().path(graph, index, starts[q], ends[q]);
+	}
+
+	/*
+	 * Prints how close the bounds come to the exact stops on average.
+	 */
+	private void printBounds() {
+		BreadthFirstSearch exact = BreadthFirstSearch.local();
+		long lower = 0;
+		long upper = 0;
+		long stops = 0;
+		int connected = 0;
+		int tight = 0;
+		for (int q = 0; q < PAIRS; q++) {
+			int[] found = exact.path(graph, starts[q], ends[q]);
+			if (found != null) {
+				int low = index.lowerBound(starts[q], ends[q]);
+				int high = index.upperBound(starts[q], ends[q]);
+				connected++;
+				lower += low;
+				upper += high;
+				stops += found.length - 1;
+				tight += low == high ? 1 : 0;
+			}
+		}
+		System.out.printf("bounds %.1f <= %.1f <= %.1f stops on average, %.1f%% exact%n", (double) lower / connected,
+				(double) stops / connected, (double) upper / connected, 100.0 * tight / connected);
+	}
+
+	/*
+	 * Prints the stations every search expands on average.
+	 */
+	private void printExpanded() {
+		BreadthFirstSearch breadthFirst = BreadthFirstSearch.local();
+		LandmarkSearch landmark = LandmarkSearch.local();
+		long plain = 0;
+		long bidirectional = 0;
+		long guided = 0;
+		for (int q = 0; q < PAIRS; q++) {
+			breadthFirst.path(graph, starts[q], ends[q]);
+			plain += breadthFirst.lastExpanded();
+			breadthFirst.bidirectionalPath(graph, starts[q], ends[q]);
+			bidirectional += breadthFirst.lastExpanded();
+			landmark.path(graph, index, starts[q], ends[q]);
+			guided += landmark.lastExpanded();
+		}
+		System.out.printf("expanded per query: bfs %.1f, bidirectional %.1f, landmarks %.1f%n", (double) plain / PAIRS,
+				(double) bidirectional / PAIRS, (double) guided / PAIRS);
+	}
+}
@@ -0,0 +1,162 @@
+package bench;
+
+import graph.CompactGraph;
+import graph.NetworkSnapshot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import mtr.CsvNetworkLoader;
+import mtr.WorkingController;
+
+/**
+ * Benchmarks loading a network: the memory-mapped parallel CSV loader
+ * against the original BufferedReader and String.split loader, building the
+ * graph from lines already read, loading a whole controller from the CSV,
+ * and reading a snapshot of the network against loading a controller from
+ * it. With {@code -prof gc} the bytes allocated by every load are reported
+ * as well.
+ *
+ * A controller should load a snapshot in little more than the time taken to
+ * read it, as everything it needs is in the snapshot. Run through its own
+ * main method, which takes the same options as the JMH launcher, the
+ * benchmark only measures the snapshot and fails if loading a controller
+ * takes more than twice as long as reading plus a margin, which means
+ * something the snapshot should hold is being rebuilt on every load.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar LoadBenchmark
+ * -p network=<csv file | number of stations>}, or {@code java -cp
+ * benchmarks/target/benchmarks.jar bench.LoadBenchmark -p network=...} for
+ * the snapshot check, where a number of stations generates a synthetic
+ * network to load.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+	// time a controller may take to load a snapshot beyond twice the time
+	// taken to read it
+	private static final double SNAPSHOT_MARGIN_MS = 50;
+
+	@Param("100000")
+	public String network;
+
+	private String csv;
+	private Map<String, String[]> lineMap;
+	private String snapshot;
+
+	@Setup
+	public void setUp() throws IOException {
+		csv = NetworkGenerator.csv(network, false);
+		lineMap = readLines(csv);
+		File file = File.createTempFile("network", ".snapshot");
+		file.deleteOnExit();
+		new WorkingController(csv).writeSnapshot(file.getPath());
+		snapshot = file.getPath();
+	}
+
+	@Benchmark
+	public CompactGraph csvLoad() throws IOException {
+		return CsvNetworkLoader.load(csv);
+	}
+
+	@Benchmark
+	public CompactGraph splitLoad() throws IOException {
+		return CompactGraph.fromLines(readLines(csv));
+	}
+
+	@Benchmark
+	public CompactGraph graphBuild() {
+		return CompactGraph.fromLines(lineMap);
+	}
+
+	@Benchmark
+	public WorkingController controllerLoad() throws IOException {
+		return new WorkingController(csv);
+	}
+
+	@Benchmark
+	public NetworkSnapshot snapshotRead() throws IOException {
+		return new NetworkSnapshot(snapshot);
+	}
+
+	@Benchmark
+	public WorkingController snapshotLoad() throws IOException {
+		return new WorkingController(snapshot);
+	}
+
+	/**
+	 * Measures reading a snapshot against loading a controller from it,
+	 * failing if the controller takes too long.
+	 *
+	 * @param args
+	 *            the options of the JMH launcher
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		Collection<RunResult> results = new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.include(LoadBenchmark.class.getName() + ".snapshot(Read|Load)").build()).run();
+
+		// pair up the results of both benchmarks on every network
+		Map<String, Double> read = new HashMap<String, Double>();
+		Map<String, Double> load = new HashMap<String, Double>();
+		for (RunResult result : results) {
+			String name = result.getParams().getBenchmark();
+			(name.endsWith("snapshotRead") ? read : load).put(result.getParams().getParam("network"),
+					result.getPrimaryResult().getScore());
+		}
+		for (Map.Entry<String, Double> entry : load.entrySet()) {
+			double readTime = read.get(entry.getKey());
+			System.out.printf("%s: snapshot read %8.1f ms, controller load %8.1f ms%n", entry.getKey(), readTime,
+					entry.getValue());
+			if (entry.getValue() > 2 * readTime + SNAPSHOT_MARGIN_MS) {
+				System.out.println("FAIL: loading a controller from a snapshot rebuilds what the snapshot holds");
+				System.exit(1);
+			}
+		}
+	}
+
+	/*
+	 * The original loader, reading the file line by line and splitting each
+	 * row into an array of Strings.
+	 */
+	private static Map<String, String[]> readLines(String path) throws IOException {
+		Map<String, String[]> lineMap = new LinkedHashMap<String, String[]>(32);
+		try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] lineElements = line.split(",");
+				lineMap.put(lineElements[0], Arrays.copyOfRange(lineElements, 1, lineElements.length));
+			}
+		}
+		return lineMap;
+	}
+}
@@ -0,0 +1,272 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic MTR-like networks in the same CSV format as
+ * resources/MTRsystem_partial.csv, for benchmarking networks of any size.
+ *
+ * Lines mostly stop at new stations, but some stops are interchanges with a
+ * recently created station, so neighbouring lines cross each other the way
+ * a real metro's do. Every line after the first starts at a station already
+ * on the network, so the whole network stays connected.
+ *
+ * Networks can optionally be laid out on a map, with every line heading
+ * roughly one way, and be given coordinates and travel times to match.
+ */
+public class NetworkGenerator {
+	private final int stations;
+	private final int stopsPerLine;
+	private final double interchangeRatio;
+	private final long seed;
+	private boolean timed;
+
+	// metres between neighbouring stations, at the least and on average
+	private static final double MIN_SPACING = 500;
+	private static final double MEAN_SPACING = 1200;
+	// metres per second between stations, and seconds spent at each stop
+	private static final double SPEED = 20;
+	private static final int DWELL = 30;
+	// where generated maps are centred, in degrees
+	private static final double LATITUDE = 22.3;
+	private static final double LONGITUDE = 114.2;
+	private static final double METRES_PER_DEGREE = 111320;
+
+	/**
+	 * Construct a generator of networks with the given shape.
+	 * 
+	 * @param stations
+	 *            the number of distinct stations to generate
+	 * @param stopsPerLine
+	 *            the average number of stops on a line
+	 * @param interchangeRatio
+	 *            the fraction of stops that reuse a station already on another
+	 *            line
+	 * @param seed
+	 *            the seed of the random generator, so networks can be
+	 *            regenerated
+	 */
+	public NetworkGenerator(int stations, int stopsPerLine, double interchangeRatio, long seed) {
+		this.stations = stations;
+		this.stopsPerLine = stopsPerLine;
+		this.interchangeRatio = interchangeRatio;
+		this.seed = seed;
+	}
+
+	/**
+	 * Construct a generator of networks shaped like the MTR, with about 15
+	 * stops per line and one stop in six being an interchange. Lines of large
+	 * networks are made longer so that their ids still fit in a short.
+	 * 
+	 * @param stations
+	 *            the number of distinct stations to generate
+	 */
+	public NetworkGenerator(int stations) {
+		this(stations, Math.max(15, stations / 12000), 1.0 / 6, 42);
+	}
+
+	/**
+	 * @param timed
+	 *            whether to lay the network out on a map and write the
+	 *            coordinates of every station and travel time of every
+	 *            segment along with the lines
+	 */
+	public void setTimed(boolean timed) {
+		this.timed = timed;
+	}
+
+	/**
+	 * Writes a network to a CSV file.
+	 * 
+	 * @param path
+	 *            the path of the file to write
+	 * @throws IOException
+	 *             in the case of writing the file with insufficient permissions
+	 */
+	public void write(String path) throws IOException {
+		try (Writer out = new BufferedWriter(new FileWriter(path), 1 << 16)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Writes a network as CSV.
+	 * 
+	 * @param out
+	 *            the writer to write to
+	 * @throws IOException
+	 *             in the case of the writer failing
+	 */
+	public void write(Writer out) throws IOException {
+		Random random = new Random(seed);
+		// interchanges are drawn from recently created stations, so that
+		// lines cross their neighbours and distant stations are many hops apart
+		int window = Math.max(stopsPerLine * 8, 64);
+		int created = 0;
+		int line = 0;
+		// position of every station in metres east and north of the centre,
+		// and the stations in every square of the map, to find those nearby
+		double[] x = timed ? new double[stations] : null;
+		double[] y = timed ? new double[stations] : null;
+		Map<Long, List<Integer>> squares = new HashMap<Long, List<Integer>>();
+		StringBuilder times = new StringBuilder();
+
+		while (created < stations) {
+			String name = "Line " + line++;
+			out.write(name);
+			times.setLength(0);
+			double heading = timed ? random.nextDouble() * 2 * Math.PI : 0;
+
+			// start every line but the first at a station already in use
+			int length = Math.max(2, stopsPerLine / 2 + random.nextInt(stopsPerLine + 1));
+			int previous = -1;
+			for (int stop = 0; stop < length && created < stations; stop++) {
+				int station;
+				if (created > 0 && stop == 0) {
+					station = created - 1 - random.nextInt(Math.min(created, window));
+				} else if (timed && previous != -1) {
+					// carry on roughly the way the line is heading, stopping at
+					// a station already there for an interchange
+					heading += random.nextGaussian() * 0.3;
+					double spacing = MIN_SPACING + random.nextDouble() * 2 * (MEAN_SPACING - MIN_SPACING);
+					double px = x[previous] + spacing * Math.cos(heading);
+					double py = y[previous] + spacing * Math.sin(heading);
+					station = random.nextDouble() < interchangeRatio ? nearest(squares, x, y, px, py, previous) : -1;
+					if (station == -1) {
+						station = place(squares, x, y, created++, px, py);
+					}
+				} else if (created > 0 && random.nextDouble() < interchangeRatio) {
+					station = created - 1 - random.nextInt(Math.min(created, window));
+				} else {
+					station = created++;
+					if (timed) {
+						place(squares, x, y, station, 0, 0);
+					}
+				}
+
+				// never stop at the same station twice in a row
+				if (station != previous) {
+					out.write(",Station " + station);
+					if (timed && previous != -1) {
+						double distance = Math.hypot(x[station] - x[previous], y[station] - y[previous]);
+						times.append(',').append(Math.round(distance / SPEED) + DWELL);
+					}
+					previous = station;
+				}
+			}
+			out.write('\n');
+
+			if (timed) {
+				out.write("#time," + name + times + "\n");
+			}
+		}
+
+		if (timed) {
+			for (int s = 0; s < stations; s++) {
+				double latitude = LATITUDE + y[s] / METRES_PER_DEGREE;
+				double longitude = LONGITUDE + x[s] / (METRES_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE)));
+				out.write(String.format(Locale.ROOT, "#coord,Station %d,%.6f,%.6f\n", s, latitude, longitude));
+			}
+		}
+	}
+
+	/*
+	 * Records the position of a new station.
+	 */
+	private static int place(Map<Long, List<Integer>> squares, double[] x, double[] y, int station, double px,
+			double py) {
+		x[station] = px;
+		y[station] = py;
+		List<Integer> square = squares.get(square(px, py));
+		if (square == null) {
+			square = new ArrayList<Integer>(4);
+			squares.put(square(px, py), square);
+		}
+		square.add(station);
+		return station;
+	}
+
+	/*
+	 * Finds the station closest to a position, other than the given one, if
+	 * there is one within the average spacing of stations.
+	 */
+	private static int nearest(Map<Long, List<Integer>> squares, double[] x, double[] y, double px, double py,
+			int other) {
+		int nearest = -1;
+		double best = MEAN_SPACING;
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				List<Integer> square = squares.get(square(px + dx * MEAN_SPACING, py + dy * MEAN_SPACING));
+				if (square == null) {
+					continue;
+				}
+				for (int station : square) {
+					double distance = Math.hypot(x[station] - px, y[station] - py);
+					if (station != other && distance < best) {
+						best = distance;
+						nearest = station;
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/*
+	 * Packs the square of the map containing a position into a key, squares
+	 * being as wide as the average spacing of stations.
+	 */
+	private static long square(double px, double py) {
+		return ((long) Math.floor(px / MEAN_SPACING) << 32) ^ ((long) Math.floor(py / MEAN_SPACING) & 0xffffffffL);
+	}
+
+	/**
+	 * Finds the network a benchmark runs on, generating it if given a size.
+	 * 
+	 * @param network
+	 *            the path of a CSV file, or a number of stations to generate
+	 *            a network of in a temporary file
+	 * @param timed
+	 *            whether to lay a generated network out on a map, with
+	 *            coordinates and travel times
+	 * @return the path of the CSV file
+	 * @throws IOException
+	 *             in the case of writing the file with insufficient permissions
+	 */
+	public static String csv(String network, boolean timed) throws IOException {
+		if (new File(network).exists()) {
+			return network;
+		}
+		File file = File.createTempFile("network", ".csv");
+		file.deleteOnExit();
+		NetworkGenerator generator = new NetworkGenerator(Integer.parseInt(network));
+		generator.setTimed(timed);
+		generator.write(file.getPath());
+		return file.getPath();
+	}
+
+	/**
+	 * Writes a generated network to a file.
+	 * 
+	 * @param args
+	 *            the number of stations, the path of the file to write, and
+	 *            optionally "timed" to write coordinates and travel times
+	 * @throws IOException
+	 *             in the case of writing the file with insufficient permissions
+	 */
+	public static void main(String[] args) throws IOException {
+		NetworkGenerator generator = new NetworkGenerator(Integer.parseInt(args[0]));
+		generator.setTimed(args.length > 2 && args[2].equals("timed"));
+		generator.write(args[1]);
+	}
+}
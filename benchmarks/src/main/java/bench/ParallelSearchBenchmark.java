@@ -0,0 +1,107 @@
+package bench;
+
+import graph.BreadthFirstSearch;
+import graph.CompactGraph;
+import graph.ParallelBreadthFirstSearch;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.CsvNetworkLoader;
+
+/**
+ * Measures the level-synchronous parallel breadth-first search on a pool of
+ * the given number of threads against the sequential one, over the same
+ * random pairs of stations.
+ *
+ * Before measuring, both searches are checked to find paths with the same
+ * number of stops, and the number of mismatches and the levels searched
+ * bottom-up on average are printed.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar
+ * ParallelSearchBenchmark -p network=<csv file | number of stations> -p
+ * threads=1,2,4}, where a number of stations generates a synthetic network
+ * laid out on a map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelSearchBenchmark {
+	// number of pairs of stations every search cycles through
+	private static final int PAIRS = 64;
+
+	@Param("100000")
+	public String network;
+
+	@Param("1")
+	public int threads;
+
+	private CompactGraph graph;
+	private ForkJoinPool pool;
+	private final int[] starts = new int[PAIRS];
+	private final int[] ends = new int[PAIRS];
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = CsvNetworkLoader.load(NetworkGenerator.csv(network, true));
+		pool = new ForkJoinPool(threads);
+		Random random = new Random(42);
+		for (int q = 0; q < PAIRS; q++) {
+			starts[q] = random.nextInt(graph.stationCount());
+			ends[q] = random.nextInt(graph.stationCount());
+		}
+
+		// the sequential search gives the expected stops
+		BreadthFirstSearch sequential = BreadthFirstSearch.local();
+		ParallelBreadthFirstSearch parallel = ParallelBreadthFirstSearch.local();
+		int mismatches = 0;
+		long bottomUp = 0;
+		for (int q = 0; q < PAIRS; q++) {
+			int[] expected = sequential.path(graph, starts[q], ends[q]);
+			int[] found = parallel.path(graph, starts[q], ends[q], pool);
+			if ((found != null ? found.length : 0) != (expected != null ? expected.length : 0)) {
+				mismatches++;
+			}
+			bottomUp += parallel.lastBottomUp();
+		}
+		System.out.printf("%n%d stations, %d slots, %d cores, %.1f levels bottom-up, %d mismatches%n",
+				graph.stationCount(), graph.slotCount(), Runtime.getRuntime().availableProcessors(),
+				(double) bottomUp / PAIRS, mismatches);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public int[] sequential() {
+		int q = next++ & (PAIRS - 1);
+		return BreadthFirstSearch.local().path(graph, starts[q], ends[q]);
+	}
+
+	@Benchmark
+	public int[] parallel() {
+		int q = next++ & (PAIRS - 1);
+		return ParallelBreadthFirstSearch.local().path(graph, starts[q], ends[q], pool);
+	}
+}
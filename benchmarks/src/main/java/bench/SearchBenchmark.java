@@ -0,0 +1,94 @@
+package bench;
+
+import graph.BreadthFirstSearch;
+import graph.CompactGraph;
+import graph.FastestPathSearch;
+import graph.FewestChangesSearch;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.CsvNetworkLoader;
+
+/**
+ * Compares breadth-first searches for the fewest stops against Dijkstra and
+ * A* searches for the least travel time and 0-1 breadth-first searches for
+ * the fewest interchanges, cycling through the same random pairs of stations
+ * on the same graph.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar SearchBenchmark
+ * -p network=<csv file | number of stations> -prof gc}, where a number of
+ * stations generates a synthetic network laid out on a map, with coordinates
+ * and travel times.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+	// seconds taken to change lines, as used by the controller by default
+	private static final int PENALTY = 180;
+	// number of pairs of stations every search cycles through
+	private static final int PAIRS = 1024;
+
+	@Param("10000")
+	public String network;
+
+	private CompactGraph graph;
+	private final int[] starts = new int[PAIRS];
+	private final int[] ends = new int[PAIRS];
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = CsvNetworkLoader.load(NetworkGenerator.csv(network, true));
+		System.out.printf("%n%d stations, %d lines, travel times %s, coordinates %s%n", graph.stationCount(),
+				graph.lineCount(), graph.hasTravelTimes() ? "given" : "default",
+				graph.hasCoordinates() ? "given" : "none");
+
+		Random random = new Random(42);
+		for (int q = 0; q < PAIRS; q++) {
+			starts[q] = random.nextInt(graph.stationCount());
+			ends[q] = random.nextInt(graph.stationCount());
+		}
+	}
+
+	@Benchmark
+	public int[] breadthFirst() {
+		int q = next++ & (PAIRS - 1);
+		return BreadthFirstSearch.local().path(graph, starts[q], ends[q]);
+	}
+
+	@Benchmark
+	public int[] dijkstra() {
+		int q = next++ & (PAIRS - 1);
+		return FastestPathSearch.local().path(graph, starts[q], ends[q], PENALTY);
+	}
+
+	@Benchmark
+	public int[] aStar() {
+		int q = next++ & (PAIRS - 1);
+		return FastestPathSearch.local().guidedPath(graph, starts[q], ends[q], PENALTY);
+	}
+
+	@Benchmark
+	public int[] fewestChanges() {
+		int q = next++ & (PAIRS - 1);
+		return FewestChangesSearch.local().path(graph, starts[q], ends[q]);
+	}
+}
@@ -0,0 +1,232 @@
+package bench;
+
+import graph.CompactGraph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.CsvNetworkLoader;
+import mtr.QueryServer;
+import mtr.WorkingController;
+
+/**
+ * Load-tests the query server locally, every benchmark thread keeping one
+ * request in flight at once, reporting the requests answered per second and
+ * how many were answered, rejected or failed.
+ *
+ * Every thread has a kept-alive connection of its own, driven by a minimal
+ * blocking HTTP/1.1 client so that the client costs as little as possible of
+ * the CPU shared with the server.
+ *
+ * Most requests are paths between random stations, the rest being evenly
+ * split between the stations of a line, its connected lines and the termini.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar ServerBenchmark
+ * -p network=<csv file | number of stations> -p concurrency=256 -t 64}, where
+ * a number of stations generates a synthetic network, and the number of
+ * threads is the number of requests in flight.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class ServerBenchmark {
+	// number of requests cycled through
+	private static final int TARGETS = 1024;
+
+	@Param("10000")
+	public String network;
+
+	@Param("256")
+	public int concurrency;
+
+	@Param("2000")
+	public long timeout;
+
+	private QueryServer server;
+	private final String[] targets = new String[TARGETS];
+
+	@Setup
+	public void setUp() throws IOException {
+		String csv = NetworkGenerator.csv(network, false);
+		CompactGraph graph = CsvNetworkLoader.load(csv);
+		server = new QueryServer(new WorkingController(csv), 0, concurrency, timeout);
+		server.start();
+
+		Random random = new Random(42);
+		for (int i = 0; i < TARGETS; i++) {
+			int kind = random.nextInt(10);
+			String line = encode(graph.lineName(random.nextInt(graph.lineCount())));
+			if (kind < 7) {
+				targets[i] = "/path?from=" + encode(graph.stationName(random.nextInt(graph.stationCount()))) + "&to="
+						+ encode(graph.stationName(random.nextInt(graph.stationCount())));
+			} else if (kind == 7) {
+				targets[i] = "/stations?line=" + line;
+			} else if (kind == 8) {
+				targets[i] = "/connected?line=" + line;
+			} else {
+				targets[i] = "/termini";
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Benchmark
+	public int request(Connection connection, Statuses statuses) {
+		int status;
+		try {
+			status = connection.get(targets[connection.next++ & (TARGETS - 1)]);
+		} catch (IOException e) {
+			statuses.failed++;
+			connection.reconnect();
+			return -1;
+		}
+		if (status == 200) {
+			statuses.answered++;
+		} else {
+			statuses.rejected++;
+		}
+		return status;
+	}
+
+	/**
+	 * The requests of a thread answered, rejected with any other status than
+	 * 200, or failed, reported alongside the throughput.
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Statuses {
+		public long answered;
+		public long rejected;
+		public long failed;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			answered = 0;
+			rejected = 0;
+			failed = 0;
+		}
+	}
+
+	/**
+	 * A kept-alive connection to the server, sending one request at a time.
+	 */
+	@State(Scope.Thread)
+	public static class Connection {
+		private int port;
+		private Socket socket;
+		private OutputStream out;
+		private InputStream in;
+		private final byte[] buffer = new byte[1 << 16];
+		// the next request to send, each thread starting at its own
+		private int next;
+
+		@Setup
+		public void open(ServerBenchmark benchmark) throws IOException {
+			port = benchmark.server.getPort();
+			next = ThreadLocalRandom.current().nextInt(TARGETS);
+			socket = new Socket("localhost", port);
+			socket.setTcpNoDelay(true);
+			out = socket.getOutputStream();
+			in = socket.getInputStream();
+		}
+
+		@TearDown
+		public void close() throws IOException {
+			socket.close();
+		}
+
+		/*
+		 * Opens a new connection after the last one failed, leaving it closed
+		 * if the server cannot be reached.
+		 */
+		private void reconnect() {
+			try {
+				socket.close();
+				socket = new Socket("localhost", port);
+				socket.setTcpNoDelay(true);
+				out = socket.getOutputStream();
+				in = socket.getInputStream();
+			} catch (IOException e) {
+				// the next request fails again and retries
+			}
+		}
+
+		/*
+		 * Sends a request and reads the whole response, returning its status.
+		 */
+		private int get(String target) throws IOException {
+			out.write(("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			// read up to the end of the headers
+			int length = 0;
+			int end;
+			while ((end = headersEnd(length)) == -1) {
+				int read = in.read(buffer, length, buffer.length - length);
+				if (read == -1) {
+					throw new IOException("Connection closed");
+				}
+				length += read;
+			}
+			String headers = new String(buffer, 0, end + 2, StandardCharsets.US_ASCII);
+			int status = Integer.parseInt(headers.substring(9, 12));
+			int index = headers.toLowerCase().indexOf("content-length:");
+			int contentLength = Integer.parseInt(headers.substring(index + 15, headers.indexOf('\r', index)).trim());
+
+			// then skip the body
+			long left = contentLength - (length - end - 4);
+			while (left > 0) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+				if (read == -1) {
+					throw new IOException("Connection closed");
+				}
+				left -= read;
+			}
+			return status;
+		}
+
+		private int headersEnd(int length) {
+			for (int i = 3; i < length; i++) {
+				if (buffer[i] == '\n' && buffer[i - 1] == '\r' && buffer[i - 2] == '\n' && buffer[i - 3] == '\r') {
+					return i - 3;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static String encode(String s) {
+		return URLEncoder.encode(s, StandardCharsets.UTF_8);
+	}
+}
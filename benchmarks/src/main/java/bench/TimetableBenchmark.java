@@ -0,0 +1,115 @@
+package bench;
+
+import graph.CompactGraph;
+import graph.RaptorSearch;
+import graph.Timetable;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtr.CsvNetworkLoader;
+
+/**
+ * Measures building a full day's timetable and the latency of earliest
+ * arrival queries over it, from random stations to random stations at random
+ * times of day.
+ *
+ * Every line runs both ways from 05:30 to 01:00 at a fixed headway, each
+ * starting at a random offset so the lines are not in step.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar TimetableBenchmark
+ * -p network=<csv file | number of stations> -p headway=240 -p maxTrips=8},
+ * where a number of stations generates a synthetic network with travel
+ * times, and the headway is in seconds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimetableBenchmark {
+	// hours of service, in seconds since midnight
+	private static final int FIRST_DEPARTURE = 5 * 3600 + 30 * 60;
+	private static final int LAST_DEPARTURE = 25 * 3600;
+	// seconds taken to change lines at stations without a time of their own
+	private static final int PENALTY = 180;
+	// number of queries cycled through
+	private static final int QUERIES = 4096;
+
+	@Param("10000")
+	public String network;
+
+	@Param("240")
+	public int headway;
+
+	@Param("8")
+	public int maxTrips;
+
+	private CompactGraph graph;
+	private int[][] departures;
+	private int[][] backDepartures;
+	private Timetable timetable;
+	private final int[] starts = new int[QUERIES];
+	private final int[] ends = new int[QUERIES];
+	private final int[] times = new int[QUERIES];
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = CsvNetworkLoader.load(NetworkGenerator.csv(network, true));
+		Random random = new Random(42);
+		departures = new int[graph.lineCount()][];
+		backDepartures = new int[graph.lineCount()][];
+		for (int l = 0; l < graph.lineCount(); l++) {
+			departures[l] = trips(FIRST_DEPARTURE + random.nextInt(headway), headway);
+			backDepartures[l] = trips(FIRST_DEPARTURE + random.nextInt(headway), headway);
+		}
+		timetable = new Timetable(graph, departures, backDepartures);
+		System.out.printf("%n%d stations, %d routes, %d trips, %d MB%n", graph.stationCount(), timetable.routeCount(),
+				timetable.tripCount(), timetable.footprint() >> 20);
+
+		for (int q = 0; q < QUERIES; q++) {
+			starts[q] = random.nextInt(graph.stationCount());
+			ends[q] = random.nextInt(graph.stationCount());
+			times[q] = FIRST_DEPARTURE + random.nextInt(LAST_DEPARTURE - FIRST_DEPARTURE - 3600);
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Timetable build() {
+		return new Timetable(graph, departures, backDepartures);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	public int[] earliestArrival() {
+		int q = next++ & (QUERIES - 1);
+		return RaptorSearch.local().path(timetable, starts[q], ends[q], times[q], maxTrips, PENALTY);
+	}
+
+	/*
+	 * Lists the departures of a line every headway over the day from a time.
+	 */
+	private static int[] trips(int first, int headway) {
+		int[] trips = new int[(LAST_DEPARTURE - first) / headway + 1];
+		for (int t = 0; t < trips.length; t++) {
+			trips[t] = first + t * headway;
+		}
+		return trips;
+	}
+}
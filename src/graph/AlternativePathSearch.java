@@ -0,0 +1,770 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reusable scratch space for finding the k shortest loopless paths between
+ * two stations, ranked by stops or by changes of line, to offer alternative
+ * routes.
+ *
+ * The paths are found with Yen's algorithm: every path taken branches off
+ * each earlier path at each of its stations in turn, the spur search from the
+ * branching station avoiding the stations before it and the next hops taken
+ * there by the paths already found, and the best of all branches found so
+ * far is taken next. Two refinements keep the spur searches few and small. A
+ * path only branches from the station it itself branched off at onwards, as
+ * Lawler observed, since branching any earlier repeats the searches of the
+ * path it branched from. And every spur search is an A* search guided by the
+ * number of stops from each station to the end, found once per query by a
+ * breadth-first search back from the end, which is exact until stations are
+ * avoided and so leads most spur searches almost straight to the end. When
+ * ranking by changes, the estimate adds the fewest changes from the line
+ * arrived on to a line stopping at the end, found by a breadth-first search
+ * over the lines. Ranking by stops, a spur search is skipped altogether
+ * whenever the shortest path from the next station nearest the end avoids
+ * every station it must, as Martins, Pascoal and Santos observed.
+ *
+ * Spur searches run over adjacency slots, like the fewest changes search, so
+ * that the line a path arrives on is known and a change of line can be
+ * counted. The part of a path kept before its spur station is costed along
+ * whichever of its lines change least before leaving the spur station along
+ * each slot, so a path is always costed by its stations alone, however it was
+ * found. Ranking by changes orders paths by changes and then by stops,
+ * taking the number of changes times one more than the number of stations
+ * plus the number of stops as the cost, which only fits an int for paths
+ * with fewer changes than 2^31 divided by the number of stations; costlier
+ * paths are never found.
+ *
+ * Only as many branches are kept as paths are still to be taken, and a spur
+ * search gives up as soon as its estimate reaches the cost of the worst of
+ * them, so once there are enough branches the searches only look for better
+ * ones. The spur searches nearest the end are the smallest, and run first so
+ * that the branches they find bound those further back. Branches are told
+ * apart by the stations they pass through, hashed into a set, so the same
+ * route on parallel lines is only offered once. A query can be given a budget
+ * of slots expanded and of time, and once it runs out the paths found so far
+ * are made up to k with the best branches not yet taken, which are loopless
+ * but not necessarily the next shortest.
+ */
+public class AlternativePathSearch implements SearchStatistics {
+	/**
+	 * What alternative paths are ranked by.
+	 */
+	public enum Ranking {
+		/**
+		 * The fewest stops first.
+		 */
+		HOPS,
+
+		/**
+		 * The fewest changes of line first, then the fewest stops.
+		 */
+		INTERCHANGES
+	}
+
+	private static final ThreadLocal<AlternativePathSearch> SCRATCH = new ThreadLocal<AlternativePathSearch>() {
+		@Override
+		protected AlternativePathSearch initialValue() {
+			return new AlternativePathSearch();
+		}
+	};
+
+	// slots expanded between checks of the time budget
+	private static final int CLOCK_INTERVAL = 1024;
+
+	private IndexedMinHeap heap = new IndexedMinHeap(0);
+	// cost of the best way found to each slot and the slot it was reached
+	// from, valid if stamped this spur search
+	private int[] cost = new int[0];
+	private int[] parent = new int[0];
+	// number of the spur search that last reached, and that settled, each
+	// slot
+	private int[] reached = new int[0];
+	private int[] settled = new int[0];
+	// number of the path branched off that passes through each station, and
+	// where along it, the spur searches from further along avoiding it
+	private int[] blocked = new int[0];
+	private int[] blockedAt = new int[0];
+	// position along the path branched off of the current spur station
+	private int spurIndex;
+	// number of the spur search that must not hop to each station from the
+	// spur station
+	private int[] blockedNext = new int[0];
+	// number of the current path branched off, and of the current spur
+	// search
+	private int branching;
+	private int generation;
+
+	// stops from each station to the end, valid if stamped this query
+	private int[] toEnd = new int[0];
+	private int[] toEndMark = new int[0];
+	// next station towards the end along a shortest path, valid if stamped
+	private int[] towardsEnd = new int[0];
+	private int[] queue = new int[0];
+	// fewest changes from each line to a line stopping at the end, or -1 if
+	// there is no way, when ranking by changes
+	private int[] lineChanges = new int[0];
+	// lines waiting to be searched from when finding the changes
+	private int[] lineQueue = new int[0];
+	// number of the current query
+	private int query;
+
+	// segments, stations and lines closed on the graph of the current query,
+	// or null if nothing is closed
+	private Closures closed;
+
+	// budget left of the current query
+	private long deadline;
+	private long expansionsLeft;
+	// stops and changes along the paths of the last query
+	private int[] lastStops = new int[0];
+	private int[] lastChanges = new int[0];
+	// whether the last query ran out of budget
+	private boolean lastTruncated;
+	// work done by the last query
+	private int lastExpanded;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private AlternativePathSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static AlternativePathSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds up to k shortest loopless paths between two stations, without
+	 * any budget.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @param k
+	 *            the greatest number of paths to find
+	 * @param ranking
+	 *            what the paths are ranked by
+	 * @return the station ids along every path, including both ends, the
+	 *         shortest first, or no paths if there is none between the
+	 *         stations
+	 */
+	public int[][] paths(CompactGraph graph, int start, int end, int k, Ranking ranking) {
+		return paths(graph, start, end, k, ranking, Long.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Finds up to k shortest loopless paths between two stations, within a
+	 * budget.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @param k
+	 *            the greatest number of paths to find
+	 * @param ranking
+	 *            what the paths are ranked by
+	 * @param maxExpanded
+	 *            the greatest number of slots to expand over all searches
+	 * @param maxNanos
+	 *            the greatest number of nanoseconds to search for
+	 * @return the station ids along every path, including both ends, the
+	 *         shortest first, or no paths if there is none between the
+	 *         stations or the budget ran out before any was found
+	 */
+	public int[][] paths(CompactGraph graph, int start, int end, int k, Ranking ranking, long maxExpanded,
+			long maxNanos) {
+		begin(graph);
+		closed = graph.activeClosures();
+		long now = System.nanoTime();
+		deadline = maxNanos >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + maxNanos;
+		expansionsLeft = maxExpanded;
+		lastTruncated = false;
+		lastExpanded = 0;
+		lastRelaxed = 0;
+		lastQueuePeak = 0;
+		if (k <= 0 || !graph.isConnected(start, end)) {
+			return finish(new ArrayList<Route>());
+		}
+		if (start == end) {
+			List<Route> single = new ArrayList<Route>();
+			single.add(new Route(new int[] { start }, 0, 0, 0, 0));
+			return finish(single);
+		}
+
+		// a change of line costs more than any number of stops when ranking
+		// by changes
+		int changeCost = ranking == Ranking.INTERCHANGES ? graph.stationCount() + 1 : 0;
+		distancesToEnd(graph, end);
+		if (changeCost > 0) {
+			lineChangesToEnd(graph, end);
+		}
+
+		List<Route> taken = new ArrayList<Route>();
+		TreeSet<Route> branches = new TreeSet<Route>();
+		Set<Route> seen = new HashSet<Route>();
+		long sequence = 0;
+
+		nextBranching();
+		nextGeneration();
+		Route first = spur(graph, start, null, null, 0, end, changeCost, Integer.MAX_VALUE, sequence++);
+		if (first != null) {
+			branches.add(first);
+			seen.add(first);
+		}
+
+		search: while (taken.size() < k && !branches.isEmpty()) {
+			Route route = branches.pollFirst();
+			taken.add(route);
+			if (taken.size() == k) {
+				break;
+			}
+
+			// branch off at every station from where this path branched off,
+			// each spur search avoiding the stations up to its own, and
+			// costing them along whichever lines change least. The spurs
+			// nearest the end are the cheapest to search, and searched first
+			// so the branches they find bound the costlier ones before them
+			nextBranching();
+			for (int s = 0; s < route.stations.length; s++) {
+				blocked[route.stations[s]] = branching;
+				blockedAt[route.stations[s]] = s;
+			}
+			int[][] hops = changeCost > 0 ? fewestChanges(graph, route.stations, route.stations.length - 1) : null;
+			for (int i = route.stations.length - 2; i >= route.deviation; i--) {
+				if (outOfBudget()) {
+					lastTruncated = true;
+					break search;
+				}
+				nextGeneration();
+				// do not repeat the next hop of any path taken through the
+				// same stations so far
+				for (Route other : taken) {
+					if (other.stations.length > i + 1 && sharesPrefix(other, route, i)) {
+						blockedNext[other.stations[i + 1]] = generation;
+					}
+				}
+
+				// only the best of the branches can still be taken, so a
+				// branch costing no less than the worst of those is not
+				// worth finding
+				int need = k - taken.size();
+				int bound = branches.size() < need ? Integer.MAX_VALUE : branches.last().cost;
+				Route branch = spur(graph, start, route, hops, i, end, changeCost, bound, sequence++);
+				if (branch != null && seen.add(branch)) {
+					branches.add(branch);
+					if (branches.size() > need) {
+						branches.pollLast();
+					}
+				}
+			}
+		}
+
+		// make up the paths with the best branches left if the budget ran out
+		while (lastTruncated && taken.size() < k && !branches.isEmpty()) {
+			taken.add(branches.pollFirst());
+		}
+		return finish(taken);
+	}
+
+	/**
+	 * @return the number of stops along each path found by the last query
+	 */
+	public int[] lastStops() {
+		return lastStops.clone();
+	}
+
+	/**
+	 * @return the fewest changes of line along each path found by the last
+	 *         query, along the lines it was found on
+	 */
+	public int[] lastChanges() {
+		return lastChanges.clone();
+	}
+
+	/**
+	 * @return if the last query ran out of budget, so that it may have found
+	 *         fewer paths than asked for, or not the shortest ones
+	 */
+	public boolean lastTruncated() {
+		return lastTruncated;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastExpanded;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/*
+	 * A path found, along with its cost, the fewest changes of line along it
+	 * and where it branched off the path it was found from. Routes are equal when
+	 * they pass through the same stations, and ordered by cost, then stops,
+	 * then the order they were found in.
+	 */
+	private static class Route implements Comparable<Route> {
+		private final int[] stations;
+		private final int cost;
+		private final int changes;
+		private final int deviation;
+		private final long sequence;
+		private final int hash;
+
+		private Route(int[] stations, int cost, int changes, int deviation, long sequence) {
+			this.stations = stations;
+			this.cost = cost;
+			this.changes = changes;
+			this.deviation = deviation;
+			this.sequence = sequence;
+			this.hash = Arrays.hashCode(stations);
+		}
+
+		@Override
+		public int compareTo(Route other) {
+			if (cost != other.cost) {
+				return Integer.compare(cost, other.cost);
+			} else if (stations.length != other.stations.length) {
+				return Integer.compare(stations.length, other.stations.length);
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Route && hash == ((Route) other).hash
+					&& Arrays.equals(stations, ((Route) other).stations);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/*
+	 * Finds the cheapest way to the end from the i-th station of a route, or
+	 * from the start if there is no route yet, avoiding what this spur search
+	 * blocked, and joins it onto the route up to that station. The fewest
+	 * changes along the route are given when ranking by changes, and only a
+	 * way costing less than the bound is looked for.
+	 */
+	private Route spur(CompactGraph graph, int start, Route route, int[][] hops, int i, int end, int changeCost,
+			int bound, long sequence) {
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final short[] lines = graph.lines;
+
+		int spur = route == null ? start : route.stations[i];
+
+		// the spur station is avoided too, as coming back through it could
+		// take a next hop blocked from it
+		if (route == null) {
+			blocked[spur] = branching;
+			blockedAt[spur] = 0;
+		}
+		spurIndex = i;
+		lastRelaxed += offsets[spur + 1] - offsets[spur];
+
+		// ranking by stops, no way on can be shorter than through the next
+		// station nearest the end, so if the shortest path on from there
+		// avoids every blocked station, as it mostly does, it needs no search
+		if (changeCost == 0) {
+			int nearest = Integer.MAX_VALUE;
+			for (int slot = offsets[spur]; slot < offsets[spur + 1]; slot++) {
+				if (isOpen(slot) && mayHop(targets[slot])) {
+					nearest = Math.min(nearest, toEnd[targets[slot]]);
+				}
+			}
+			if (nearest == Integer.MAX_VALUE || i + 1 + nearest >= bound) {
+				return null;
+			}
+			for (int slot = offsets[spur]; slot < offsets[spur + 1]; slot++) {
+				int next = targets[slot];
+				if (isOpen(slot) && mayHop(next) && toEnd[next] == nearest && isClear(next, end)) {
+					return along(graph, route, i, spur, next, sequence);
+				}
+			}
+		}
+
+		heap.clear(targets.length);
+		for (int slot = offsets[spur]; slot < offsets[spur + 1]; slot++) {
+			if (blockedNext[targets[slot]] != generation) {
+				int rootChanges = i > 0 && hops != null ? leave(hops, i, lines, slot) : 0;
+				reach(slot, (long) rootChanges * changeCost + i + 1, -1, targets[slot], lines[slot], changeCost);
+			}
+		}
+
+		while (!heap.isEmpty() && heap.peekKey() < bound) {
+			lastQueuePeak = Math.max(lastQueuePeak, heap.size());
+			int arrival = heap.poll();
+			settled[arrival] = generation;
+			lastExpanded++;
+
+			int station = targets[arrival];
+			if (station == end) {
+				return join(graph, route, i, spur, arrival, changeCost, sequence);
+			}
+			if (--expansionsLeft <= 0
+					|| ((lastExpanded & (CLOCK_INTERVAL - 1)) == 0 && System.nanoTime() > deadline)) {
+				lastTruncated = true;
+				return null;
+			}
+
+			int line = lines[arrival];
+			int last = offsets[station + 1];
+			lastRelaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				if (settled[slot] != generation) {
+					reach(slot, (long) cost[arrival] + 1 + (lines[slot] != line ? changeCost : 0), arrival,
+							targets[slot], lines[slot], changeCost);
+				}
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Records a better way to reach a slot, if it is one and the station it
+	 * reaches may be passed through on the way to the end.
+	 */
+	private void reach(int slot, long slotCost, int from, int station, int line, int changeCost) {
+		if (isBlocked(station) || toEndMark[station] != query || !isOpen(slot)) {
+			return;
+		}
+		long estimate = slotCost + toEnd[station] + (changeCost > 0 ? (long) lineChanges[line] * changeCost : 0);
+		if (estimate > Integer.MAX_VALUE || (reached[slot] == generation && cost[slot] <= slotCost)) {
+			return;
+		}
+		reached[slot] = generation;
+		cost[slot] = (int) slotCost;
+		parent[slot] = from;
+		heap.offer(slot, (int) estimate);
+	}
+
+	/*
+	 * Whether a slot may be taken despite the closures.
+	 */
+	private boolean isOpen(int slot) {
+		return closed == null || !closed.isClosed(slot);
+	}
+
+	/*
+	 * Whether a station is on the path branched off, up to the spur station.
+	 */
+	private boolean isBlocked(int station) {
+		return blocked[station] == branching && blockedAt[station] <= spurIndex;
+	}
+
+	/*
+	 * Whether the spur search may hop from the spur station to a station on
+	 * the way to the end.
+	 */
+	private boolean mayHop(int next) {
+		return blockedNext[next] != generation && !isBlocked(next) && toEndMark[next] == query;
+	}
+
+	/*
+	 * Whether the shortest path from a station to the end avoids every
+	 * station blocked.
+	 */
+	private boolean isClear(int station, int end) {
+		for (; station != end; station = towardsEnd[station]) {
+			lastExpanded++;
+			if (isBlocked(station)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Joins the path found by a spur search onto the first i stops of a
+	 * route, or makes it a route of its own if there is none.
+	 */
+	private Route join(CompactGraph graph, Route route, int i, int spur, int arrival, int changeCost,
+			long sequence) {
+		int spurStops = 0;
+		for (int slot = arrival; slot != -1; slot = parent[slot]) {
+			spurStops++;
+		}
+		int[] stations = root(route, i, spur, spurStops);
+		int length = stations.length;
+		for (int slot = arrival; slot != -1; slot = parent[slot]) {
+			stations[--length] = graph.targets[slot];
+		}
+		return route(graph, stations, i, changeCost, sequence);
+	}
+
+	/*
+	 * Joins the shortest path from a station next to the spur station onto
+	 * the first i stops of a route, ranking by stops.
+	 */
+	private Route along(CompactGraph graph, Route route, int i, int spur, int next, long sequence) {
+		int[] stations = root(route, i, spur, toEnd[next] + 1);
+		for (int s = i + 1, station = next; s < stations.length; s++, station = towardsEnd[station]) {
+			stations[s] = station;
+		}
+		return route(graph, stations, i, 0, sequence);
+	}
+
+	/*
+	 * Copies the first i stops of a route, or none if there is no route,
+	 * into the start of a path with room for more stops after the spur
+	 * station.
+	 */
+	private static int[] root(Route route, int i, int spur, int spurStops) {
+		int[] stations = new int[i + spurStops + 1];
+		if (route != null) {
+			System.arraycopy(route.stations, 0, stations, 0, i);
+		}
+		stations[i] = spur;
+		return stations;
+	}
+
+	/*
+	 * Costs the path through the given stations, branching off at the i-th.
+	 */
+	private static Route route(CompactGraph graph, int[] stations, int i, int changeCost, long sequence) {
+		int[][] hops = fewestChanges(graph, stations, stations.length - 1);
+		int changes = Integer.MAX_VALUE;
+		for (int c = hops[2][stations.length - 2]; c < hops[2][stations.length - 1]; c++) {
+			changes = Math.min(changes, hops[1][c]);
+		}
+		return new Route(stations, changes * changeCost + stations.length - 1, changes, i, sequence);
+	}
+
+	/*
+	 * Finds the fewest changes of line along the first stops of a path, for
+	 * every slot each hop could be taken along. The slots of hop j and the
+	 * fewest changes up to and including them are slots[from[j] ..
+	 * from[j + 1] - 1] and changes[from[j] .. from[j + 1] - 1], returned as
+	 * { slots, changes, from }.
+	 */
+	private static int[][] fewestChanges(CompactGraph graph, int[] stations, int stops) {
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final short[] lines = graph.lines;
+		final Closures closed = graph.activeClosures();
+		int[] from = new int[stops + 1];
+		int[] slots = new int[stops];
+		int[] changes = new int[stops];
+		int count = 0;
+		for (int j = 0; j < stops; j++) {
+			from[j] = count;
+			for (int slot = offsets[stations[j]]; slot < offsets[stations[j] + 1]; slot++) {
+				if (targets[slot] != stations[j + 1] || (closed != null && closed.isClosed(slot))) {
+					continue;
+				}
+				if (count == slots.length) {
+					slots = Arrays.copyOf(slots, count * 2);
+					changes = Arrays.copyOf(changes, count * 2);
+				}
+				// carry on from whichever slot of the hop before changes least
+				int best = 0;
+				if (j > 0) {
+					best = Integer.MAX_VALUE;
+					for (int c = from[j - 1]; c < from[j]; c++) {
+						best = Math.min(best, changes[c] + (lines[slots[c]] != lines[slot] ? 1 : 0));
+					}
+				}
+				slots[count] = slot;
+				changes[count++] = best;
+			}
+		}
+		from[stops] = count;
+		return new int[][] { slots, changes, from };
+	}
+
+	/*
+	 * Returns the fewest changes of line along the first i stops of a path
+	 * and then leaving its i-th station along a slot, given the fewest
+	 * changes along the path.
+	 */
+	private static int leave(int[][] root, int i, short[] lines, int slot) {
+		int best = Integer.MAX_VALUE;
+		for (int c = root[2][i - 1]; c < root[2][i]; c++) {
+			best = Math.min(best, root[1][c] + (lines[root[0][c]] != lines[slot] ? 1 : 0));
+		}
+		return best;
+	}
+
+	/*
+	 * Whether two routes pass through the same first i + 1 stations.
+	 */
+	private static boolean sharesPrefix(Route a, Route b, int i) {
+		return Arrays.equals(a.stations, 0, i + 1, b.stations, 0, i + 1);
+	}
+
+	private boolean outOfBudget() {
+		return expansionsLeft <= 0 || System.nanoTime() > deadline;
+	}
+
+	/*
+	 * Finds the stops from every station to the end with a breadth-first
+	 * search back from it, segments running both ways and being closed both
+	 * ways, so every station is reached along open segments only.
+	 */
+	private void distancesToEnd(CompactGraph graph, int end) {
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = end;
+		toEnd[end] = 0;
+		toEndMark[end] = query;
+		while (head < tail) {
+			int station = queue[head++];
+			int last = offsets[station + 1];
+			lastRelaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				int next = targets[slot];
+				if (toEndMark[next] != query && isOpen(slot)) {
+					toEndMark[next] = query;
+					toEnd[next] = toEnd[station] + 1;
+					towardsEnd[next] = station;
+					queue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Finds the fewest changes from every line to a line stopping at the end
+	 * with a breadth-first search over the lines back from those, lines being
+	 * next to each other where they share a station. Arriving at a station
+	 * along a line, at least that many more changes are needed to reach the
+	 * end, and changing to a line next to it takes a change and brings the
+	 * end at most one change closer, which keeps the estimate consistent.
+	 * Closures only take ways away, so the estimate ignores them and stays a
+	 * lower bound.
+	 */
+	private void lineChangesToEnd(CompactGraph graph, int end) {
+		final int[] offsets = graph.offsets;
+		final short[] lines = graph.lines;
+		int lineCount = graph.lineCount();
+		if (lineChanges.length < lineCount) {
+			lineChanges = new int[lineCount];
+			lineQueue = new int[lineCount];
+		}
+		Arrays.fill(lineChanges, 0, lineCount, -1);
+
+		// there can be more lines than stations, so lines have a queue of
+		// their own
+		int head = 0;
+		int tail = 0;
+		for (int slot = offsets[end]; slot < offsets[end + 1]; slot++) {
+			if (lineChanges[lines[slot]] == -1) {
+				lineChanges[lines[slot]] = 0;
+				lineQueue[tail++] = lines[slot];
+			}
+		}
+		while (head < tail) {
+			int line = lineQueue[head++];
+			for (int stop = graph.lineStart[line]; stop < graph.lineStart[line + 1]; stop++) {
+				int station = graph.lineStops[stop];
+				for (int slot = offsets[station]; slot < offsets[station + 1]; slot++) {
+					if (lineChanges[lines[slot]] == -1) {
+						lineChanges[lines[slot]] = lineChanges[line] + 1;
+						lineQueue[tail++] = lines[slot];
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Records the stops and changes of the paths found and returns their
+	 * stations.
+	 */
+	private int[][] finish(List<Route> routes) {
+		int[][] paths = new int[routes.size()][];
+		lastStops = new int[routes.size()];
+		lastChanges = new int[routes.size()];
+		for (int r = 0; r < paths.length; r++) {
+			Route route = routes.get(r);
+			paths[r] = route.stations;
+			lastStops[r] = route.stations.length - 1;
+			lastChanges[r] = route.changes;
+		}
+		return paths;
+	}
+
+	/*
+	 * Prepares the buffers for a new query over the given graph.
+	 */
+	private void begin(CompactGraph graph) {
+		// grow the buffers if the graph outgrew them
+		int slots = graph.slotCount();
+		int stations = graph.stationCount();
+		if (reached.length < slots || blocked.length < stations) {
+			cost = new int[slots];
+			parent = new int[slots];
+			reached = new int[slots];
+			settled = new int[slots];
+			blocked = new int[stations];
+			blockedAt = new int[stations];
+			blockedNext = new int[stations];
+			toEnd = new int[stations];
+			toEndMark = new int[stations];
+			towardsEnd = new int[stations];
+			queue = new int[stations];
+			generation = 0;
+			branching = 0;
+			query = 0;
+		}
+
+		// start a new query, clearing the marks once the counter wraps
+		if (++query == 0) {
+			Arrays.fill(toEndMark, 0);
+			query = 1;
+		}
+	}
+
+	/*
+	 * Starts a new spur search, clearing the marks once the counter wraps.
+	 */
+	private void nextGeneration() {
+		if (++generation == 0) {
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			Arrays.fill(blockedNext, 0);
+			generation = 1;
+		}
+	}
+
+	/*
+	 * Starts branching off a new path, clearing the marks once the counter
+	 * wraps.
+	 */
+	private void nextBranching() {
+		if (++branching == 0) {
+			Arrays.fill(blocked, 0);
+			branching = 1;
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for breadth-first searches over a compact graph.
+ *
+ * Every search records a single parent per station and only builds the path
+ * once the end station has been reached. Stations are marked as visited with
+ * the number of the search that visited them, so starting a new search never
+ * has to clear anything. One instance is kept per thread, which makes a
+ * steady stream of searches allocate nothing but their results. Segments,
+ * stations and lines closed on the graph are never searched through.
+ */
+public class BreadthFirstSearch implements SearchStatistics {
+	private static final ThreadLocal<BreadthFirstSearch> SCRATCH = new ThreadLocal<BreadthFirstSearch>() {
+		@Override
+		protected BreadthFirstSearch initialValue() {
+			return new BreadthFirstSearch();
+		}
+	};
+
+	// ring buffer of stations to search, its length is a power of two
+	private int[] queue = new int[0];
+	// station each station was discovered from, valid if stamped this search
+	private int[] parent = new int[0];
+	// number of the search that last visited each station
+	private int[] visited = new int[0];
+	// the same buffers for the frontier grown backwards from the end station
+	private int[] queueB = new int[0];
+	private int[] parentB = new int[0];
+	private int[] visitedB = new int[0];
+	// number of the current search
+	private int generation;
+	// work done by the last search
+	private int lastExpanded;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private BreadthFirstSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static BreadthFirstSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds a path with the fewest stops between two stations.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] path(CompactGraph graph, int start, int end) {
+		begin(graph.stationCount());
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final Closures closed = graph.activeClosures();
+		final int mask = queue.length - 1;
+		int head = 0;
+		int tail = 0;
+		if (!graph.isOpen(start) || !graph.isOpen(end)) {
+			finish(0, 0, 0);
+			return null;
+		}
+
+		visit(start, start);
+		queue[tail++ & mask] = start;
+
+		// keep searching while searchable stations exist and the end station
+		// has not been discovered
+		long relaxed = 0;
+		int peak = 1;
+		while (head != tail && visited[end] != generation) {
+			peak = Math.max(peak, tail - head);
+			int station = queue[head++ & mask];
+			int last = offsets[station + 1];
+			relaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				int child = targets[slot];
+				if (visited[child] != generation && (closed == null || !closed.isClosed(slot))) {
+					visit(child, station);
+					queue[tail++ & mask] = child;
+				}
+			}
+		}
+		finish(head, relaxed, peak);
+
+		return visited[end] == generation ? pathTo(start, end) : null;
+	}
+
+	/**
+	 * Finds paths with the fewest stops from one station to many, with a
+	 * single search that stops once every end station has been discovered,
+	 * all the paths being rebuilt from the same parents.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param ends
+	 *            the ids of the ending stations, which may repeat
+	 * @return the station ids along the path to each ending station, in the
+	 *         same order, with null where there is no path
+	 */
+	public int[][] paths(CompactGraph graph, int start, int[] ends) {
+		begin(graph.stationCount());
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final Closures closed = graph.activeClosures();
+		final int mask = queue.length - 1;
+		int head = 0;
+		int tail = 0;
+
+		// a closed station is never left, so no other is discovered
+		visit(start, start);
+		if (graph.isOpen(start)) {
+			queue[tail++ & mask] = start;
+		}
+
+		// mark the distinct ending stations still to be discovered, reusing
+		// the marks of the backward frontier
+		int remaining = 0;
+		for (int end : ends) {
+			if (visited[end] != generation && visitedB[end] != generation) {
+				visitedB[end] = generation;
+				remaining++;
+			}
+		}
+
+		long relaxed = 0;
+		int peak = 1;
+		while (head != tail && remaining > 0) {
+			peak = Math.max(peak, tail - head);
+			int station = queue[head++ & mask];
+			int last = offsets[station + 1];
+			relaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				int child = targets[slot];
+				if (visited[child] != generation && (closed == null || !closed.isClosed(slot))) {
+					visit(child, station);
+					queue[tail++ & mask] = child;
+					if (visitedB[child] == generation) {
+						remaining--;
+					}
+				}
+			}
+		}
+		finish(head, relaxed, peak);
+
+		int[][] paths = new int[ends.length][];
+		for (int i = 0; i < ends.length; i++) {
+			boolean found = visited[ends[i]] == generation && graph.isOpen(ends[i]);
+			paths[i] = found ? pathTo(start, ends[i]) : null;
+		}
+		return paths;
+	}
+
+	/**
+	 * Searches the whole component of a station, recording the station every
+	 * other station was discovered from.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param root
+	 *            the id of the station to search from
+	 * @param parents
+	 *            receives the parent of every station, the root being its own
+	 *            parent and unreachable stations having -1
+	 */
+	public void tree(CompactGraph graph, int root, int[] parents) {
+		begin(graph.stationCount());
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final Closures closed = graph.activeClosures();
+		final int mask = queue.length - 1;
+		int head = 0;
+		int tail = 0;
+
+		Arrays.fill(parents, -1);
+		parents[root] = root;
+		queue[tail++ & mask] = root;
+
+		long relaxed = 0;
+		int peak = 1;
+		while (head != tail) {
+			peak = Math.max(peak, tail - head);
+			int station = queue[head++ & mask];
+			int last = offsets[station + 1];
+			relaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				int child = targets[slot];
+				if (parents[child] == -1 && (closed == null || !closed.isClosed(slot))) {
+					parents[child] = station;
+					queue[tail++ & mask] = child;
+				}
+			}
+		}
+		finish(head, relaxed, peak);
+	}
+
+	/**
+	 * Finds a path with the fewest stops between two stations by growing one
+	 * frontier from each station until they meet, always expanding a whole
+	 * level of the smaller frontier. This expands roughly the square root of
+	 * the stations a one-sided search would on large networks.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] bidirectionalPath(CompactGraph graph, int start, int end) {
+		begin(graph.stationCount());
+		if (!graph.isOpen(start) || !graph.isOpen(end)) {
+			finish(0, 0, 0);
+			return null;
+		} else if (start == end) {
+			finish(0, 0, 0);
+			return new int[] { start };
+		}
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final Closures closed = graph.activeClosures();
+		final int mask = queue.length - 1;
+		int head = 0, tail = 0;
+		int headB = 0, tailB = 0;
+
+		visit(start, start);
+		queue[tail++ & mask] = start;
+		visitedB[end] = generation;
+		parentB[end] = end;
+		queueB[tailB++ & mask] = end;
+
+		// keep expanding while both frontiers have stations to search
+		int expanded = 0;
+		long relaxed = 0;
+		int peak = 2;
+		while (head != tail && headB != tailB) {
+			// expand the whole current level of the smaller frontier
+			boolean forward = tail - head <= tailB - headB;
+			int[] q = forward ? queue : queueB;
+			int[] seen = forward ? visited : visitedB;
+			int[] from = forward ? parent : parentB;
+			int[] other = forward ? visitedB : visited;
+			int h = forward ? head : headB;
+			int t = forward ? tail : tailB;
+			int levelEnd = t;
+			int otherSize = forward ? tailB - headB : tail - head;
+
+			while (h != levelEnd) {
+				peak = Math.max(peak, t - h + otherSize);
+				int station = q[h++ & mask];
+				int last = offsets[station + 1];
+				expanded++;
+				relaxed += last - offsets[station];
+				for (int slot = offsets[station]; slot < last; slot++) {
+					int child = targets[slot];
+					if (closed != null && closed.isClosed(slot)) {
+						continue;
+					}
+					if (other[child] == generation) {
+						// the frontiers met, and every level so far was
+						// expanded in full, so this path is a shortest one
+						finish(expanded, relaxed, peak);
+						return forward ? joinedPath(start, end, station, child) : joinedPath(start, end, child, station);
+					}
+					if (seen[child] != generation) {
+						seen[child] = generation;
+						from[child] = station;
+						q[t++ & mask] = child;
+					}
+				}
+			}
+
+			if (forward) {
+				head = h;
+				tail = t;
+			} else {
+				headB = h;
+				tailB = t;
+			}
+		}
+
+		finish(expanded, relaxed, peak);
+		return null;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastExpanded;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/*
+	 * Prepares the buffers for a new search over the given number of stations.
+	 */
+	private void begin(int stations) {
+		// grow the buffers if the graph outgrew them
+		if (parent.length < stations) {
+			int capacity = Integer.highestOneBit(Math.max(stations - 1, 1)) << 1;
+			queue = new int[capacity];
+			parent = new int[stations];
+			visited = new int[stations];
+			queueB = new int[capacity];
+			parentB = new int[stations];
+			visitedB = new int[stations];
+			generation = 0;
+		}
+
+		// start a new generation, clearing the marks once the counter wraps
+		if (++generation == 0) {
+			Arrays.fill(visited, 0);
+			Arrays.fill(visitedB, 0);
+			generation = 1;
+		}
+	}
+
+	/*
+	 * Records the work done by a search.
+	 */
+	private void finish(int expanded, long relaxed, int peak) {
+		lastExpanded = expanded;
+		lastRelaxed = relaxed;
+		lastQueuePeak = peak;
+	}
+
+	/*
+	 * Marks a station as visited and records where it was discovered from.
+	 */
+	private void visit(int station, int from) {
+		visited[station] = generation;
+		parent[station] = from;
+	}
+
+	/*
+	 * Rebuilds the path to a visited station by following the parents back to
+	 * the start.
+	 */
+	private int[] pathTo(int start, int end) {
+		int length = 1;
+		for (int s = end; s != start; s = parent[s]) {
+			length++;
+		}
+
+		int[] path = new int[length];
+		for (int s = end; length > 0; s = parent[s]) {
+			path[--length] = s;
+		}
+		return path;
+	}
+
+	/*
+	 * Rebuilds the path through the segment where the two frontiers met, the
+	 * first station being reached from the start and the second from the end.
+	 */
+	private int[] joinedPath(int start, int end, int fromStart, int fromEnd) {
+		// count the stations on either side of the meeting segment
+		int before = 1;
+		for (int s = fromStart; s != start; s = parent[s]) {
+			before++;
+		}
+		int after = 1;
+		for (int s = fromEnd; s != end; s = parentB[s]) {
+			after++;
+		}
+
+		// fill the start side backwards and the end side forwards
+		int[] path = new int[before + after];
+		int i = before;
+		for (int s = fromStart; i > 0; s = parent[s]) {
+			path[--i] = s;
+		}
+		i = before;
+		for (int s = fromEnd; i < path.length; s = parentB[s]) {
+			path[i++] = s;
+		}
+		return path;
+	}
+}
@@ -0,0 +1,468 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A mask of the segments, stations and lines of a graph closed by
+ * disruptions, which every search of a graph carrying it avoids.
+ *
+ * The mask is three bitsets over the adjacency slots, the stations and the
+ * lines of the graph, so closing or reopening a segment, a station or a whole
+ * line only sets or clears a bit or two, and the graph is never rebuilt. A
+ * slot may be taken if neither it, the station it reaches nor its line is
+ * closed, which searches test as they relax it, and only while anything is
+ * closed at all, so an empty mask costs them one read per search.
+ *
+ * Changes are made under the mask's lock and then published by bumping its
+ * version, which searches read before looking at any bit, so a search sees
+ * every change made before it started. A search running while the mask
+ * changes may see some of the change.
+ *
+ * Closing can split a connected component of the graph. Every change marks
+ * the one component it is in as changed, and the stations of a changed
+ * component are labelled again with the parts the closures leave connected
+ * the next time any of them is asked about. The stations are kept sorted by
+ * component, and each component's labels in an array of its own, so
+ * labelling walks and copies only that component's stations and leaves
+ * every other component alone.
+ */
+public class Closures {
+	// the graph's adjacency, lines and components
+	private final int[] offsets;
+	private final int[] targets;
+	private final short[] lines;
+	private final int[] lineStart;
+	private final int[] lineStops;
+	private final int[] components;
+	private final int componentCount;
+	// the stations sorted by component, those of a component starting at its
+	// offset, and the position of each station in its component
+	private final int[] members;
+	private final int[] memberStart;
+	private final int[] position;
+
+	// one bit per closed slot, station and line, changed under the lock
+	private final int[] closedSlots;
+	private final int[] closedStations;
+	private final int[] closedLines;
+	private int closedSegmentCount;
+	private int closedStationCount;
+	private int closedLineCount;
+
+	// number of changes made so far, published after every change
+	private volatile int version;
+	// whether anything is closed, published along with the version
+	private volatile boolean empty = true;
+	// version of the last change made in each component
+	private final int[] changedAt;
+	// connected parts of every component left by the closures, relabelled
+	// lazily, or null for a component never relabelled
+	private final AtomicReferenceArray<Parts> parts;
+
+	/**
+	 * Construct an empty mask for a graph, with nothing closed.
+	 *
+	 * @param graph
+	 *            the graph whose segments, stations and lines can be closed
+	 */
+	public Closures(CompactGraph graph) {
+		offsets = graph.offsets;
+		targets = graph.targets;
+		lines = graph.lines;
+		lineStart = graph.lineStart;
+		lineStops = graph.lineStops;
+		components = graph.components;
+		componentCount = graph.componentCount();
+		closedSlots = new int[(targets.length + 31) >>> 5];
+		closedStations = new int[(graph.stationCount() + 31) >>> 5];
+		closedLines = new int[(graph.lineCount() + 31) >>> 5];
+		changedAt = new int[componentCount];
+		parts = new AtomicReferenceArray<Parts>(componentCount);
+
+		// sort the stations by component, counting the stations of each
+		memberStart = new int[componentCount + 1];
+		for (int component : components) {
+			memberStart[component + 1]++;
+		}
+		for (int c = 0; c < componentCount; c++) {
+			memberStart[c + 1] += memberStart[c];
+		}
+		members = new int[components.length];
+		position = new int[components.length];
+		int[] next = Arrays.copyOf(memberStart, componentCount);
+		for (int s = 0; s < components.length; s++) {
+			int at = next[components[s]]++;
+			members[at] = s;
+			position[s] = at - memberStart[components[s]];
+		}
+	}
+
+	/**
+	 * @param graph
+	 *            a graph
+	 * @return if this mask was built for the graph, or for another graph
+	 *         sharing its adjacency
+	 */
+	public boolean isFor(CompactGraph graph) {
+		return graph.offsets == offsets && graph.targets == targets;
+	}
+
+	/**
+	 * Closes both directions of every segment between two neighbouring
+	 * stations, on every line.
+	 *
+	 * @param a
+	 *            the id of a station
+	 * @param b
+	 *            the id of a neighbouring station
+	 * @return if any segment was open until now
+	 * @throws IllegalArgumentException
+	 *             in case of the stations not being neighbours
+	 */
+	public boolean closeSegment(int a, int b) throws IllegalArgumentException {
+		return setSegment(a, b, true);
+	}
+
+	/**
+	 * Reopens both directions of every segment between two neighbouring
+	 * stations, on every line.
+	 *
+	 * @param a
+	 *            the id of a station
+	 * @param b
+	 *            the id of a neighbouring station
+	 * @return if any segment was closed until now
+	 * @throws IllegalArgumentException
+	 *             in case of the stations not being neighbours
+	 */
+	public boolean reopenSegment(int a, int b) throws IllegalArgumentException {
+		return setSegment(a, b, false);
+	}
+
+	/**
+	 * Closes a station, so that no path passes through, starts or ends at it.
+	 *
+	 * @param station
+	 *            the id of the station
+	 * @return if the station was open until now
+	 */
+	public synchronized boolean closeStation(int station) {
+		if (!flip(closedStations, station, true)) {
+			return false;
+		}
+		closedStationCount++;
+		publish(components[station]);
+		return true;
+	}
+
+	/**
+	 * Reopens a closed station.
+	 *
+	 * @param station
+	 *            the id of the station
+	 * @return if the station was closed until now
+	 */
+	public synchronized boolean reopenStation(int station) {
+		if (!flip(closedStations, station, false)) {
+			return false;
+		}
+		closedStationCount--;
+		publish(components[station]);
+		return true;
+	}
+
+	/**
+	 * Closes every segment of a line, leaving its stations open to the other
+	 * lines through them.
+	 *
+	 * @param line
+	 *            the id of the line
+	 * @return if the line was open until now
+	 */
+	public synchronized boolean closeLine(int line) {
+		if (!flip(closedLines, line, true)) {
+			return false;
+		}
+		closedLineCount++;
+		publish(lineComponent(line));
+		return true;
+	}
+
+	/**
+	 * Reopens a closed line.
+	 *
+	 * @param line
+	 *            the id of the line
+	 * @return if the line was closed until now
+	 */
+	public synchronized boolean reopenLine(int line) {
+		if (!flip(closedLines, line, false)) {
+			return false;
+		}
+		closedLineCount--;
+		publish(lineComponent(line));
+		return true;
+	}
+
+	/**
+	 * @return if nothing is closed
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * @return the number of changes made so far, which only grows, so that
+	 *         work done under one version can be told apart from work done
+	 *         under another
+	 */
+	public int version() {
+		return version;
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @return if the station is closed
+	 */
+	public boolean isStationClosed(int station) {
+		return isSet(closedStations, station);
+	}
+
+	/**
+	 * @param line
+	 *            the id of a line
+	 * @return if the line is closed
+	 */
+	public boolean isLineClosed(int line) {
+		return isSet(closedLines, line);
+	}
+
+	/**
+	 * @param slot
+	 *            an adjacency slot
+	 * @return if the slot may not be taken, as its segment, the station it
+	 *         reaches or its line is closed
+	 */
+	public boolean isClosed(int slot) {
+		int station = targets[slot];
+		int line = lines[slot];
+		return (closedSlots[slot >>> 5] & (1 << slot)) != 0 || (closedStations[station >>> 5] & (1 << station)) != 0
+				|| (closedLines[line >>> 5] & (1 << line)) != 0;
+	}
+
+	/**
+	 * Tells whether a path found before any closure may no longer be taken,
+	 * or may no longer be the best, as one of its stations or any segment
+	 * between two of its stations is closed.
+	 *
+	 * @param path
+	 *            the station ids along a path
+	 * @return if the closures touch the path
+	 */
+	public boolean touches(int[] path) {
+		if (empty) {
+			return false;
+		}
+		for (int i = 0; i < path.length; i++) {
+			if (isStationClosed(path[i])) {
+				return true;
+			}
+			if (i + 1 < path.length) {
+				for (int slot = offsets[path[i]]; slot < offsets[path[i] + 1]; slot++) {
+					if (targets[slot] == path[i + 1] && isClosed(slot)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether any path between two stations avoids the closures,
+	 * labelling the component they are in again if it changed since it was
+	 * last labelled.
+	 *
+	 * @param a
+	 *            the id of a station
+	 * @param b
+	 *            the id of another station
+	 * @return if the stations are open and connected by open segments
+	 */
+	public boolean isConnected(int a, int b) {
+		int component = components[a];
+		if (component != components[b]) {
+			return false;
+		} else if (empty) {
+			return true;
+		} else if (isStationClosed(a) || isStationClosed(b)) {
+			return false;
+		}
+		Parts current = parts.get(component);
+		int changed = changedAt[component];
+		if (changed == 0) {
+			return true;
+		} else if (current == null || current.labelledAt != changed) {
+			current = relabel(component);
+		}
+		return current.labels[position[a]] == current.labels[position[b]];
+	}
+
+	/**
+	 * @return the number of segments closed in either direction, counting
+	 *         parallel segments once
+	 */
+	public synchronized int closedSegmentCount() {
+		return closedSegmentCount;
+	}
+
+	/**
+	 * @return the number of stations closed
+	 */
+	public synchronized int closedStationCount() {
+		return closedStationCount;
+	}
+
+	/**
+	 * @return the number of lines closed
+	 */
+	public synchronized int closedLineCount() {
+		return closedLineCount;
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @return the component the station is in, which is the one a change to
+	 *         it, to a segment through it or to a line stopping at it marks as
+	 *         changed
+	 */
+	public int component(int station) {
+		return components[station];
+	}
+
+	/*
+	 * Sets or clears the bits of both directions of every segment between two
+	 * stations.
+	 */
+	private synchronized boolean setSegment(int a, int b, boolean closed) throws IllegalArgumentException {
+		boolean neighbours = false;
+		boolean changed = false;
+		for (int side = 0; side < 2; side++) {
+			int from = side == 0 ? a : b;
+			int to = side == 0 ? b : a;
+			for (int slot = offsets[from]; slot < offsets[from + 1]; slot++) {
+				if (targets[slot] == to) {
+					neighbours = true;
+					changed |= flip(closedSlots, slot, closed);
+				}
+			}
+		}
+		if (!neighbours) {
+			throw new IllegalArgumentException("Stations " + a + " and " + b + " are not neighbours");
+		}
+		if (changed) {
+			closedSegmentCount += closed ? 1 : -1;
+			publish(components[a]);
+		}
+		return changed;
+	}
+
+	/*
+	 * Marks the component a change was made in, then publishes the change.
+	 */
+	private void publish(int component) {
+		int next = version + 1;
+		if (component >= 0) {
+			changedAt[component] = next;
+		}
+		empty = closedSegmentCount == 0 && closedStationCount == 0 && closedLineCount == 0;
+		version = next;
+	}
+
+	/*
+	 * Finds the component a line is in, or -1 if it has no stops.
+	 */
+	private int lineComponent(int line) {
+		return lineStart[line] < lineStart[line + 1] ? components[lineStops[lineStart[line]]] : -1;
+	}
+
+	/*
+	 * Labels the stations of a component again with the connected part of it
+	 * each is in once the closures are avoided, publishing the new labels.
+	 * Parts are labelled by the position in the component of their first
+	 * station, and only the component's own stations are walked.
+	 */
+	private synchronized Parts relabel(int component) {
+		Parts current = parts.get(component);
+		int target = changedAt[component];
+		if (current != null && current.labelledAt == target) {
+			return current;
+		}
+
+		int first = memberStart[component];
+		int size = memberStart[component + 1] - first;
+		int[] relabelled = new int[size];
+		Arrays.fill(relabelled, -1);
+		int[] queue = new int[Math.min(size, 16)];
+		for (int root = 0; root < size; root++) {
+			if (relabelled[root] != -1) {
+				continue;
+			}
+			relabelled[root] = root;
+			if (isStationClosed(members[first + root])) {
+				continue;
+			}
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = members[first + root];
+			while (head < tail) {
+				int station = queue[head++];
+				for (int slot = offsets[station]; slot < offsets[station + 1]; slot++) {
+					int next = targets[slot];
+					if (relabelled[position[next]] == -1 && !isClosed(slot)) {
+						relabelled[position[next]] = root;
+						if (tail == queue.length) {
+							queue = Arrays.copyOf(queue, tail * 2);
+						}
+						queue[tail++] = next;
+					}
+				}
+			}
+		}
+		current = new Parts(relabelled, target);
+		parts.set(component, current);
+		return current;
+	}
+
+	/*
+	 * Sets or clears a bit, telling whether it changed.
+	 */
+	private static boolean flip(int[] bits, int index, boolean set) {
+		int word = bits[index >>> 5];
+		int changed = set ? word | (1 << index) : word & ~(1 << index);
+		bits[index >>> 5] = changed;
+		return changed != word;
+	}
+
+	private static boolean isSet(int[] bits, int index) {
+		return (bits[index >>> 5] & (1 << index)) != 0;
+	}
+
+	/*
+	 * The connected part of a component each of its stations is in, by
+	 * position in the component, and the version of the last change the
+	 * component was labelled after.
+	 */
+	private static class Parts {
+		private final int[] labels;
+		private final int labelledAt;
+
+		private Parts(int[] labels, int labelledAt) {
+			this.labels = labels;
+			this.labelledAt = labelledAt;
+		}
+	}
+}
@@ -0,0 +1,634 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable graph of stations connected by line segments, stored in
+ * compressed sparse row (CSR) form.
+ *
+ * Station names are interned to dense int ids and line names to dense short
+ * ids. The neighbours of station {@code s} are the slots
+ * {@code offsets[s] .. offsets[s + 1] - 1} of the parallel {@code targets} and
+ * {@code lines} arrays, so traversals only ever touch primitive arrays. The
+ * stations of every line are kept in their original order as well, so the
+ * graph can answer line queries without any other structure.
+ *
+ * The graph may also carry the travel time of every segment, the time taken
+ * to change lines at particular stations, and the coordinates of the
+ * stations, for searches that minimise travel time rather than stops.
+ *
+ * Every station is labelled with the connected component it belongs to, so
+ * that stations without any path between them are told apart in constant
+ * time, without searching.
+ *
+ * A graph may carry a mask of closed segments, stations and lines, which
+ * every search of it avoids. The mask is the only part of a graph that can
+ * change, and is carried by a view of the graph sharing all its arrays.
+ */
+public class CompactGraph {
+	/**
+	 * Seconds taken to travel a segment whose travel time is not known.
+	 */
+	public static final int DEFAULT_SEGMENT_TIME = 120;
+
+	// mean radius of the Earth in metres
+	private static final double EARTH_RADIUS = 6371000;
+
+	// station ids <-> station names
+	final NameTable stations;
+	// line ids <-> line names
+	final NameTable lineNames;
+
+	// stops of line l are lineStops[lineStart[l] .. lineStart[l + 1] - 1]
+	final int[] lineStart;
+	final int[] lineStops;
+
+	// adjacency of station s is slots offsets[s] .. offsets[s + 1] - 1
+	final int[] offsets;
+	// station reached through each slot
+	final int[] targets;
+	// line id of the segment behind each slot
+	final short[] lines;
+
+	// seconds to travel the segment behind each slot, or null if not known
+	final int[] times;
+	// seconds to change lines at each station, -1 where not known, or null
+	final int[] transferTimes;
+	// latitude and longitude of each station, NaN where not known, or null
+	final double[] coordinates;
+	// position of each station in metres from the centre of the Earth, three
+	// values per station, or null unless every station has coordinates
+	final double[] positions;
+	// greatest speed over any segment in metres per second, so that distance
+	// divided by it never overestimates a travel time
+	final double topSpeed;
+
+	// connected component of each station, numbered from 0
+	final int[] components;
+	private final int componentCount;
+
+	// segments, stations and lines closed, or null if nothing can be closed
+	final Closures closures;
+
+	/**
+	 * Construct a graph from already interned stations and lines.
+	 *
+	 * @param stations
+	 *            the name of every station, indexed by station id
+	 * @param lineNames
+	 *            the name of every line, indexed by line id
+	 * @param lineStart
+	 *            the offset of every line's first stop in lineStops, with an
+	 *            extra trailing entry holding the total number of stops
+	 * @param lineStops
+	 *            the station ids of every line's stops, line after line
+	 * @throws IllegalArgumentException
+	 *             in case of there being more lines than a short id can hold
+	 */
+	public CompactGraph(String[] stations, String[] lineNames, int[] lineStart, int[] lineStops)
+			throws IllegalArgumentException {
+		this(stations, lineNames, lineStart, lineStops, null, null, null);
+	}
+
+	/**
+	 * Construct a graph from already interned stations and lines, along with
+	 * their travel times and coordinates.
+	 *
+	 * @param stations
+	 *            the name of every station, indexed by station id
+	 * @param lineNames
+	 *            the name of every line, indexed by line id
+	 * @param lineStart
+	 *            the offset of every line's first stop in lineStops, with an
+	 *            extra trailing entry holding the total number of stops
+	 * @param lineStops
+	 *            the station ids of every line's stops, line after line
+	 * @param stopTimes
+	 *            the seconds taken to reach every stop from the line's
+	 *            previous stop, parallel to lineStops, -1 where not known, or
+	 *            null if no travel times are known
+	 * @param coordinates
+	 *            the latitude and longitude of every station in degrees, two
+	 *            values per station, NaN where not known, or null if no
+	 *            coordinates are known
+	 * @param transferTimes
+	 *            the seconds taken to change lines at every station, -1 where
+	 *            not known, or null if none are known
+	 * @throws IllegalArgumentException
+	 *             in case of there being more lines than a short id can hold
+	 */
+	public CompactGraph(String[] stations, String[] lineNames, int[] lineStart, int[] lineStops, int[] stopTimes,
+			double[] coordinates, int[] transferTimes) throws IllegalArgumentException {
+		if (lineNames.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many lines: " + lineNames.length);
+		}
+
+		// intern the names so they can be looked up by the controller
+		this.stations = new NameTable(stations);
+		this.lineNames = new NameTable(lineNames);
+		this.lineStart = lineStart;
+		this.lineStops = lineStops;
+
+		// count the degree of every station, one for each side of a segment
+		offsets = new int[stations.length + 1];
+		for (int l = 0; l < lineNames.length; l++) {
+			for (int i = lineStart[l] + 1; i < lineStart[l + 1]; i++) {
+				offsets[lineStops[i - 1] + 1]++;
+				offsets[lineStops[i] + 1]++;
+			}
+		}
+
+		// turn the degrees into the offset of each station's first slot
+		for (int s = 0; s < stations.length; s++) {
+			offsets[s + 1] += offsets[s];
+		}
+
+		// fill in both directions of every segment
+		targets = new int[offsets[stations.length]];
+		lines = new short[targets.length];
+		times = stopTimes != null ? new int[targets.length] : null;
+		int[] next = Arrays.copyOf(offsets, stations.length);
+		for (int l = 0; l < lineNames.length; l++) {
+			for (int i = lineStart[l] + 1; i < lineStart[l + 1]; i++) {
+				int a = lineStops[i - 1];
+				int b = lineStops[i];
+
+				if (times != null) {
+					int time = stopTimes[i] >= 0 ? stopTimes[i] : DEFAULT_SEGMENT_TIME;
+					times[next[a]] = time;
+					times[next[b]] = time;
+				}
+				targets[next[a]] = b;
+				lines[next[a]++] = (short) l;
+				targets[next[b]] = a;
+				lines[next[b]++] = (short) l;
+			}
+		}
+
+		this.transferTimes = transferTimes;
+		this.coordinates = coordinates;
+		positions = positions(coordinates, stations.length);
+		topSpeed = topSpeed(positions, offsets, targets, times);
+		components = components(offsets, targets);
+		componentCount = count(components);
+		closures = null;
+	}
+
+	/*
+	 * Construct a graph from arrays already in compressed sparse row form, as
+	 * read back from a snapshot.
+	 */
+	CompactGraph(NameTable stations, NameTable lineNames, int[] lineStart, int[] lineStops, int[] offsets,
+			int[] targets, short[] lines, int[] times, int[] transferTimes, double[] coordinates, int[] components) {
+		this.stations = stations;
+		this.lineNames = lineNames;
+		this.lineStart = lineStart;
+		this.lineStops = lineStops;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.lines = lines;
+		this.times = times;
+		this.transferTimes = transferTimes;
+		this.coordinates = coordinates;
+		positions = positions(coordinates, stations.size());
+		topSpeed = topSpeed(positions, offsets, targets, times);
+		this.components = components != null ? components : components(offsets, targets);
+		componentCount = count(this.components);
+		closures = null;
+	}
+
+	/*
+	 * Construct a view of a graph sharing all its arrays, carrying a mask of
+	 * closures.
+	 */
+	private CompactGraph(CompactGraph graph, Closures closures) {
+		stations = graph.stations;
+		lineNames = graph.lineNames;
+		lineStart = graph.lineStart;
+		lineStops = graph.lineStops;
+		offsets = graph.offsets;
+		targets = graph.targets;
+		lines = graph.lines;
+		times = graph.times;
+		transferTimes = graph.transferTimes;
+		coordinates = graph.coordinates;
+		positions = graph.positions;
+		topSpeed = graph.topSpeed;
+		components = graph.components;
+		componentCount = graph.componentCount;
+		this.closures = closures;
+	}
+
+	/*
+	 * Labels every station with its connected component, searching each
+	 * component breadth-first from its lowest station id.
+	 */
+	private static int[] components(int[] offsets, int[] targets) {
+		int stations = offsets.length - 1;
+		int[] components = new int[stations];
+		Arrays.fill(components, -1);
+		int[] queue = new int[stations];
+		int count = 0;
+
+		for (int root = 0; root < stations; root++) {
+			if (components[root] != -1) {
+				continue;
+			}
+			int head = 0;
+			int tail = 0;
+			components[root] = count;
+			queue[tail++] = root;
+			while (head < tail) {
+				int station = queue[head++];
+				for (int slot = offsets[station]; slot < offsets[station + 1]; slot++) {
+					if (components[targets[slot]] == -1) {
+						components[targets[slot]] = count;
+						queue[tail++] = targets[slot];
+					}
+				}
+			}
+			count++;
+		}
+		return components;
+	}
+
+	/*
+	 * Counts the components, which are numbered in order of their lowest
+	 * station id.
+	 */
+	private static int count(int[] components) {
+		int count = 0;
+		for (int component : components) {
+			count = Math.max(count, component + 1);
+		}
+		return count;
+	}
+
+	/*
+	 * Places every station on a sphere the size of the Earth, if every
+	 * station has coordinates. Straight-line distances between these points
+	 * never exceed the distance along any route between them.
+	 */
+	private static double[] positions(double[] coordinates, int stations) {
+		if (coordinates == null) {
+			return null;
+		}
+		double[] positions = new double[stations * 3];
+		for (int s = 0; s < stations; s++) {
+			double latitude = Math.toRadians(coordinates[2 * s]);
+			double longitude = Math.toRadians(coordinates[2 * s + 1]);
+			if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+				return null;
+			}
+			positions[3 * s] = EARTH_RADIUS * Math.cos(latitude) * Math.cos(longitude);
+			positions[3 * s + 1] = EARTH_RADIUS * Math.cos(latitude) * Math.sin(longitude);
+			positions[3 * s + 2] = EARTH_RADIUS * Math.sin(latitude);
+		}
+		return positions;
+	}
+
+	/*
+	 * Finds the greatest speed over any segment, which is infinite if a
+	 * segment between two different places takes no time at all.
+	 */
+	private static double topSpeed(double[] positions, int[] offsets, int[] targets, int[] times) {
+		if (positions == null) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double speed = 0;
+		for (int s = 0; s + 1 < offsets.length; s++) {
+			for (int slot = offsets[s]; slot < offsets[s + 1]; slot++) {
+				double distance = distance(positions, s, targets[slot]);
+				int time = times != null ? times[slot] : DEFAULT_SEGMENT_TIME;
+				if (distance > 0) {
+					speed = Math.max(speed, time > 0 ? distance / time : Double.POSITIVE_INFINITY);
+				}
+			}
+		}
+		return speed;
+	}
+
+	/*
+	 * Measures the straight-line distance between two stations in metres.
+	 */
+	static double distance(double[] positions, int a, int b) {
+		double x = positions[3 * a] - positions[3 * b];
+		double y = positions[3 * a + 1] - positions[3 * b + 1];
+		double z = positions[3 * a + 2] - positions[3 * b + 2];
+		return Math.sqrt(x * x + y * y + z * z);
+	}
+
+	/**
+	 * Builds a graph from lines and their respective stations, interning both
+	 * in the iteration order of the map.
+	 *
+	 * @param lineMap
+	 *            the lines and their respective stations, in order
+	 * @return the graph of the stations and lines
+	 * @throws IllegalArgumentException
+	 *             in case of there being more lines than a short id can hold
+	 */
+	public static CompactGraph fromLines(Map<String, String[]> lineMap) throws IllegalArgumentException {
+		Map<String, Integer> ids = new HashMap<String, Integer>(64);
+		String[] lineNames = new String[lineMap.size()];
+		int[] lineStart = new int[lineMap.size() + 1];
+
+		// count the stops so the stop array can be allocated once
+		int stops = 0;
+		for (String[] line : lineMap.values()) {
+			stops += line.length;
+		}
+		int[] lineStops = new int[stops];
+
+		// give every line and every newly seen station the next free id
+		int l = 0;
+		int i = 0;
+		for (Entry<String, String[]> pair : lineMap.entrySet()) {
+			lineNames[l] = pair.getKey();
+			lineStart[l++] = i;
+			for (String station : pair.getValue()) {
+				Integer id = ids.get(station);
+				if (id == null) {
+					id = ids.size();
+					ids.put(station, id);
+				}
+				lineStops[i++] = id;
+			}
+		}
+		lineStart[l] = i;
+
+		String[] stations = new String[ids.size()];
+		for (Entry<String, Integer> pair : ids.entrySet()) {
+			stations[pair.getValue()] = pair.getKey();
+		}
+
+		return new CompactGraph(stations, lineNames, lineStart, lineStops);
+	}
+
+	/**
+	 * @return the number of stations in the graph
+	 */
+	public int stationCount() {
+		return stations.size();
+	}
+
+	/**
+	 * @return the number of lines in the graph
+	 */
+	public int lineCount() {
+		return lineNames.size();
+	}
+
+	/**
+	 * @return the number of slots, i.e. twice the number of segments
+	 */
+	public int slotCount() {
+		return targets.length;
+	}
+
+	/**
+	 * @param name
+	 *            the name of a station
+	 * @return the id of the station, or -1 if it does not exist
+	 */
+	public int stationId(String name) {
+		return stations.id(name);
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @return the name of the station
+	 */
+	public String stationName(int station) {
+		return stations.name(station);
+	}
+
+	/**
+	 * @param name
+	 *            the name of a line
+	 * @return the id of the line, or -1 if it does not exist
+	 */
+	public int lineId(String name) {
+		return lineNames.id(name);
+	}
+
+	/**
+	 * @param line
+	 *            the id of a line
+	 * @return the name of the line
+	 */
+	public String lineName(int line) {
+		return lineNames.name(line);
+	}
+
+	/**
+	 * @param line
+	 *            the id of a line
+	 * @return the number of stops on the line
+	 */
+	public int stopCount(int line) {
+		return lineStart[line + 1] - lineStart[line];
+	}
+
+	/**
+	 * @param line
+	 *            the id of a line
+	 * @param index
+	 *            the position of the stop along the line
+	 * @return the station id of the stop
+	 */
+	public int stop(int line, int index) {
+		return lineStops[lineStart[line] + index];
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @return the first adjacency slot of the station
+	 */
+	public int firstSlot(int station) {
+		return offsets[station];
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @return one past the last adjacency slot of the station
+	 */
+	public int endSlot(int station) {
+		return offsets[station + 1];
+	}
+
+	/**
+	 * @param slot
+	 *            an adjacency slot
+	 * @return the station reached through the slot
+	 */
+	public int target(int slot) {
+		return targets[slot];
+	}
+
+	/**
+	 * @param slot
+	 *            an adjacency slot
+	 * @return the line id of the segment behind the slot
+	 */
+	public int line(int slot) {
+		return lines[slot];
+	}
+
+	/**
+	 * @param slot
+	 *            an adjacency slot
+	 * @return the seconds taken to travel the segment behind the slot
+	 */
+	public int time(int slot) {
+		return times != null ? times[slot] : DEFAULT_SEGMENT_TIME;
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @return the seconds taken to change lines at the station, or -1 if not
+	 *         known
+	 */
+	public int transferTime(int station) {
+		return transferTimes != null ? transferTimes[station] : -1;
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @return the connected component of the station, components being
+	 *         numbered from 0
+	 */
+	public int component(int station) {
+		return components[station];
+	}
+
+	/**
+	 * @return the number of connected components
+	 */
+	public int componentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Tells whether there is any path between two stations, in constant time
+	 * unless closures changed the component they are in since it was last
+	 * asked about.
+	 *
+	 * @param a
+	 *            the id of a station
+	 * @param b
+	 *            the id of another station
+	 * @return if the stations are in the same connected component, and still
+	 *         connected despite any closures
+	 */
+	public boolean isConnected(int a, int b) {
+		return components[a] == components[b] && (closures == null || closures.isConnected(a, b));
+	}
+
+	/**
+	 * Views this graph with a mask of closures, which every search of the
+	 * view avoids, sharing all the arrays of this graph.
+	 *
+	 * @param closures
+	 *            the closures built for this graph, or null to view the graph
+	 *            without any
+	 * @return a view of this graph carrying the closures
+	 * @throws IllegalArgumentException
+	 *             in case of the closures being built for another graph
+	 */
+	public CompactGraph withClosures(Closures closures) throws IllegalArgumentException {
+		if (closures != null && !closures.isFor(this)) {
+			throw new IllegalArgumentException("Closures built for another graph");
+		}
+		return closures == this.closures ? this : new CompactGraph(this, closures);
+	}
+
+	/**
+	 * @return the closures this graph carries, or null if it carries none
+	 */
+	public Closures closures() {
+		return closures;
+	}
+
+	/*
+	 * Returns the closures searches must avoid, or null if nothing is closed.
+	 */
+	Closures activeClosures() {
+		Closures mask = closures;
+		return mask != null && !mask.isEmpty() ? mask : null;
+	}
+
+	/*
+	 * Tells whether a search may start or end at a station.
+	 */
+	boolean isOpen(int station) {
+		Closures mask = activeClosures();
+		return mask == null || !mask.isStationClosed(station);
+	}
+
+	/**
+	 * @return if travel times were given for the segments, rather than every
+	 *         segment taking the default time
+	 */
+	public boolean hasTravelTimes() {
+		return times != null;
+	}
+
+	/**
+	 * @return if every station has coordinates, so that searches can be
+	 *         guided by the distance left to travel
+	 */
+	public boolean hasCoordinates() {
+		return positions != null;
+	}
+
+	/**
+	 * Finds a path with the fewest stops between two stations.
+	 *
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] bfs(int start, int end) {
+		return BreadthFirstSearch.local().path(this, start, end);
+	}
+
+	/**
+	 * Builds the equivalent object graph of nodes and edges, for code written
+	 * against the Node and Edge API.
+	 *
+	 * @return a map of the station names and their respective Node object
+	 */
+	public Map<String, Node<String, String>> toNodes() {
+		Map<String, Node<String, String>> nodesMap = new HashMap<String, Node<String, String>>(stationCount() * 2);
+		for (int s = 0; s < stationCount(); s++) {
+			nodesMap.put(stationName(s), new Node<String, String>(stationName(s)));
+		}
+
+		// create one edge per segment, visiting each segment from its lower end
+		for (int s = 0; s < stationCount(); s++) {
+			for (int slot = offsets[s]; slot < offsets[s + 1]; slot++) {
+				if (s < targets[slot]) {
+					Node<String, String> a = nodesMap.get(stationName(s));
+					Node<String, String> b = nodesMap.get(stationName(targets[slot]));
+					Edge<String, String> edge = new Edge<String, String>(a, b, lineName(lines[slot]));
+					a.addEdge(edge);
+					b.addEdge(edge);
+				}
+			}
+		}
+
+		return nodesMap;
+	}
+}
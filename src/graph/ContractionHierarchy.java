@@ -0,0 +1,499 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable contraction hierarchy of a graph, answering searches for the
+ * fewest stops by searching upwards from both ends through a few stations
+ * each rather than through the whole network.
+ *
+ * Stations are contracted one after another, least important first: each is
+ * taken out of the graph, and wherever the fewest stops between two of its
+ * neighbours ran through it a shortcut between them is added, recording the
+ * station it bypasses. Importance is the edge difference, the shortcuts a
+ * contraction adds less the segments it takes out, plus the neighbours
+ * already contracted so that contraction spreads evenly over the network. A
+ * shortcut is not needed if a witness search finds another way between the
+ * neighbours no longer than through the station, the witness search giving up
+ * after settling a few dozen stations, which can only add shortcuts that were
+ * not needed. Networks whose interchanges are as good as randomly connected
+ * leave a dense core of stations that takes most of the build.
+ *
+ * The build runs in rounds on a fork-join pool. Every round contracts at
+ * once all the stations less important than each of their neighbours, so no
+ * two of them are neighbours, with witness searches that avoid every station
+ * of the round so that no two contractions rely on each other's station. The
+ * importance of their neighbours is then updated for the next round, also in
+ * parallel.
+ *
+ * Only the segments and shortcuts from every station up to the more important
+ * ones are kept, in the same flat layout as the graph, each with its length in
+ * stops and the station it bypasses, or -1 for a segment. The hierarchy is
+ * built ignoring closures, and can be saved in a network snapshot so it does
+ * not have to be rebuilt.
+ */
+public class ContractionHierarchy {
+	// stations a witness search may settle before giving up
+	private static final int WITNESS_LIMIT = 50;
+	// stations below which a range is updated without splitting it further
+	private static final int GRAIN = 256;
+
+	final int[] offsets;
+	final int[] targets;
+	// order each station was contracted in
+	final int[] rank;
+	// the segments and shortcuts up from station s are upTargets[upOffsets[s]
+	// .. upOffsets[s + 1] - 1], each with its length and the station it
+	// bypasses, or -1
+	final int[] upOffsets;
+	final int[] upTargets;
+	final int[] upLengths;
+	final int[] upMiddles;
+
+	/**
+	 * Construct the hierarchy of a graph on the common fork-join pool.
+	 *
+	 * @param graph
+	 *            the graph to contract
+	 */
+	public ContractionHierarchy(CompactGraph graph) {
+		this(graph, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Construct the hierarchy of a graph.
+	 *
+	 * @param graph
+	 *            the graph to contract
+	 * @param pool
+	 *            the pool to contract stations and update their importance on
+	 */
+	public ContractionHierarchy(CompactGraph graph, ForkJoinPool pool) {
+		offsets = graph.offsets;
+		targets = graph.targets;
+		Builder builder = new Builder(graph);
+		builder.contract(pool);
+		rank = builder.rank;
+
+		// keep the segments and shortcuts each station had when contracted,
+		// all of which lead to stations contracted later
+		int stations = graph.stationCount();
+		upOffsets = new int[stations + 1];
+		for (int s = 0; s < stations; s++) {
+			upOffsets[s + 1] = upOffsets[s] + builder.degree[s];
+		}
+		upTargets = new int[upOffsets[stations]];
+		upLengths = new int[upTargets.length];
+		upMiddles = new int[upTargets.length];
+		for (int s = 0; s < stations; s++) {
+			int degree = builder.degree[s];
+			System.arraycopy(builder.neighbours[s], 0, upTargets, upOffsets[s], degree);
+			System.arraycopy(builder.lengths[s], 0, upLengths, upOffsets[s], degree);
+			System.arraycopy(builder.middles[s], 0, upMiddles, upOffsets[s], degree);
+		}
+	}
+
+	/*
+	 * Construct a hierarchy read back from a snapshot of the graph.
+	 */
+	ContractionHierarchy(CompactGraph graph, int[] rank, int[] upOffsets, int[] upTargets, int[] upLengths,
+			int[] upMiddles) {
+		offsets = graph.offsets;
+		targets = graph.targets;
+		this.rank = rank;
+		this.upOffsets = upOffsets;
+		this.upTargets = upTargets;
+		this.upLengths = upLengths;
+		this.upMiddles = upMiddles;
+	}
+
+	/**
+	 * @param graph
+	 *            a graph
+	 * @return if this hierarchy was built for the graph, or for another graph
+	 *         sharing its adjacency
+	 */
+	public boolean isFor(CompactGraph graph) {
+		return graph.offsets == offsets && graph.targets == targets;
+	}
+
+	/**
+	 * @return the number of stations in the hierarchy
+	 */
+	public int stationCount() {
+		return rank.length;
+	}
+
+	/**
+	 * @return the number of segments and shortcuts kept, each once
+	 */
+	public int edgeCount() {
+		return upTargets.length;
+	}
+
+	/**
+	 * @return the number of shortcuts added
+	 */
+	public int shortcutCount() {
+		int shortcuts = 0;
+		for (int middle : upMiddles) {
+			if (middle != -1) {
+				shortcuts++;
+			}
+		}
+		return shortcuts;
+	}
+
+	/**
+	 * Reports the memory taken by the hierarchy.
+	 *
+	 * @return the size of the hierarchy's arrays in bytes
+	 */
+	public long footprint() {
+		return 4L * (rank.length + upOffsets.length + upTargets.length * 3L);
+	}
+
+	/*
+	 * Finds the slot of the segment or shortcut up from a station to another,
+	 * or -1 if there is none.
+	 */
+	int upSlot(int from, int to) {
+		for (int slot = upOffsets[from]; slot < upOffsets[from + 1]; slot++) {
+			if (upTargets[slot] == to) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * The graph as it is while stations are contracted: the neighbours left
+	 * to every station with the length of the way to each and the station it
+	 * bypasses, the importance of the stations left, and the order of those
+	 * contracted.
+	 */
+	private static class Builder {
+		private final int stations;
+		private final int[][] neighbours;
+		private final int[][] lengths;
+		private final int[][] middles;
+		private final int[] degree;
+		private final int[] priority;
+		private final int[] contractedNeighbours;
+		private final int[] rank;
+		// round each station was contracted in, or 0 if it is still left
+		private final int[] round;
+		// witness searches of every thread of the pool
+		private final ThreadLocal<Witness> witnesses;
+		// shortcuts added by the contraction of each station of a round, as
+		// triples of both ends and length
+		private final int[][] added;
+
+		private Builder(CompactGraph graph) {
+			stations = graph.stationCount();
+			neighbours = new int[stations][];
+			lengths = new int[stations][];
+			middles = new int[stations][];
+			degree = new int[stations];
+			priority = new int[stations];
+			contractedNeighbours = new int[stations];
+			rank = new int[stations];
+			round = new int[stations];
+			added = new int[stations][];
+			witnesses = ThreadLocal.withInitial(() -> new Witness(stations));
+
+			// start from every pair of neighbours once, however many lines
+			// run between them
+			int[] seen = new int[stations];
+			Arrays.fill(seen, -1);
+			for (int s = 0; s < stations; s++) {
+				int count = 0;
+				int[] list = new int[graph.offsets[s + 1] - graph.offsets[s]];
+				for (int slot = graph.offsets[s]; slot < graph.offsets[s + 1]; slot++) {
+					int next = graph.targets[slot];
+					if (next != s && seen[next] != s) {
+						seen[next] = s;
+						list[count++] = next;
+					}
+				}
+				neighbours[s] = list;
+				lengths[s] = new int[list.length];
+				Arrays.fill(lengths[s], 1);
+				middles[s] = new int[list.length];
+				Arrays.fill(middles[s], -1);
+				degree[s] = count;
+			}
+		}
+
+		/*
+		 * Contracts every station, a round of mutually independent stations
+		 * at a time.
+		 */
+		private void contract(ForkJoinPool pool) {
+			int[] left = new int[stations];
+			for (int s = 0; s < stations; s++) {
+				left[s] = s;
+			}
+			int leftCount = stations;
+			// no round is under way yet, so only the station itself is avoided
+			pool.invoke(new Split(left, 0, leftCount, s -> priority[s] = simulate(s, -1)));
+
+			int[] chosen = new int[stations];
+			int[] touched = new int[stations];
+			int[] touchedAt = new int[stations];
+			int contracted = 0;
+			for (int r = 1; leftCount > 0; r++) {
+				// choose the stations less important than all their neighbours
+				int count = 0;
+				for (int i = 0; i < leftCount; i++) {
+					if (isLocalMinimum(left[i])) {
+						chosen[count++] = left[i];
+					}
+				}
+				int current = r;
+				for (int i = 0; i < count; i++) {
+					round[chosen[i]] = current;
+				}
+
+				// find their shortcuts in parallel, then add them in turn
+				pool.invoke(new Split(chosen, 0, count, s -> added[s] = witnesses.get().shortcuts(this, s, current)));
+				int touchedCount = 0;
+				for (int i = 0; i < count; i++) {
+					int s = chosen[i];
+					rank[s] = contracted++;
+					for (int k = 0; k < degree[s]; k++) {
+						int next = neighbours[s][k];
+						remove(next, s);
+						contractedNeighbours[next]++;
+						if (touchedAt[next] != current) {
+							touchedAt[next] = current;
+							touched[touchedCount++] = next;
+						}
+					}
+					int[] shortcuts = added[s];
+					for (int k = 0; k < shortcuts.length; k += 3) {
+						link(shortcuts[k], shortcuts[k + 1], shortcuts[k + 2], s);
+						link(shortcuts[k + 1], shortcuts[k], shortcuts[k + 2], s);
+					}
+					added[s] = null;
+				}
+
+				// update the importance of the neighbours left
+				pool.invoke(new Split(touched, 0, touchedCount, s -> priority[s] = simulate(s, current)));
+				int kept = 0;
+				for (int i = 0; i < leftCount; i++) {
+					if (round[left[i]] == 0) {
+						left[kept++] = left[i];
+					}
+				}
+				leftCount = kept;
+			}
+		}
+
+		/*
+		 * Tells whether a station is less important than every neighbour
+		 * left, ties going to the lower id.
+		 */
+		private boolean isLocalMinimum(int station) {
+			int p = priority[station];
+			for (int k = 0; k < degree[station]; k++) {
+				int next = neighbours[station][k];
+				int q = priority[next];
+				if (q < p || (q == p && next < station)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/*
+		 * Finds the importance of a station from the shortcuts contracting it
+		 * would add.
+		 */
+		private int simulate(int station, int current) {
+			int shortcuts = witnesses.get().shortcuts(this, station, current).length / 3;
+			return shortcuts - degree[station] + contractedNeighbours[station];
+		}
+
+		/*
+		 * Takes a contracted station out of the neighbours of another.
+		 */
+		private void remove(int station, int contracted) {
+			int[] list = neighbours[station];
+			int last = --degree[station];
+			for (int k = 0; k <= last; k++) {
+				if (list[k] == contracted) {
+					list[k] = list[last];
+					lengths[station][k] = lengths[station][last];
+					middles[station][k] = middles[station][last];
+					return;
+				}
+			}
+		}
+
+		/*
+		 * Adds a shortcut from one station to another, or shortens the way
+		 * already there.
+		 */
+		private void link(int from, int to, int length, int middle) {
+			int[] list = neighbours[from];
+			int count = degree[from];
+			for (int k = 0; k < count; k++) {
+				if (list[k] == to) {
+					if (length < lengths[from][k]) {
+						lengths[from][k] = length;
+						middles[from][k] = middle;
+					}
+					return;
+				}
+			}
+			if (count == list.length) {
+				int grown = Math.max(4, count * 2);
+				neighbours[from] = list = Arrays.copyOf(list, grown);
+				lengths[from] = Arrays.copyOf(lengths[from], grown);
+				middles[from] = Arrays.copyOf(middles[from], grown);
+			}
+			list[count] = to;
+			lengths[from][count] = length;
+			middles[from][count] = middle;
+			degree[from] = count + 1;
+		}
+	}
+
+	/*
+	 * Scratch space of one thread for the witness searches of contractions.
+	 */
+	private static class Witness {
+		private final IndexedMinHeap heap;
+		private final int[] stops;
+		private final int[] reached;
+		// number of the search each station is to be reached by
+		private final int[] target;
+		private int generation;
+		private int[] found = new int[48];
+
+		private Witness(int stations) {
+			heap = new IndexedMinHeap(stations);
+			stops = new int[stations];
+			reached = new int[stations];
+			target = new int[stations];
+		}
+
+		/*
+		 * Finds the shortcuts contracting a station would add between its
+		 * neighbours, the witness searches avoiding it and every other
+		 * station chosen in the same round.
+		 */
+		private int[] shortcuts(Builder builder, int station, int current) {
+			int[] list = builder.neighbours[station];
+			int[] lengths = builder.lengths[station];
+			int degree = builder.degree[station];
+
+			int count = 0;
+			for (int i = 0; i + 1 < degree; i++) {
+				// search from each neighbour to those after it, only as far as
+				// the way to the furthest of them through the station
+				int from = list[i];
+				int longest = 0;
+				for (int j = i + 1; j < degree; j++) {
+					longest = Math.max(longest, lengths[j]);
+				}
+				search(builder, station, i, lengths[i] + longest, current);
+				for (int j = i + 1; j < degree; j++) {
+					int to = list[j];
+					int through = lengths[i] + lengths[j];
+					if (reached[to] != generation || stops[to] > through) {
+						if (count + 3 > found.length) {
+							found = Arrays.copyOf(found, found.length * 2);
+						}
+						found[count++] = from;
+						found[count++] = to;
+						found[count++] = through;
+					}
+				}
+			}
+			return Arrays.copyOf(found, count);
+		}
+
+		/*
+		 * Finds the fewest stops from a neighbour of a station to the
+		 * neighbours after it, no further than a limit, avoiding the stations
+		 * being contracted, until every one of them is settled.
+		 */
+		private void search(Builder builder, int avoided, int neighbour, int limit, int current) {
+			if (++generation == 0) {
+				Arrays.fill(reached, 0);
+				Arrays.fill(target, 0);
+				generation = 1;
+			}
+			int[] list = builder.neighbours[avoided];
+			int left = builder.degree[avoided] - neighbour - 1;
+			for (int j = neighbour + 1; j < builder.degree[avoided]; j++) {
+				target[list[j]] = generation;
+			}
+
+			int from = list[neighbour];
+			heap.clear(builder.stations);
+			reached[from] = generation;
+			stops[from] = 0;
+			heap.offer(from, 0);
+			int settled = 0;
+			while (!heap.isEmpty() && left > 0 && settled++ < WITNESS_LIMIT) {
+				int station = heap.poll();
+				if (target[station] == generation) {
+					left--;
+				}
+				int base = stops[station];
+				int[] next = builder.neighbours[station];
+				int[] lengths = builder.lengths[station];
+				for (int k = 0; k < builder.degree[station]; k++) {
+					int child = next[k];
+					int length = base + lengths[k];
+					if (child == avoided || builder.round[child] == current || length > limit) {
+						continue;
+					}
+					if (reached[child] != generation || length < stops[child]) {
+						reached[child] = generation;
+						stops[child] = length;
+						heap.offer(child, length);
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Applies an update to a range of stations, splitting it between the
+	 * threads of the pool.
+	 */
+	private static class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] stations;
+		private final int from;
+		private final int to;
+		private final IntConsumer update;
+
+		private Split(int[] stations, int from, int to, IntConsumer update) {
+			this.stations = stations;
+			this.from = from;
+			this.to = to;
+			this.update = update;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= GRAIN) {
+				for (int i = from; i < to; i++) {
+					update.accept(stations[i]);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Split(stations, from, middle, update), new Split(stations, middle, to, update));
+			}
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for searches of a path with the fewest stops between
+ * stations over a contraction hierarchy.
+ *
+ * Both ends are searched from at once, each only up to stations contracted
+ * later, until neither search can beat the best way found through a station
+ * both reached. A station is not searched on from if a station contracted
+ * later reaches it in fewer stops, since no shortest path goes up through it
+ * from there. The shortcuts along the way found are then unpacked, through
+ * the stations they bypass, back into every station along the path.
+ *
+ * The hierarchy is built ignoring closures, and so are these searches, which
+ * leaves any closed segment, station or line on the path for the caller to
+ * check. Stations are stamped with the number of the search that reached
+ * them, and one instance is kept per thread.
+ */
+public class ContractionSearch implements SearchStatistics {
+	private static final ThreadLocal<ContractionSearch> SCRATCH = new ThreadLocal<ContractionSearch>() {
+		@Override
+		protected ContractionSearch initialValue() {
+			return new ContractionSearch();
+		}
+	};
+
+	private final IndexedMinHeap heap = new IndexedMinHeap(0);
+	private final IndexedMinHeap heapB = new IndexedMinHeap(0);
+	// stops to each station and the slot of the segment or shortcut it was
+	// reached by, valid if stamped this search
+	private int[] stops = new int[0];
+	private int[] slot = new int[0];
+	private int[] parent = new int[0];
+	// number of the search that last reached each station
+	private int[] reached = new int[0];
+	// the same buffers for the search from the end station
+	private int[] stopsB = new int[0];
+	private int[] slotB = new int[0];
+	private int[] parentB = new int[0];
+	private int[] reachedB = new int[0];
+	// number of the current search
+	private int generation;
+	// stations along the path being unpacked
+	private int[] path = new int[16];
+	private int length;
+	// work done by the last search
+	private int lastExpanded;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private ContractionSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static ContractionSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds a path with the fewest stops between two stations, ignoring
+	 * closures.
+	 *
+	 * @param hierarchy
+	 *            the hierarchy of the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] path(ContractionHierarchy hierarchy, int start, int end) {
+		begin(hierarchy.stationCount());
+		if (start == end) {
+			finish(0, 0, 0);
+			return new int[] { start };
+		}
+
+		final int[] upOffsets = hierarchy.upOffsets;
+		final int[] upTargets = hierarchy.upTargets;
+		final int[] upLengths = hierarchy.upLengths;
+		int expanded = 0;
+		long relaxed = 0;
+		int peak = 2;
+		int best = Integer.MAX_VALUE;
+		int meeting = -1;
+
+		reach(reached, stops, parent, slot, start, 0, start, -1);
+		heap.offer(start, 0);
+		reach(reachedB, stopsB, parentB, slotB, end, 0, end, -1);
+		heapB.offer(end, 0);
+		while (true) {
+			int key = heap.isEmpty() ? Integer.MAX_VALUE : heap.peekKey();
+			int keyB = heapB.isEmpty() ? Integer.MAX_VALUE : heapB.peekKey();
+			if (Math.min(key, keyB) >= best) {
+				break;
+			}
+
+			// expand the nearer station of either search
+			boolean forward = key <= keyB;
+			IndexedMinHeap queue = forward ? heap : heapB;
+			int[] seen = forward ? reached : reachedB;
+			int[] count = forward ? stops : stopsB;
+			int[] from = forward ? parent : parentB;
+			int[] by = forward ? slot : slotB;
+			int[] other = forward ? reachedB : reached;
+			int[] otherCount = forward ? stopsB : stops;
+
+			int station = queue.poll();
+			int base = count[station];
+			expanded++;
+			if (other[station] == generation && base + otherCount[station] < best) {
+				best = base + otherCount[station];
+				meeting = station;
+			}
+
+			// skip stations reached in fewer stops from further up
+			int first = upOffsets[station];
+			int last = upOffsets[station + 1];
+			boolean stalled = false;
+			for (int s = first; s < last && !stalled; s++) {
+				int next = upTargets[s];
+				stalled = seen[next] == generation && count[next] + upLengths[s] < base;
+			}
+			if (stalled) {
+				continue;
+			}
+
+			relaxed += last - first;
+			for (int s = first; s < last; s++) {
+				int next = upTargets[s];
+				int nextStops = base + upLengths[s];
+				if (seen[next] != generation || nextStops < count[next]) {
+					reach(seen, count, from, by, next, nextStops, station, s);
+					queue.offer(next, nextStops);
+				}
+			}
+			peak = Math.max(peak, heap.size() + heapB.size());
+		}
+
+		finish(expanded, relaxed, peak);
+		if (meeting == -1) {
+			return null;
+		}
+		return unpack(hierarchy, start, end, meeting);
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastExpanded;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/*
+	 * Prepares the buffers for a new search over the given number of
+	 * stations.
+	 */
+	private void begin(int stations) {
+		// grow the buffers if the hierarchy outgrew them
+		if (reached.length < stations) {
+			stops = new int[stations];
+			slot = new int[stations];
+			parent = new int[stations];
+			reached = new int[stations];
+			stopsB = new int[stations];
+			slotB = new int[stations];
+			parentB = new int[stations];
+			reachedB = new int[stations];
+			generation = 0;
+		}
+		heap.clear(stations);
+		heapB.clear(stations);
+
+		// start a new generation, clearing the marks once the counter wraps
+		if (++generation == 0) {
+			Arrays.fill(reached, 0);
+			Arrays.fill(reachedB, 0);
+			generation = 1;
+		}
+	}
+
+	/*
+	 * Records the work done by a search.
+	 */
+	private void finish(int expanded, long relaxed, int peak) {
+		lastExpanded = expanded;
+		lastRelaxed = relaxed;
+		lastQueuePeak = peak;
+	}
+
+	/*
+	 * Records the stops to a station by one of the searches, the station it
+	 * was reached from and the slot of the way there.
+	 */
+	private void reach(int[] seen, int[] count, int[] from, int[] by, int station, int stopCount, int previous,
+			int s) {
+		seen[station] = generation;
+		count[station] = stopCount;
+		from[station] = previous;
+		by[station] = s;
+	}
+
+	/*
+	 * Rebuilds the path through the station both searches met at, unpacking
+	 * every shortcut along it.
+	 */
+	private int[] unpack(ContractionHierarchy hierarchy, int start, int end, int meeting) {
+		// the stations up from the start, which the parents list backwards
+		int up = 0;
+		for (int s = meeting; s != start; s = parent[s]) {
+			up++;
+		}
+		int[] climb = new int[up];
+		for (int s = meeting, i = up; s != start; s = parent[s]) {
+			climb[--i] = s;
+		}
+
+		length = 0;
+		append(start);
+		int at = start;
+		for (int next : climb) {
+			expand(hierarchy, at, next, hierarchy.upMiddles[slot[next]]);
+			at = next;
+		}
+		for (int s = meeting; s != end; s = parentB[s]) {
+			expand(hierarchy, s, parentB[s], hierarchy.upMiddles[slotB[s]]);
+		}
+		return Arrays.copyOf(path, length);
+	}
+
+	/*
+	 * Appends the stations after one station up to another, the way between
+	 * them bypassing the given station, or -1 if they are neighbours.
+	 */
+	private void expand(ContractionHierarchy hierarchy, int from, int to, int middle) {
+		if (middle == -1) {
+			append(to);
+			return;
+		}
+		// the middle was contracted before both ends, so its ways to both
+		// are kept among its own
+		expand(hierarchy, from, middle, hierarchy.upMiddles[hierarchy.upSlot(middle, from)]);
+		expand(hierarchy, middle, to, hierarchy.upMiddles[hierarchy.upSlot(middle, to)]);
+	}
+
+	private void append(int station) {
+		if (length == path.length) {
+			path = Arrays.copyOf(path, length * 2);
+		}
+		path[length++] = station;
+	}
+}
@@ -0,0 +1,252 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for searches of the fastest path between stations,
+ * by travel time with a penalty for every change of line.
+ *
+ * As the cost of leaving a station depends on the line it was reached by,
+ * the search runs over adjacency slots rather than stations: reaching a slot
+ * means arriving at its target station along its line. Slots are settled in
+ * order of travel time with Dijkstra's algorithm over an indexed binary heap,
+ * optionally guided towards the end station by the straight-line distance
+ * left to travel (A*). Like breadth-first searches, slots are stamped with
+ * the number of the search that reached them, closed segments, stations and
+ * lines are never searched through, and one instance is kept per thread.
+ */
+public class FastestPathSearch implements SearchStatistics {
+	private static final ThreadLocal<FastestPathSearch> SCRATCH = new ThreadLocal<FastestPathSearch>() {
+		@Override
+		protected FastestPathSearch initialValue() {
+			return new FastestPathSearch();
+		}
+	};
+
+	// slots to settle, by travel time plus the estimate of the time left
+	private final IndexedMinHeap heap = new IndexedMinHeap(0);
+	// travel time to each slot, valid if stamped this search
+	private int[] time = new int[0];
+	// slot each slot was reached from, -1 for the start station's own slots
+	private int[] parent = new int[0];
+	// number of the search that last reached each slot
+	private int[] reached = new int[0];
+	// number of the current search
+	private int generation;
+	// travel time of the last path found
+	private int lastTime;
+	// number of slots settled by the last search, the segments looked along
+	// from them and the most slots the heap held
+	private int lastSettled;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private FastestPathSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static FastestPathSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds the fastest path between two stations with Dijkstra's algorithm.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @param penalty
+	 *            the seconds taken to change lines at stations which do not
+	 *            have a time of their own
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] path(CompactGraph graph, int start, int end, int penalty) {
+		return search(graph, start, end, penalty, false);
+	}
+
+	/**
+	 * Finds the fastest path between two stations with A*, estimating the
+	 * time left from the straight-line distance to the end station at the
+	 * greatest speed of any segment. The estimate never exceeds the true time
+	 * left, so the path is as fast as the one Dijkstra's algorithm finds,
+	 * while far fewer slots are settled on spread out networks. Searches
+	 * graphs without coordinates with Dijkstra's algorithm.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @param penalty
+	 *            the seconds taken to change lines at stations which do not
+	 *            have a time of their own
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] guidedPath(CompactGraph graph, int start, int end, int penalty) {
+		return search(graph, start, end, penalty, graph.hasCoordinates());
+	}
+
+	/**
+	 * @return the travel time in seconds of the last path found
+	 */
+	public int lastTime() {
+		return lastTime;
+	}
+
+	/**
+	 * @return the number of slots settled by the last search, as a measure of
+	 *         the work it did
+	 */
+	public int lastSettled() {
+		return lastSettled;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastSettled;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	private int[] search(CompactGraph graph, int start, int end, int penalty, boolean guided) {
+		begin(graph.slotCount());
+		lastTime = 0;
+		lastSettled = 0;
+		lastRelaxed = 0;
+		lastQueuePeak = 0;
+		if (!graph.isOpen(start) || !graph.isOpen(end)) {
+			return null;
+		} else if (start == end) {
+			return new int[] { start };
+		}
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final short[] lines = graph.lines;
+		final int[] times = graph.times;
+		final int[] transfers = graph.transferTimes;
+		final double[] positions = guided ? graph.positions : null;
+		final double speed = graph.topSpeed;
+		final Closures closed = graph.activeClosures();
+
+		// leave the start station along every open segment, without a penalty
+		for (int slot = offsets[start]; slot < offsets[start + 1]; slot++) {
+			if (closed != null && closed.isClosed(slot)) {
+				continue;
+			}
+			int cost = times != null ? times[slot] : CompactGraph.DEFAULT_SEGMENT_TIME;
+			reach(slot, cost, -1);
+			heap.offer(slot, cost + estimate(positions, speed, targets[slot], end));
+		}
+
+		while (!heap.isEmpty()) {
+			lastQueuePeak = Math.max(lastQueuePeak, heap.size());
+			int arrival = heap.poll();
+			lastSettled++;
+			int station = targets[arrival];
+			if (station == end) {
+				// every slot left costs at least as much, so this is fastest
+				lastTime = time[arrival];
+				return pathTo(start, arrival, targets);
+			}
+
+			int change = transfers != null && transfers[station] >= 0 ? transfers[station] : penalty;
+			int line = lines[arrival];
+			int base = time[arrival];
+			int last = offsets[station + 1];
+			lastRelaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				if (closed != null && closed.isClosed(slot)) {
+					continue;
+				}
+				int cost = base + (times != null ? times[slot] : CompactGraph.DEFAULT_SEGMENT_TIME);
+				if (lines[slot] != line) {
+					cost += change;
+				}
+				if (reached[slot] != generation || cost < time[slot]) {
+					reach(slot, cost, arrival);
+					heap.offer(slot, cost + estimate(positions, speed, targets[slot], end));
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/*
+	 * Estimates the seconds left from a station to the end station, rounding
+	 * down so that the estimate stays a lower bound.
+	 */
+	private static int estimate(double[] positions, double speed, int station, int end) {
+		if (positions == null) {
+			return 0;
+		}
+		return (int) (CompactGraph.distance(positions, station, end) / speed);
+	}
+
+	/*
+	 * Prepares the buffers for a new search over the given number of slots.
+	 */
+	private void begin(int slots) {
+		// grow the buffers if the graph outgrew them
+		if (reached.length < slots) {
+			time = new int[slots];
+			parent = new int[slots];
+			reached = new int[slots];
+			generation = 0;
+		}
+		heap.clear(slots);
+
+		// start a new generation, clearing the marks once the counter wraps
+		if (++generation == 0) {
+			Arrays.fill(reached, 0);
+			generation = 1;
+		}
+	}
+
+	/*
+	 * Records the travel time to a slot and the slot it was reached from.
+	 */
+	private void reach(int slot, int cost, int from) {
+		reached[slot] = generation;
+		time[slot] = cost;
+		parent[slot] = from;
+	}
+
+	/*
+	 * Rebuilds the path to the target of a slot by following the parents back
+	 * to the start station.
+	 */
+	private int[] pathTo(int start, int arrival, int[] targets) {
+		int length = 1;
+		for (int slot = arrival; slot != -1; slot = parent[slot]) {
+			length++;
+		}
+
+		int[] path = new int[length];
+		path[0] = start;
+		for (int slot = arrival; slot != -1; slot = parent[slot]) {
+			path[--length] = targets[slot];
+		}
+		return path;
+	}
+}
@@ -0,0 +1,285 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for searches of the path with the fewest changes of
+ * line between stations, ties being broken by the fewest stops.
+ *
+ * Like the fastest path searches, the search runs over adjacency slots, so
+ * that reaching a slot means arriving at its target station along its line.
+ * Carrying on along the same line costs no change and changing lines costs
+ * one, which a 0-1 breadth-first search handles without a priority queue. The
+ * slots are searched one number of changes at a time: the slots reached
+ * without changing line are queued behind each other, and the slots reached
+ * by changing line are collected for the next round. Both queues are in
+ * order of stops, so merging them settles the slots of every round in order
+ * of stops, and every slot is queued at most twice per round it is reached
+ * in, keeping the search linear in the number of slots.
+ */
+public class FewestChangesSearch implements SearchStatistics {
+	private static final ThreadLocal<FewestChangesSearch> SCRATCH = new ThreadLocal<FewestChangesSearch>() {
+		@Override
+		protected FewestChangesSearch initialValue() {
+			return new FewestChangesSearch();
+		}
+	};
+
+	// stands for the last slot of a path that is the start station alone
+	private static final int AT_START = -2;
+
+	// slots reached without changing line this round, and their stops
+	private int[] queue = new int[0];
+	private int[] queueStops = new int[0];
+	// slots reached by changing line, for this round and the next
+	private int[] seeds = new int[0];
+	private int[] seedStops = new int[0];
+	private int[] nextSeeds = new int[0];
+	private int[] nextSeedStops = new int[0];
+	// changes and stops of the best way found to each slot, and the slot it
+	// was reached from, valid if stamped this search
+	private int[] changes = new int[0];
+	private int[] stops = new int[0];
+	private int[] parent = new int[0];
+	// number of the search that last reached, and that settled, each slot
+	private int[] reached = new int[0];
+	private int[] settled = new int[0];
+	// number of the current search
+	private int generation;
+	// start station and last slot of the last path found, AT_START if the
+	// path is the start station alone, or -1 if none was found
+	private int lastStart;
+	private int lastArrival = -1;
+	// work done by the last search
+	private int lastExpanded;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private FewestChangesSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static FewestChangesSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds the path with the fewest changes of line between two stations,
+	 * and the fewest stops of those.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] path(CompactGraph graph, int start, int end) {
+		begin(graph.slotCount());
+		lastStart = start;
+		lastArrival = -1;
+		lastExpanded = 0;
+		lastRelaxed = 0;
+		lastQueuePeak = 0;
+		if (!graph.isOpen(start) || !graph.isOpen(end)) {
+			return null;
+		} else if (start == end) {
+			lastArrival = AT_START;
+			return new int[] { start };
+		}
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final short[] lines = graph.lines;
+		final Closures closed = graph.activeClosures();
+
+		// leave the start station along every open segment, without a change
+		int seedCount = 0;
+		for (int slot = offsets[start]; slot < offsets[start + 1]; slot++) {
+			if ((closed == null || !closed.isClosed(slot)) && reach(slot, 0, 1, -1)) {
+				seeds[seedCount] = slot;
+				seedStops[seedCount++] = 1;
+			}
+		}
+
+		for (int round = 0; seedCount > 0; round++) {
+			int nextCount = 0;
+			int seed = 0;
+			int head = 0;
+			int tail = 0;
+
+			// settle the slots of this round in order of stops, taking the
+			// fewer stops of either queue's head each time
+			while (seed < seedCount || head < tail) {
+				int arrival;
+				int arrivalStops;
+				if (head == tail || (seed < seedCount && seedStops[seed] <= queueStops[head])) {
+					arrival = seeds[seed];
+					arrivalStops = seedStops[seed++];
+				} else {
+					arrival = queue[head];
+					arrivalStops = queueStops[head++];
+				}
+				// skip slots settled already, or since reached with fewer stops
+				if (settled[arrival] == generation || stops[arrival] != arrivalStops
+						|| changes[arrival] != round) {
+					continue;
+				}
+				settled[arrival] = generation;
+				lastExpanded++;
+				lastQueuePeak = Math.max(lastQueuePeak, seedCount - seed + tail - head + nextCount);
+
+				int station = targets[arrival];
+				if (station == end) {
+					lastArrival = arrival;
+					return pathTo(start, arrival, targets);
+				}
+
+				int line = lines[arrival];
+				int last = offsets[station + 1];
+				lastRelaxed += last - offsets[station];
+				for (int slot = offsets[station]; slot < last; slot++) {
+					if (closed != null && closed.isClosed(slot)) {
+						continue;
+					} else if (lines[slot] == line) {
+						if (reach(slot, round, arrivalStops + 1, arrival)) {
+							queue[tail] = slot;
+							queueStops[tail++] = arrivalStops + 1;
+						}
+					} else if (reach(slot, round + 1, arrivalStops + 1, arrival)) {
+						nextSeeds[nextCount] = slot;
+						nextSeedStops[nextCount++] = arrivalStops + 1;
+					}
+				}
+			}
+
+			// the slots reached by changing line start the next round
+			int[] swap = seeds;
+			seeds = nextSeeds;
+			nextSeeds = swap;
+			swap = seedStops;
+			seedStops = nextSeedStops;
+			nextSeedStops = swap;
+			seedCount = nextCount;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the number of changes of line along the last path found, or -1
+	 *         if none was found
+	 */
+	public int lastChanges() {
+		if (lastArrival == AT_START) {
+			return 0;
+		}
+		return lastArrival != -1 ? changes[lastArrival] : -1;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastExpanded;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/**
+	 * Lists the lines travelled along the last path found, which stay valid
+	 * until the next search on the calling thread.
+	 *
+	 * @param graph
+	 *            the graph that was searched
+	 * @return the line id of every segment of the last path, in order, or null
+	 *         if none was found
+	 */
+	public int[] lastLines(CompactGraph graph) {
+		if (lastArrival == -1) {
+			return null;
+		} else if (lastArrival == AT_START) {
+			return new int[0];
+		}
+		int[] lines = new int[stops[lastArrival]];
+		int length = lines.length;
+		for (int slot = lastArrival; slot != -1; slot = parent[slot]) {
+			lines[--length] = graph.lines[slot];
+		}
+		return lines;
+	}
+
+	/*
+	 * Records a better way to reach a slot, if it is one: fewer changes, or
+	 * as many changes and fewer stops.
+	 */
+	private boolean reach(int slot, int changeCount, int stopCount, int from) {
+		if (settled[slot] == generation) {
+			return false;
+		}
+		if (reached[slot] == generation && (changes[slot] < changeCount
+				|| (changes[slot] == changeCount && stops[slot] <= stopCount))) {
+			return false;
+		}
+		reached[slot] = generation;
+		changes[slot] = changeCount;
+		stops[slot] = stopCount;
+		parent[slot] = from;
+		return true;
+	}
+
+	/*
+	 * Prepares the buffers for a new search over the given number of slots.
+	 */
+	private void begin(int slots) {
+		// grow the buffers if the graph outgrew them
+		if (reached.length < slots) {
+			queue = new int[slots];
+			queueStops = new int[slots];
+			seeds = new int[slots];
+			seedStops = new int[slots];
+			nextSeeds = new int[slots];
+			nextSeedStops = new int[slots];
+			changes = new int[slots];
+			stops = new int[slots];
+			parent = new int[slots];
+			reached = new int[slots];
+			settled = new int[slots];
+			generation = 0;
+		}
+
+		// start a new generation, clearing the marks once the counter wraps
+		if (++generation == 0) {
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			generation = 1;
+		}
+	}
+
+	/*
+	 * Rebuilds the path to the target of a slot by following the parents back
+	 * to the start station.
+	 */
+	private int[] pathTo(int start, int arrival, int[] targets) {
+		int[] path = new int[stops[arrival] + 1];
+		int length = path.length;
+		for (int slot = arrival; slot != -1; slot = parent[slot]) {
+			path[--length] = targets[slot];
+		}
+		path[0] = start;
+		return path;
+	}
+}
@@ -0,0 +1,171 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of int ids keyed by int priorities, where the priority of
+ * an id already in the heap can be lowered in place.
+ *
+ * The heap and the position of every id in it are kept in primitive arrays,
+ * so neither pushing nor polling allocates, and every id is in the heap at
+ * most once. Emptying the heap only touches the ids still in it, so the heap
+ * can be reused by searches that only ever see a small part of the graph.
+ */
+public class IndexedMinHeap {
+	// ids in heap order, the first size of them being in use
+	private int[] heap;
+	// priority of every id, valid while it is in the heap
+	private int[] keys;
+	// position of every id in the heap, or -1 if it is not in it
+	private int[] position;
+	private int size;
+
+	/**
+	 * Construct an empty heap.
+	 *
+	 * @param capacity
+	 *            one more than the greatest id the heap will hold
+	 */
+	public IndexedMinHeap(int capacity) {
+		heap = new int[capacity];
+		keys = new int[capacity];
+		position = new int[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	/**
+	 * Empties the heap, making room for ids up to the given capacity.
+	 *
+	 * @param capacity
+	 *            one more than the greatest id the heap will hold
+	 */
+	public void clear(int capacity) {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+
+		if (position.length < capacity) {
+			heap = new int[capacity];
+			keys = new int[capacity];
+			position = new int[capacity];
+			Arrays.fill(position, -1);
+		}
+	}
+
+	/**
+	 * @return if the heap holds no ids
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the number of ids in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param id
+	 *            an id
+	 * @return if the id is in the heap
+	 */
+	public boolean contains(int id) {
+		return position[id] != -1;
+	}
+
+	/**
+	 * Adds an id to the heap, or lowers its priority if it is already in it
+	 * with a higher one.
+	 *
+	 * @param id
+	 *            the id to add
+	 * @param key
+	 *            the priority of the id
+	 */
+	public void offer(int id, int key) {
+		int i = position[id];
+		if (i == -1) {
+			i = size++;
+		} else if (keys[id] <= key) {
+			return;
+		}
+		keys[id] = key;
+		siftUp(i, id);
+	}
+
+	/**
+	 * @return the id with the lowest priority, without removing it
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * @return the lowest priority in the heap
+	 */
+	public int peekKey() {
+		return keys[heap[0]];
+	}
+
+	/**
+	 * Removes the id with the lowest priority.
+	 *
+	 * @return the removed id
+	 */
+	public int poll() {
+		int top = heap[0];
+		position[top] = -1;
+		int last = heap[--size];
+		if (size > 0) {
+			siftDown(0, last);
+		}
+		return top;
+	}
+
+	/*
+	 * Moves an id up from the given position until its parent's priority is
+	 * no higher.
+	 */
+	private void siftUp(int i, int id) {
+		int key = keys[id];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int above = heap[parent];
+			if (keys[above] <= key) {
+				break;
+			}
+			heap[i] = above;
+			position[above] = i;
+			i = parent;
+		}
+		heap[i] = id;
+		position[id] = i;
+	}
+
+	/*
+	 * Moves an id down from the given position until neither child has a
+	 * lower priority.
+	 */
+	private void siftDown(int i, int id) {
+		int key = keys[id];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int below = heap[child];
+			if (child + 1 < size && keys[heap[child + 1]] < keys[below]) {
+				below = heap[++child];
+			}
+			if (key <= keys[below]) {
+				break;
+			}
+			heap[i] = below;
+			position[below] = i;
+			i = child;
+		}
+		heap[i] = id;
+		position[id] = i;
+	}
+}
@@ -0,0 +1,279 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * An immutable table of the stops from a few landmark stations to every
+ * station of a graph, bounding the stops between any two stations in time
+ * linear in the number of landmarks.
+ *
+ * By the triangle inequality, the stops between two stations are at least the
+ * difference of their stops from any landmark, and at most the sum. The
+ * greatest difference is a lower bound which guides the landmark search
+ * towards its end, and the least sum an upper bound, both exact when a
+ * landmark lies beyond either station on a shortest path.
+ *
+ * Landmarks are picked either farthest first, each being the station farthest
+ * from all those already picked so that they end up around the edges of the
+ * network and in every component of it, or by degree, the busiest stations
+ * first. The stops are kept as unsigned shorts, station after station, so that
+ * the bounds between two stations read two short runs of memory.
+ *
+ * The table is built ignoring closures. Closing anything can only lengthen
+ * the way between stations, so the lower bound holds despite closures while
+ * the upper bound may not.
+ */
+public class LandmarkIndex {
+	/**
+	 * The bound returned for stations that no path connects, or whose upper
+	 * bound no landmark knows.
+	 */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/**
+	 * How landmarks are picked.
+	 */
+	public enum Selection {
+		/**
+		 * Each landmark is the station farthest from all those already picked,
+		 * stations out of their reach first.
+		 */
+		FARTHEST,
+
+		/**
+		 * The stations with the most segments, skipping the neighbours of
+		 * those already picked.
+		 */
+		DEGREE
+	}
+
+	// stored in place of the stops to a station a landmark does not reach
+	private static final int NONE = 0xFFFF;
+
+	private final int[] offsets;
+	private final int[] targets;
+	private final int[] landmarks;
+	// stops from landmark l to station s at distances[s * landmarks + l], as
+	// unsigned shorts
+	private final short[] distances;
+
+	/**
+	 * Construct the table of a graph by picking landmarks and searching from
+	 * each of them.
+	 *
+	 * @param graph
+	 *            the graph to bound the stops of
+	 * @param count
+	 *            the number of landmarks to pick, fewer being picked if the
+	 *            graph has fewer stations
+	 * @param selection
+	 *            how to pick the landmarks
+	 * @throws IllegalArgumentException
+	 *             in case of the count not being positive, or of a station
+	 *             being more stops from a landmark than a short can hold
+	 */
+	public LandmarkIndex(CompactGraph graph, int count, Selection selection) throws IllegalArgumentException {
+		if (count <= 0) {
+			throw new IllegalArgumentException("Landmark count must be positive: " + count);
+		}
+		offsets = graph.offsets;
+		targets = graph.targets;
+		int stations = graph.stationCount();
+		int k = Math.min(count, stations);
+		landmarks = new int[k];
+		distances = new short[stations * k];
+
+		int[] queue = new int[stations];
+		int[] stops = new int[stations];
+		// the fewest stops from any landmark picked so far to each station
+		int[] nearest = new int[stations];
+		Arrays.fill(nearest, Integer.MAX_VALUE);
+		Integer[] byDegree = selection == Selection.DEGREE ? byDegree(stations) : null;
+		for (int l = 0; l < k; l++) {
+			int landmark;
+			if (selection == Selection.DEGREE) {
+				landmark = busiest(byDegree, nearest);
+			} else if (l == 0) {
+				// start from a station far from the busiest one
+				int busiest = 0;
+				for (int s = 1; s < stations; s++) {
+					if (offsets[s + 1] - offsets[s] > offsets[busiest + 1] - offsets[busiest]) {
+						busiest = s;
+					}
+				}
+				landmark = search(busiest, queue, stops);
+			} else {
+				landmark = farthest(nearest);
+			}
+			landmarks[l] = landmark;
+
+			search(landmark, queue, stops);
+			for (int s = 0; s < stations; s++) {
+				if (stops[s] != Integer.MAX_VALUE && stops[s] >= NONE) {
+					throw new IllegalArgumentException(
+							"Station " + s + " is too many stops from landmark " + landmark);
+				}
+				distances[s * k + l] = (short) (stops[s] == Integer.MAX_VALUE ? NONE : stops[s]);
+				nearest[s] = Math.min(nearest[s], stops[s]);
+			}
+		}
+	}
+
+	/**
+	 * @param graph
+	 *            a graph
+	 * @return if this table was built for the graph, or for another graph
+	 *         sharing its adjacency
+	 */
+	public boolean isFor(CompactGraph graph) {
+		return graph.offsets == offsets && graph.targets == targets;
+	}
+
+	/**
+	 * Bounds the stops between two stations from below, ignoring closures.
+	 *
+	 * @param a
+	 *            the id of a station
+	 * @param b
+	 *            the id of another station
+	 * @return a number of stops no greater than the fewest between the
+	 *         stations, or UNREACHABLE if a landmark tells they are not
+	 *         connected
+	 */
+	public int lowerBound(int a, int b) {
+		final int k = landmarks.length;
+		final short[] distances = this.distances;
+		int baseA = a * k;
+		int baseB = b * k;
+		int bound = 0;
+		for (int l = 0; l < k; l++) {
+			int da = distances[baseA + l] & 0xFFFF;
+			int db = distances[baseB + l] & 0xFFFF;
+			if (da == NONE || db == NONE) {
+				if (da != db) {
+					return UNREACHABLE;
+				}
+			} else {
+				bound = Math.max(bound, da > db ? da - db : db - da);
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * Bounds the stops between two stations from above, ignoring closures.
+	 *
+	 * @param a
+	 *            the id of a station
+	 * @param b
+	 *            the id of another station
+	 * @return a number of stops no fewer than the fewest between the
+	 *         stations, or UNREACHABLE if no landmark reaches both
+	 */
+	public int upperBound(int a, int b) {
+		if (a == b) {
+			return 0;
+		}
+		final int k = landmarks.length;
+		final short[] distances = this.distances;
+		int baseA = a * k;
+		int baseB = b * k;
+		int bound = UNREACHABLE;
+		for (int l = 0; l < k; l++) {
+			int da = distances[baseA + l] & 0xFFFF;
+			int db = distances[baseB + l] & 0xFFFF;
+			if (da != NONE && db != NONE) {
+				bound = Math.min(bound, da + db);
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * @return the ids of the landmarks, in the order they were picked
+	 */
+	public int[] landmarks() {
+		return landmarks.clone();
+	}
+
+	/**
+	 * Reports the memory taken by the table.
+	 *
+	 * @return the size of the table in bytes
+	 */
+	public long footprint() {
+		return 2L * distances.length + 4L * landmarks.length;
+	}
+
+	/*
+	 * Finds the stops from a station to every other with a breadth-first
+	 * search over every segment, closed or not, returning the last station
+	 * reached.
+	 */
+	private int search(int root, int[] queue, int[] stops) {
+		Arrays.fill(stops, Integer.MAX_VALUE);
+		int head = 0;
+		int tail = 0;
+		stops[root] = 0;
+		queue[tail++] = root;
+		while (head < tail) {
+			int station = queue[head++];
+			for (int slot = offsets[station]; slot < offsets[station + 1]; slot++) {
+				int child = targets[slot];
+				if (stops[child] == Integer.MAX_VALUE) {
+					stops[child] = stops[station] + 1;
+					queue[tail++] = child;
+				}
+			}
+		}
+		return queue[tail - 1];
+	}
+
+	/*
+	 * Finds the station farthest from every landmark picked so far, those
+	 * none reaches counting as farthest of all.
+	 */
+	private static int farthest(int[] nearest) {
+		int farthest = 0;
+		for (int s = 1; s < nearest.length; s++) {
+			if (nearest[s] > nearest[farthest]) {
+				farthest = s;
+			}
+		}
+		return farthest;
+	}
+
+	/*
+	 * Finds the busiest station neither a landmark nor next to one, or if
+	 * there is none the busiest that is not a landmark.
+	 */
+	private static int busiest(Integer[] byDegree, int[] nearest) {
+		for (int station : byDegree) {
+			if (nearest[station] > 1) {
+				return station;
+			}
+		}
+		for (int station : byDegree) {
+			if (nearest[station] > 0) {
+				return station;
+			}
+		}
+		throw new IllegalStateException("Every station is a landmark");
+	}
+
+	/*
+	 * Lists the stations by falling number of segments, lowest ids first.
+	 */
+	private Integer[] byDegree(int stations) {
+		Integer[] order = new Integer[stations];
+		for (int s = 0; s < stations; s++) {
+			order[s] = s;
+		}
+		Arrays.sort(order, (a, b) -> {
+			int degreeA = offsets[a + 1] - offsets[a];
+			int degreeB = offsets[b + 1] - offsets[b];
+			return degreeA != degreeB ? degreeB - degreeA : a - b;
+		});
+		return order;
+	}
+}
@@ -0,0 +1,241 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for searches of a path with the fewest stops between
+ * stations with A*, guided towards the end station by the lower bounds of a
+ * landmark index.
+ *
+ * The bound of neighbouring stations differs by at most one stop, so every
+ * station queued is estimated at most two stops past the one being expanded.
+ * The queue is therefore three stacks, one for each estimate modulo three,
+ * rather than a heap, and ties are broken towards the stations queued last,
+ * which are the ones nearest the end. Stations are stamped with the number of
+ * the search that reached them, closed segments, stations and lines are
+ * never searched through, and one instance is kept per thread.
+ */
+public class LandmarkSearch implements SearchStatistics {
+	private static final ThreadLocal<LandmarkSearch> SCRATCH = new ThreadLocal<LandmarkSearch>() {
+		@Override
+		protected LandmarkSearch initialValue() {
+			return new LandmarkSearch();
+		}
+	};
+
+	// stations queued by their estimate modulo three, with their stops when
+	// queued, a station being queued again whenever it is reached with fewer
+	private final int[][] bucket = new int[3][16];
+	private final int[][] bucketStops = new int[3][16];
+	private final int[] bucketSize = new int[3];
+	// stops to each station, its lower bound to the end and the station it
+	// was reached from, valid if stamped this search
+	private int[] stops = new int[0];
+	private int[] bound = new int[0];
+	private int[] parent = new int[0];
+	// number of the search that last reached, and that settled, each station
+	private int[] reached = new int[0];
+	private int[] settled = new int[0];
+	// number of the current search
+	private int generation;
+	// work done by the last search
+	private int lastExpanded;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private LandmarkSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static LandmarkSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds a path with the fewest stops between two stations.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param landmarks
+	 *            the landmark index built for the graph
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 * @throws IllegalArgumentException
+	 *             in case of the index being built for another graph
+	 */
+	public int[] path(CompactGraph graph, LandmarkIndex landmarks, int start, int end)
+			throws IllegalArgumentException {
+		if (!landmarks.isFor(graph)) {
+			throw new IllegalArgumentException("Landmarks built for another graph");
+		}
+		begin(graph.stationCount());
+		if (!graph.isOpen(start) || !graph.isOpen(end)) {
+			finish(0, 0, 0);
+			return null;
+		} else if (start == end) {
+			finish(0, 0, 0);
+			return new int[] { start };
+		}
+		int estimate = landmarks.lowerBound(start, end);
+		if (estimate == LandmarkIndex.UNREACHABLE) {
+			finish(0, 0, 0);
+			return null;
+		}
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final Closures closed = graph.activeClosures();
+		int expanded = 0;
+		long relaxed = 0;
+		int peak = 1;
+
+		reach(start, 0, estimate, start);
+		push(start, 0, estimate);
+		int queued = 1;
+		while (queued > 0) {
+			// every station queued is estimated within two stops of the
+			// least, so at most two stacks are passed over
+			int b = estimate % 3;
+			if (bucketSize[b] == 0) {
+				estimate++;
+				continue;
+			}
+			int i = --bucketSize[b];
+			int station = bucket[b][i];
+			int entryStops = bucketStops[b][i];
+			queued--;
+			if (settled[station] == generation || entryStops != stops[station]) {
+				continue;
+			}
+			settled[station] = generation;
+			expanded++;
+			if (station == end) {
+				finish(expanded, relaxed, peak);
+				return pathTo(start, end);
+			}
+
+			int childStops = entryStops + 1;
+			int last = offsets[station + 1];
+			relaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				int child = targets[slot];
+				if (closed != null && closed.isClosed(slot)) {
+					continue;
+				} else if (reached[child] != generation) {
+					reach(child, childStops, landmarks.lowerBound(child, end), station);
+				} else if (childStops < stops[child] && settled[child] != generation) {
+					stops[child] = childStops;
+					parent[child] = station;
+				} else {
+					continue;
+				}
+				push(child, childStops, childStops + bound[child]);
+				queued++;
+			}
+			peak = Math.max(peak, queued);
+		}
+
+		finish(expanded, relaxed, peak);
+		return null;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastExpanded;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/*
+	 * Prepares the buffers for a new search over the given number of
+	 * stations.
+	 */
+	private void begin(int stations) {
+		// grow the buffers if the graph outgrew them
+		if (reached.length < stations) {
+			stops = new int[stations];
+			bound = new int[stations];
+			parent = new int[stations];
+			reached = new int[stations];
+			settled = new int[stations];
+			generation = 0;
+		}
+		Arrays.fill(bucketSize, 0);
+
+		// start a new generation, clearing the marks once the counter wraps
+		if (++generation == 0) {
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			generation = 1;
+		}
+	}
+
+	/*
+	 * Records the work done by a search.
+	 */
+	private void finish(int expanded, long relaxed, int peak) {
+		lastExpanded = expanded;
+		lastRelaxed = relaxed;
+		lastQueuePeak = peak;
+	}
+
+	/*
+	 * Records the stops to a station, its bound to the end and the station it
+	 * was reached from.
+	 */
+	private void reach(int station, int count, int estimate, int from) {
+		reached[station] = generation;
+		stops[station] = count;
+		bound[station] = estimate;
+		parent[station] = from;
+	}
+
+	/*
+	 * Queues a station on the stack of its estimate.
+	 */
+	private void push(int station, int count, int estimate) {
+		int b = estimate % 3;
+		int size = bucketSize[b];
+		if (size == bucket[b].length) {
+			bucket[b] = Arrays.copyOf(bucket[b], size * 2);
+			bucketStops[b] = Arrays.copyOf(bucketStops[b], size * 2);
+		}
+		bucket[b][size] = station;
+		bucketStops[b][size] = count;
+		bucketSize[b] = size + 1;
+	}
+
+	/*
+	 * Rebuilds the path to a settled station by following the parents back to
+	 * the start.
+	 */
+	private int[] pathTo(int start, int end) {
+		int length = 1;
+		for (int s = end; s != start; s = parent[s]) {
+			length++;
+		}
+
+		int[] path = new int[length];
+		for (int s = end; length > 0; s = parent[s]) {
+			path[--length] = s;
+		}
+		return path;
+	}
+}
@@ -0,0 +1,146 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * An index of which lines are directly connected to each other, and through
+ * which interchange stations, built once from a compact graph.
+ *
+ * Two lines are directly connected when they share a station. The connected
+ * lines of every line are kept as a sorted array, so they are listed in time
+ * proportional to their number and looked up by binary search, without any
+ * hashing.
+ */
+public class LineIndex {
+	// line id -> sorted ids of the lines connected to it
+	final int[][] connected;
+	// line id -> for each connected line, the sorted ids of shared stations
+	final int[][][] interchanges;
+
+	/**
+	 * Construct the index of a graph's lines.
+	 *
+	 * @param graph
+	 *            the graph to index the lines of
+	 */
+	public LineIndex(CompactGraph graph) {
+		int lines = graph.lineCount();
+
+		// list the distinct lines stopping at every station, as counts and
+		// offsets into a flat array in the same way as the graph's adjacency
+		int[] start = new int[graph.stationCount() + 1];
+		for (int l = 0; l < lines; l++) {
+			for (int i = graph.lineStart[l]; i < graph.lineStart[l + 1]; i++) {
+				start[graph.lineStops[i] + 1]++;
+			}
+		}
+		for (int s = 0; s < graph.stationCount(); s++) {
+			start[s + 1] += start[s];
+		}
+		int[] stationLines = new int[start[graph.stationCount()]];
+		int[] next = Arrays.copyOf(start, graph.stationCount());
+		for (int l = 0; l < lines; l++) {
+			for (int i = graph.lineStart[l]; i < graph.lineStart[l + 1]; i++) {
+				int s = graph.lineStops[i];
+				// lines are visited in order, so a repeat stop is always last
+				if (next[s] == start[s] || stationLines[next[s] - 1] != l) {
+					stationLines[next[s]++] = l;
+				}
+			}
+		}
+
+		// record every ordered pair of lines sharing a station, packed as
+		// (line, other line, station) so that sorting groups them
+		int pairs = 0;
+		for (int s = 0; s < graph.stationCount(); s++) {
+			int n = next[s] - start[s];
+			pairs += n * (n - 1);
+		}
+		long[] shared = new long[pairs];
+		int p = 0;
+		for (int s = 0; s < graph.stationCount(); s++) {
+			for (int i = start[s]; i < next[s]; i++) {
+				for (int j = start[s]; j < next[s]; j++) {
+					if (i != j) {
+						shared[p++] = ((long) stationLines[i] << 47) | ((long) stationLines[j] << 31) | s;
+					}
+				}
+			}
+		}
+		Arrays.sort(shared);
+
+		// split the sorted pairs into each line's connected lines and their
+		// interchange stations
+		connected = new int[lines][];
+		interchanges = new int[lines][][];
+		p = 0;
+		for (int l = 0; l < lines; l++) {
+			int first = p;
+			int others = 0;
+			while (p < shared.length && line(shared[p]) == l) {
+				if (p == first || other(shared[p]) != other(shared[p - 1])) {
+					others++;
+				}
+				p++;
+			}
+
+			connected[l] = new int[others];
+			interchanges[l] = new int[others][];
+			int k = 0;
+			for (int q = first; q < p;) {
+				int other = other(shared[q]);
+				int end = q;
+				while (end < p && other(shared[end]) == other) {
+					end++;
+				}
+
+				connected[l][k] = other;
+				interchanges[l][k] = new int[end - q];
+				for (int i = q; i < end; i++) {
+					interchanges[l][k][i - q] = (int) (shared[i] & 0x7fffffff);
+				}
+				k++;
+				q = end;
+			}
+		}
+	}
+
+	/*
+	 * Construct an index from its arrays, as read back from a snapshot.
+	 */
+	LineIndex(int[][] connected, int[][][] interchanges) {
+		this.connected = connected;
+		this.interchanges = interchanges;
+	}
+
+	/**
+	 * @param line
+	 *            the id of a line
+	 * @return the sorted ids of the lines sharing a station with the line,
+	 *         which must not be modified
+	 */
+	public int[] connectedLines(int line) {
+		return connected[line];
+	}
+
+	/**
+	 * @param line
+	 *            the id of a line
+	 * @param other
+	 *            the id of another line
+	 * @return the sorted ids of the stations shared by both lines, which must
+	 *         not be modified
+	 */
+	public int[] interchanges(int line, int other) {
+		int k = Arrays.binarySearch(connected[line], other);
+		return k >= 0 ? interchanges[line][k] : new int[0];
+	}
+
+	private static int line(long pair) {
+		return (int) (pair >>> 47);
+	}
+
+	private static int other(long pair) {
+		return (int) (pair >>> 31) & 0xffff;
+	}
+}
@@ -0,0 +1,320 @@
+package graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An immutable index of names for looking them up loosely: by prefix, for
+ * autocompletion, and by edit distance, to tolerate typos.
+ *
+ * Names are folded before being indexed or looked up, dropping case,
+ * whitespace and punctuation, so "mong kok", "Mongkok" and "MONG-KOK" all
+ * fold to the same key. The folded keys are kept sorted, so the names
+ * starting with a prefix are a contiguous run found by binary search, and
+ * listed in time proportional to their number.
+ *
+ * The sorted keys also form an implicit trie, every prefix shared by some
+ * keys being a run of them, whose children are found by binary search on
+ * their next character. Typos are looked up by walking that trie with a row
+ * of the edit distance table per character, as a Levenshtein automaton
+ * would, and leaving any branch once no key down it can be close enough. A
+ * search within one or two edits so only visits the few branches near the
+ * name, however many names there are, and needs no structure beyond the
+ * sorted keys.
+ *
+ * An index read back from a network snapshot keeps its folded keys as the
+ * UTF-8 bytes they were written as, and only decodes a key the first time a
+ * lookup compares against it, so loading a snapshot costs no more than
+ * copying the bytes and the sorted ids.
+ */
+public class NameIndex {
+	// name id -> folded key, decoded from keyBytes when first needed if the
+	// index was read from a snapshot
+	private final String[] keys;
+	// the folded key of name i as UTF-8 is keyBytes[keyOffsets[i] ..
+	// keyOffsets[i + 1] - 1], or both are null if built from the names
+	final byte[] keyBytes;
+	final int[] keyOffsets;
+	// name ids sorted by their folded keys
+	final int[] sorted;
+
+	// length of the longest key
+	final int longest;
+
+	/**
+	 * Construct an index of names, each name's id being its position.
+	 *
+	 * @param names
+	 *            the names to index
+	 */
+	public NameIndex(String[] names) {
+		int n = names.length;
+		keys = new String[n];
+		int longest = 0;
+		for (int id = 0; id < n; id++) {
+			keys[id] = fold(names[id]);
+			longest = Math.max(longest, keys[id].length());
+		}
+		this.longest = longest;
+		keyBytes = null;
+		keyOffsets = null;
+
+		// sort the ids by key, ties keeping the lower id first
+		Integer[] boxed = new Integer[n];
+		for (int id = 0; id < n; id++) {
+			boxed[id] = id;
+		}
+		Arrays.sort(boxed, (a, b) -> keys[a].compareTo(keys[b]));
+		sorted = new int[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = boxed[i];
+		}
+	}
+
+	/*
+	 * Construct an index read back from a snapshot, from the UTF-8 bytes of
+	 * its folded keys and the ids sorted by them.
+	 */
+	NameIndex(byte[] keyBytes, int[] keyOffsets, int[] sorted, int longest) {
+		this.keyBytes = keyBytes;
+		this.keyOffsets = keyOffsets;
+		this.sorted = sorted;
+		this.longest = longest;
+		keys = new String[sorted.length];
+	}
+
+	/**
+	 * Folds a name into the key it is indexed and looked up by, keeping only
+	 * its letters and digits, in lower case.
+	 *
+	 * @param name
+	 *            a name
+	 * @return the folded key of the name
+	 */
+	public static String fold(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the number of names in the index
+	 */
+	public int size() {
+		return sorted.length;
+	}
+
+	/**
+	 * Resolves a loosely given name to a single name of the index: one that
+	 * folds to the same key if there is any, or else the one closest to it
+	 * within a few edits, scaled to its length so short names need to be
+	 * exact.
+	 *
+	 * @param name
+	 *            the name as given
+	 * @return the id of the name it resolves to, or -1 if none does or if
+	 *         several names are equally close, as are names folding to the
+	 *         same key
+	 */
+	public int resolve(String name) {
+		String key = fold(name);
+		if (key.isEmpty()) {
+			return -1;
+		}
+		int first = lowerBound(key, 0, sorted.length);
+		if (first < sorted.length && key(sorted[first]).equals(key)) {
+			boolean ambiguous = first + 1 < sorted.length && key(sorted[first + 1]).equals(key);
+			return ambiguous ? -1 : sorted[first];
+		}
+
+		// keys of up to 4 characters must match exactly, up to 8 may be one
+		// edit away, and longer ones two
+		int maxDistance = key.length() <= 4 ? 0 : key.length() <= 8 ? 1 : 2;
+		if (maxDistance == 0) {
+			return -1;
+		}
+		long[] found = search(key, maxDistance);
+		if (found.length == 0) {
+			return -1;
+		}
+		int best = (int) found[0];
+		return found.length > 1 && found[1] >>> 32 == found[0] >>> 32 ? -1 : best;
+	}
+
+	/**
+	 * Lists the names starting with a prefix, once folded, in the order of
+	 * their folded keys.
+	 *
+	 * @param prefix
+	 *            the start of a name
+	 * @param limit
+	 *            the greatest number of names to list
+	 * @return the ids of the names starting with the prefix
+	 */
+	public int[] complete(String prefix, int limit) {
+		String key = fold(prefix);
+		int first = lowerBound(key, 0, sorted.length);
+		int end = first;
+		while (end < sorted.length && end - first < limit && key(sorted[end]).startsWith(key)) {
+			end++;
+		}
+		return Arrays.copyOfRange(sorted, first, end);
+	}
+
+	/**
+	 * Lists the names within an edit distance of a name, once both are
+	 * folded, the closest first.
+	 *
+	 * @param name
+	 *            the name as given
+	 * @param maxDistance
+	 *            the greatest number of characters inserted, deleted or
+	 *            substituted between the name and those listed
+	 * @param limit
+	 *            the greatest number of names to list
+	 * @return the ids of the names within the distance, by increasing
+	 *         distance and then by id
+	 */
+	public int[] similar(String name, int maxDistance, int limit) {
+		long[] found = search(fold(name), maxDistance);
+		int[] ids = new int[Math.max(0, Math.min(found.length, limit))];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = (int) found[i];
+		}
+		return ids;
+	}
+
+	/*
+	 * Finds the keys within an edit distance of a key, packed as (distance,
+	 * id) and sorted.
+	 */
+	private long[] search(String key, int maxDistance) {
+		// row k holds the distances between every prefix of the key and the
+		// prefix of length k shared by the keys of the branch being walked
+		int[][] rows = new int[longest + 1][key.length() + 1];
+		for (int i = 0; i <= key.length(); i++) {
+			rows[0][i] = i;
+		}
+		Search search = new Search(key, maxDistance, rows);
+		search.walk(0, 0, sorted.length);
+		long[] found = Arrays.copyOf(search.found, search.count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/*
+	 * The state of a search of the trie for the keys close to a key.
+	 */
+	private class Search {
+		private final String key;
+		private final int maxDistance;
+		private final int[][] rows;
+		private long[] found = new long[16];
+		private int count;
+
+		private Search(String key, int maxDistance, int[][] rows) {
+			this.key = key;
+			this.maxDistance = maxDistance;
+			this.rows = rows;
+		}
+
+		/*
+		 * Walks the branch of the keys sorted[from .. to - 1], which share
+		 * their first depth characters and whose row is already filled in.
+		 */
+		private void walk(int depth, int from, int to) {
+			int m = key.length();
+			int[] row = rows[depth];
+
+			// keys ending here sort before the longer ones
+			while (from < to && key(sorted[from]).length() == depth) {
+				if (row[m] <= maxDistance) {
+					add(row[m], sorted[from]);
+				}
+				from++;
+			}
+
+			// split the rest by their next character, carrying on down every
+			// branch some key of which might still be close enough
+			while (from < to) {
+				int[] next = rows[depth + 1];
+				char c = key(sorted[from]).charAt(depth);
+				int end = upperBound(depth, c, from, to);
+				next[0] = depth + 1;
+				int lowest = next[0];
+				for (int i = 1; i <= m; i++) {
+					next[i] = Math.min(Math.min(row[i], next[i - 1]) + 1,
+							row[i - 1] + (key.charAt(i - 1) == c ? 0 : 1));
+					lowest = Math.min(lowest, next[i]);
+				}
+				if (lowest <= maxDistance) {
+					walk(depth + 1, from, end);
+				}
+				from = end;
+			}
+		}
+
+		private void add(int distance, int id) {
+			if (count == found.length) {
+				found = Arrays.copyOf(found, count * 2);
+			}
+			found[count++] = ((long) distance << 32) | id;
+		}
+	}
+
+	/*
+	 * Returns the folded key of a name, decoding it the first time if the
+	 * index was read from a snapshot. Threads racing to decode the same key
+	 * decode equal Strings, so either may be kept.
+	 */
+	String key(int id) {
+		String key = keys[id];
+		if (key == null) {
+			key = new String(keyBytes, keyOffsets[id], keyOffsets[id + 1] - keyOffsets[id], StandardCharsets.UTF_8);
+			keys[id] = key;
+		}
+		return key;
+	}
+
+	/*
+	 * Returns the position in sorted[from .. to - 1] of the first key not
+	 * less than the given one.
+	 */
+	private int lowerBound(String key, int from, int to) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (key(sorted[mid]).compareTo(key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * Returns the position in sorted[from .. to - 1] of the first key whose
+	 * character at the given depth is greater than the given one, all the
+	 * keys sharing their earlier characters and being longer than the depth.
+	 */
+	private int upperBound(int depth, char c, int from, int to) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (key(sorted[mid]).charAt(depth) <= c) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,119 @@
+package graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An immutable table of names interned to dense ids.
+ *
+ * The names are kept as UTF-8 bytes back to back in a single array, and
+ * looked up through an open addressing hash table of ids, so the whole table
+ * is a handful of primitive arrays that can be written to and read back from
+ * a snapshot as they are. Names are only decoded into Strings when asked for.
+ */
+public class NameTable {
+	// UTF-8 bytes of every name, back to back
+	final byte[] bytes;
+	// name id -> offset of its bytes, with a trailing entry for the end
+	final int[] offsets;
+	// open addressing hash table of name ids, -1 marking an empty slot
+	final int[] slots;
+	// names decoded so far, filled in lazily
+	private final String[] decoded;
+
+	/**
+	 * Construct a table of names, each name's id being its position.
+	 *
+	 * @param names
+	 *            the names to intern
+	 */
+	public NameTable(String[] names) {
+		byte[][] encoded = new byte[names.length][];
+		offsets = new int[names.length + 1];
+		for (int i = 0; i < names.length; i++) {
+			encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+			offsets[i + 1] = offsets[i] + encoded[i].length;
+		}
+		bytes = new byte[offsets[names.length]];
+		for (int i = 0; i < names.length; i++) {
+			System.arraycopy(encoded[i], 0, bytes, offsets[i], encoded[i].length);
+		}
+
+		// keep the table at most half full, so probe sequences stay short
+		slots = new int[Integer.highestOneBit(Math.max(names.length, 1)) << 2];
+		Arrays.fill(slots, -1);
+		int mask = slots.length - 1;
+		for (int id = 0; id < names.length; id++) {
+			int slot = hash(bytes, offsets[id], offsets[id + 1]) & mask;
+			while (slots[slot] != -1) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id;
+		}
+
+		// the Strings are at hand already, so there is nothing to decode
+		decoded = names.clone();
+	}
+
+	/*
+	 * Construct a table from its arrays, as read back from a snapshot.
+	 */
+	NameTable(byte[] bytes, int[] offsets, int[] slots) {
+		this.bytes = bytes;
+		this.offsets = offsets;
+		this.slots = slots;
+		decoded = new String[offsets.length - 1];
+	}
+
+	/**
+	 * @return the number of names in the table
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @param id
+	 *            the id of a name
+	 * @return the name
+	 */
+	public String name(int id) {
+		String name = decoded[id];
+		if (name == null) {
+			// Strings are immutable, so racing threads can only decode the
+			// same name twice
+			name = new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+			decoded[id] = name;
+		}
+		return name;
+	}
+
+	/**
+	 * @param name
+	 *            a name
+	 * @return the id of the name, or -1 if it is not in the table
+	 */
+	public int id(String name) {
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+		int mask = slots.length - 1;
+		for (int slot = hash(key, 0, key.length) & mask; slots[slot] != -1; slot = (slot + 1) & mask) {
+			int id = slots[slot];
+			if (Arrays.equals(bytes, offsets[id], offsets[id + 1], key, 0, key.length)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Hashes a range of bytes, spreading the high bits into the low ones
+	 * used to pick a slot.
+	 */
+	private static int hash(byte[] bytes, int from, int to) {
+		int hash = 1;
+		for (int i = from; i < to; i++) {
+			hash = 31 * hash + bytes[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
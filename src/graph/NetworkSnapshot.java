@@ -0,0 +1,493 @@
+package graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A fully built network precompiled to a binary file, so that it can be
+ * loaded without parsing or rebuilding anything.
+ *
+ * The file starts with a fixed header of a magic number, the format version,
+ * the length of the payload and a CRC32C checksum of it. The payload holds the
+ * name tables of the stations and lines and the graph's arrays exactly as they
+ * are kept in memory, hash tables included, so loading them is a bulk copy out
+ * of the mapped file and names are only decoded once they are asked for.
+ * Travel times, coordinates and derived indexes, the contraction hierarchy and
+ * the folded name indexes among them, follow as tagged sections, which readers
+ * skip if they do not know the tag, so that sections can be added without a
+ * new version.
+ */
+public class NetworkSnapshot {
+	// "MTRG" in ASCII
+	private static final int MAGIC = 0x4d545247;
+	private static final int VERSION = 1;
+	// magic, version, payload length and checksum
+	private static final int HEADER = 4 + 4 + 8 + 8;
+
+	// tags of the optional sections
+	private static final int LINE_INDEX = 1;
+	private static final int TRAVEL_TIMES = 2;
+	private static final int TRANSFER_TIMES = 3;
+	private static final int COORDINATES = 4;
+	private static final int COMPONENTS = 5;
+	private static final int CONTRACTION_HIERARCHY = 6;
+	private static final int NAME_INDEXES = 7;
+
+	private final CompactGraph graph;
+	private final LineIndex lineIndex;
+	private final ContractionHierarchy hierarchy;
+	private final NameIndex stationNameIndex;
+	private final NameIndex lineNameIndex;
+
+	/**
+	 * Reads a snapshot, mapping the file read-only and verifying its checksum
+	 * before copying the graph out of it.
+	 *
+	 * @param path
+	 *            the path to the snapshot file
+	 * @throws FileNotFoundException
+	 *             in case of file path not existing
+	 * @throws IOException
+	 *             in case of the file not being a snapshot of a supported
+	 *             version, being corrupt, or not being readable
+	 */
+	public NetworkSnapshot(String path) throws FileNotFoundException, IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+			// check the header before trusting anything else in the file
+			if (buffer.limit() < HEADER || buffer.getInt() != MAGIC) {
+				throw new IOException(path + " is not a network snapshot");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version + " in " + path);
+			}
+			long length = buffer.getLong();
+			long checksum = buffer.getLong();
+			if (length != buffer.remaining()) {
+				throw new IOException("Truncated snapshot " + path);
+			}
+			CRC32C crc = new CRC32C();
+			crc.update(buffer.duplicate());
+			if (crc.getValue() != checksum) {
+				throw new IOException("Corrupt snapshot " + path);
+			}
+
+			// read the names and copy the arrays straight out of the mapping
+			int stationCount = buffer.getInt();
+			int lineCount = buffer.getInt();
+			int stopCount = buffer.getInt();
+			int slotCount = buffer.getInt();
+			NameTable stations = readNames(buffer);
+			NameTable lineNames = readNames(buffer);
+			int[] lineStart = readInts(buffer, lineCount + 1);
+			int[] lineStops = readInts(buffer, stopCount);
+			int[] offsets = readInts(buffer, stationCount + 1);
+			int[] targets = readInts(buffer, slotCount);
+			short[] lines = new short[slotCount];
+			buffer.asShortBuffer().get(lines);
+			buffer.position(buffer.position() + slotCount * 2);
+
+			// read the sections that are known, skipping the others
+			LineIndex index = null;
+			int[] times = null;
+			int[] transferTimes = null;
+			double[] coordinates = null;
+			int[] components = null;
+			int[][] contraction = null;
+			NameIndex foldedStations = null;
+			NameIndex foldedLines = null;
+			while (buffer.hasRemaining()) {
+				int tag = buffer.getInt();
+				int size = buffer.getInt();
+				int end = buffer.position() + size;
+				switch (tag) {
+				case LINE_INDEX:
+					index = readLineIndex(buffer, lineCount);
+					break;
+				case TRAVEL_TIMES:
+					times = readInts(buffer, slotCount);
+					break;
+				case TRANSFER_TIMES:
+					transferTimes = readInts(buffer, stationCount);
+					break;
+				case COORDINATES:
+					coordinates = new double[stationCount * 2];
+					buffer.asDoubleBuffer().get(coordinates);
+					break;
+				case COMPONENTS:
+					components = readInts(buffer, stationCount);
+					break;
+				case CONTRACTION_HIERARCHY:
+					contraction = readHierarchy(buffer, stationCount);
+					break;
+				case NAME_INDEXES:
+					foldedStations = readNameIndex(buffer, stationCount);
+					foldedLines = readNameIndex(buffer, lineCount);
+					break;
+				default:
+					// written by a newer version, so not needed here
+				}
+				buffer.position(end);
+			}
+			graph = new CompactGraph(stations, lineNames, lineStart, lineStops, offsets, targets, lines, times,
+					transferTimes, coordinates, components);
+			lineIndex = index;
+			hierarchy = contraction == null ? null
+					: new ContractionHierarchy(graph, contraction[0], contraction[1], contraction[2], contraction[3],
+							contraction[4]);
+			stationNameIndex = foldedStations;
+			lineNameIndex = foldedLines;
+		}
+	}
+
+	/**
+	 * Checks whether a file starts like a snapshot, without reading the rest.
+	 *
+	 * @param path
+	 *            the path to a file
+	 * @return if the file is a network snapshot
+	 */
+	public static boolean isSnapshot(String path) {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			return file.length() >= HEADER && file.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a network to a snapshot file.
+	 *
+	 * @param path
+	 *            the path of the snapshot file to write
+	 * @param graph
+	 *            the graph of the network
+	 * @param lineIndex
+	 *            the index of the network's lines, or null to leave it out
+	 * @throws IOException
+	 *             in case of the file not being writable
+	 */
+	public static void write(String path, CompactGraph graph, LineIndex lineIndex) throws IOException {
+		write(path, graph, lineIndex, null);
+	}
+
+	/**
+	 * Writes a network to a snapshot file along with its contraction
+	 * hierarchy.
+	 *
+	 * @param path
+	 *            the path of the snapshot file to write
+	 * @param graph
+	 *            the graph of the network
+	 * @param lineIndex
+	 *            the index of the network's lines, or null to leave it out
+	 * @param hierarchy
+	 *            the contraction hierarchy of the graph, or null to leave it
+	 *            out
+	 * @throws IllegalArgumentException
+	 *             in case of the hierarchy being built for another graph
+	 * @throws IOException
+	 *             in case of the file not being writable
+	 */
+	public static void write(String path, CompactGraph graph, LineIndex lineIndex, ContractionHierarchy hierarchy)
+			throws IllegalArgumentException, IOException {
+		write(path, graph, lineIndex, hierarchy, null, null);
+	}
+
+	/**
+	 * Writes a network to a snapshot file along with its contraction
+	 * hierarchy and the indexes of its station and line names.
+	 *
+	 * @param path
+	 *            the path of the snapshot file to write
+	 * @param graph
+	 *            the graph of the network
+	 * @param lineIndex
+	 *            the index of the network's lines, or null to leave it out
+	 * @param hierarchy
+	 *            the contraction hierarchy of the graph, or null to leave it
+	 *            out
+	 * @param stationNames
+	 *            the index of the graph's station names, or null to leave
+	 *            both name indexes out
+	 * @param lineNames
+	 *            the index of the graph's line names, or null to leave both
+	 *            name indexes out
+	 * @throws IllegalArgumentException
+	 *             in case of the hierarchy being built for another graph, or
+	 *             of a name index not holding every station or line
+	 * @throws IOException
+	 *             in case of the file not being writable
+	 */
+	public static void write(String path, CompactGraph graph, LineIndex lineIndex, ContractionHierarchy hierarchy,
+			NameIndex stationNames, NameIndex lineNames) throws IllegalArgumentException, IOException {
+		if (hierarchy != null && !hierarchy.isFor(graph)) {
+			throw new IllegalArgumentException("Contraction hierarchy built for another graph");
+		}
+		boolean names = stationNames != null && lineNames != null;
+		if (names && (stationNames.size() != graph.stationCount() || lineNames.size() != graph.lineCount())) {
+			throw new IllegalArgumentException("Name indexes built for another graph");
+		}
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw"); FileChannel channel = file.getChannel()) {
+			file.setLength(0);
+
+			// write the payload after the header, checksumming it on the way
+			channel.position(HEADER);
+			CheckedOutputStream checked = new CheckedOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32C());
+			DataOutputStream out = new DataOutputStream(checked);
+
+			out.writeInt(graph.stationCount());
+			out.writeInt(graph.lineCount());
+			out.writeInt(graph.lineStops.length);
+			out.writeInt(graph.slotCount());
+			writeNames(out, graph.stations);
+			writeNames(out, graph.lineNames);
+			writeInts(out, graph.lineStart);
+			writeInts(out, graph.lineStops);
+			writeInts(out, graph.offsets);
+			writeInts(out, graph.targets);
+			for (short line : graph.lines) {
+				out.writeShort(line);
+			}
+
+			if (lineIndex != null) {
+				writeLineIndex(out, lineIndex);
+			}
+			out.writeInt(COMPONENTS);
+			out.writeInt(graph.components.length * 4);
+			writeInts(out, graph.components);
+			if (graph.times != null) {
+				out.writeInt(TRAVEL_TIMES);
+				out.writeInt(graph.times.length * 4);
+				writeInts(out, graph.times);
+			}
+			if (graph.transferTimes != null) {
+				out.writeInt(TRANSFER_TIMES);
+				out.writeInt(graph.transferTimes.length * 4);
+				writeInts(out, graph.transferTimes);
+			}
+			if (graph.coordinates != null) {
+				out.writeInt(COORDINATES);
+				out.writeInt(graph.coordinates.length * 8);
+				for (double coordinate : graph.coordinates) {
+					out.writeDouble(coordinate);
+				}
+			}
+			if (hierarchy != null) {
+				writeHierarchy(out, hierarchy);
+			}
+			if (names) {
+				writeNameIndexes(out, stationNames, lineNames);
+			}
+			out.flush();
+
+			// fill in the header now that the payload is known
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).putInt(VERSION).putLong(out.size()).putLong(checked.getChecksum().getValue());
+			header.flip();
+			channel.write(header, 0);
+		}
+	}
+
+	/**
+	 * @return the graph of the network
+	 */
+	public CompactGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the index of the network's lines, or null if the snapshot was
+	 *         written without it
+	 */
+	public LineIndex getLineIndex() {
+		return lineIndex;
+	}
+
+	/**
+	 * @return the contraction hierarchy of the graph, or null if the snapshot
+	 *         was written without it
+	 */
+	public ContractionHierarchy getHierarchy() {
+		return hierarchy;
+	}
+
+	/**
+	 * @return the index of the station names, or null if the snapshot was
+	 *         written without the name indexes
+	 */
+	public NameIndex getStationNameIndex() {
+		return stationNameIndex;
+	}
+
+	/**
+	 * @return the index of the line names, or null if the snapshot was
+	 *         written without the name indexes
+	 */
+	public NameIndex getLineNameIndex() {
+		return lineNameIndex;
+	}
+
+	private static void writeNames(DataOutputStream out, NameTable names) throws IOException {
+		out.writeInt(names.bytes.length);
+		out.write(names.bytes);
+		out.writeInt(names.offsets.length);
+		writeInts(out, names.offsets);
+		out.writeInt(names.slots.length);
+		writeInts(out, names.slots);
+	}
+
+	private static NameTable readNames(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		int[] offsets = readInts(buffer, buffer.getInt());
+		return new NameTable(bytes, offsets, readInts(buffer, buffer.getInt()));
+	}
+
+	private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+		for (int i : ints) {
+			out.writeInt(i);
+		}
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int count) {
+		int[] ints = new int[count];
+		buffer.asIntBuffer().get(ints);
+		buffer.position(buffer.position() + count * 4);
+		return ints;
+	}
+
+	/*
+	 * Writes the line index as a section: the connected lines of every line,
+	 * each followed by the stations shared with it.
+	 */
+	private static void writeLineIndex(DataOutputStream out, LineIndex index) throws IOException {
+		int size = 0;
+		for (int l = 0; l < index.connected.length; l++) {
+			size += 4 + index.connected[l].length * 8;
+			for (int[] stations : index.interchanges[l]) {
+				size += stations.length * 4;
+			}
+		}
+
+		out.writeInt(LINE_INDEX);
+		out.writeInt(size);
+		for (int l = 0; l < index.connected.length; l++) {
+			out.writeInt(index.connected[l].length);
+			for (int k = 0; k < index.connected[l].length; k++) {
+				out.writeInt(index.connected[l][k]);
+				out.writeInt(index.interchanges[l][k].length);
+				writeInts(out, index.interchanges[l][k]);
+			}
+		}
+	}
+
+	private static LineIndex readLineIndex(ByteBuffer buffer, int lines) {
+		int[][] connected = new int[lines][];
+		int[][][] interchanges = new int[lines][][];
+		for (int l = 0; l < lines; l++) {
+			int count = buffer.getInt();
+			connected[l] = new int[count];
+			interchanges[l] = new int[count][];
+			for (int k = 0; k < count; k++) {
+				connected[l][k] = buffer.getInt();
+				interchanges[l][k] = readInts(buffer, buffer.getInt());
+			}
+		}
+		return new LineIndex(connected, interchanges);
+	}
+
+	/*
+	 * Writes the contraction hierarchy as a section: the number of segments
+	 * and shortcuts kept, the rank of every station, then the upward
+	 * adjacency with the length and bypassed station of every slot.
+	 */
+	private static void writeHierarchy(DataOutputStream out, ContractionHierarchy hierarchy) throws IOException {
+		out.writeInt(CONTRACTION_HIERARCHY);
+		out.writeInt(4 + 4 * (hierarchy.rank.length + hierarchy.upOffsets.length + 3 * hierarchy.upTargets.length));
+		out.writeInt(hierarchy.upTargets.length);
+		writeInts(out, hierarchy.rank);
+		writeInts(out, hierarchy.upOffsets);
+		writeInts(out, hierarchy.upTargets);
+		writeInts(out, hierarchy.upLengths);
+		writeInts(out, hierarchy.upMiddles);
+	}
+
+	private static int[][] readHierarchy(ByteBuffer buffer, int stations) {
+		int edges = buffer.getInt();
+		return new int[][] { readInts(buffer, stations), readInts(buffer, stations + 1), readInts(buffer, edges),
+				readInts(buffer, edges), readInts(buffer, edges) };
+	}
+
+	/*
+	 * Writes the name indexes as a section, the stations' then the lines':
+	 * for each the length of its longest key, its folded keys as UTF-8 one
+	 * after another with their offsets, and the ids sorted by key.
+	 */
+	private static void writeNameIndexes(DataOutputStream out, NameIndex stations, NameIndex lines)
+			throws IOException {
+		byte[][] stationKeys = keyBytes(stations);
+		byte[][] lineKeys = keyBytes(lines);
+		out.writeInt(NAME_INDEXES);
+		out.writeInt(nameIndexSize(stationKeys) + nameIndexSize(lineKeys));
+		writeNameIndex(out, stations, stationKeys);
+		writeNameIndex(out, lines, lineKeys);
+	}
+
+	private static byte[][] keyBytes(NameIndex index) {
+		byte[][] keys = new byte[index.size()][];
+		for (int id = 0; id < keys.length; id++) {
+			keys[id] = index.key(id).getBytes(StandardCharsets.UTF_8);
+		}
+		return keys;
+	}
+
+	private static int nameIndexSize(byte[][] keys) {
+		int size = 4 + 4 + 4 * (keys.length + 1) + 4 * keys.length;
+		for (byte[] key : keys) {
+			size += key.length;
+		}
+		return size;
+	}
+
+	private static void writeNameIndex(DataOutputStream out, NameIndex index, byte[][] keys) throws IOException {
+		int length = 0;
+		for (byte[] key : keys) {
+			length += key.length;
+		}
+		out.writeInt(index.longest);
+		out.writeInt(length);
+		for (byte[] key : keys) {
+			out.write(key);
+		}
+		int offset = 0;
+		out.writeInt(0);
+		for (byte[] key : keys) {
+			offset += key.length;
+			out.writeInt(offset);
+		}
+		writeInts(out, index.sorted);
+	}
+
+	private static NameIndex readNameIndex(ByteBuffer buffer, int count) {
+		int longest = buffer.getInt();
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		int[] offsets = readInts(buffer, count + 1);
+		return new NameIndex(bytes, offsets, readInts(buffer, count), longest);
+	}
+}
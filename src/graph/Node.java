@@ -1,6 +1,8 @@
 package graph;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -8,7 +10,6 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Represents a node in a graph data structure.
@@ -136,62 +137,47 @@ public class Node<C, W> {
 	 */
 	public static <C, W> List<Edge<C, W>> bfs(Node<C, W> start, Node<C, W> end) throws NoSuchElementException {
 		// initialises a queue that stores nodes to search
-		Queue<Node<C, W>> toSearch = new ConcurrentLinkedQueue<Node<C, W>>();
-		// initialises a set that stores nodes already searched
-		Set<Node<C, W>> searched = new HashSet<Node<C, W>>();
+		Queue<Node<C, W>> toSearch = new ArrayDeque<Node<C, W>>();
+		// initialises a map that stores the edge each discovered node was
+		// reached through, which also marks the node as already discovered
+		Map<Node<C, W>, Edge<C, W>> parentEdges = new HashMap<Node<C, W>, Edge<C, W>>();
 
-		// initialises a map that stores paths to nodes from the start node
-		Map<Node<C, W>, List<Edge<C, W>>> pathToNodes = new HashMap<Node<C, W>, List<Edge<C, W>>>();
-		// declare path from start to end nodes
-		List<Edge<C, W>> path = null;
-
-		// put the path to the start node from the start node as empty and adds start node as the first node to search
-		pathToNodes.put(start, new ArrayList<Edge<C, W>>());
+		// adds start node as the first node to search
+		parentEdges.put(start, null);
 		toSearch.add(start);
 
 		// keep searching for path between start and end nodes while searchable
-		// nodes exist
-		while (!toSearch.isEmpty()) {
+		// nodes exist and the end node has not been discovered
+		while (!toSearch.isEmpty() && !parentEdges.containsKey(end)) {
 			Node<C, W> parent = toSearch.remove();
 
-			if (!parent.equals(end)) {
-				for (Edge<C, W> edge : parent.getEdges()) {
-					Node<C, W> child = edge.getNode(parent);
-
-					// if child has already been searched, skip finding the child's path
-					if (searched.contains(child)) {
-						continue;
-					}
-
-					// check if child is not to be searched now
-					if (!toSearch.contains(child)) {
-						// store path to parent node and add path between parent and child nodes
-						List<Edge<C, W>> pathTochild = new ArrayList<Edge<C, W>>(pathToNodes.get(parent));
-						pathTochild.add(edge);
-						// store path to child node from start node
-						pathToNodes.put(child, pathTochild);
-						
-						// add child to queue of nodes to be searched
-						toSearch.add(child);
-					}
-				}
-
-				// add parent node to set of nodes already searched
-				searched.add(parent);
-			} else {
-				// remove all nodes from to be searched queue
-				toSearch.clear();
+			for (Edge<C, W> edge : parent.getEdges()) {
+				Node<C, W> child = edge.getNode(parent);
 
-				// retrieve path to end node
-				path = pathToNodes.get(end);
+				// if child has already been discovered, skip it
+				if (!parentEdges.containsKey(child)) {
+					// store the edge between parent and child nodes and add
+					// child to queue of nodes to be searched
+					parentEdges.put(child, edge);
+					toSearch.add(child);
+				}
 			}
 		}
 
 		// check if path exists
-		if (path != null) {
-			return path;
-		} else {
+		if (!parentEdges.containsKey(end)) {
 			throw new NoSuchElementException("Path between nodes do not exist");
 		}
+
+		// follow the parent edges back from the end node to rebuild the path
+		List<Edge<C, W>> path = new ArrayList<Edge<C, W>>();
+		for (Node<C, W> node = end; node != start;) {
+			Edge<C, W> edge = parentEdges.get(node);
+			path.add(edge);
+			node = edge.getNode(node);
+		}
+		Collections.reverse(path);
+
+		return path;
 	}
 }
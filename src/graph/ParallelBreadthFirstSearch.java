@@ -0,0 +1,366 @@
+package graph;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable scratch space for level-synchronous breadth-first searches that
+ * expand every level of the frontier in parallel on a fork-join pool, for
+ * graphs with millions of stations.
+ *
+ * Stations are claimed by compare-and-set on a primitive array of marks,
+ * so every station is discovered exactly once however many tasks reach it at
+ * the same time. A station's mark is the base number of the search plus its
+ * level, so a single atomic read tells both whether a station was visited by
+ * this search and whether it is in the frontier. While the frontier is small,
+ * each level is expanded top-down, from the frontier's stations to their
+ * neighbours. Once the frontier's segments outnumber a fraction of the
+ * segments left unexplored, levels are expanded bottom-up instead, every
+ * unvisited station looking for a neighbour in the frontier and stopping at
+ * the first, which skips most of the segments a top-down level would check.
+ * The search returns to top-down once the frontier shrinks again.
+ *
+ * Every station is discovered at its distance from the start, from a
+ * station one level closer, so the path is a shortest one. Like the
+ * sequential searches, closed segments, stations and lines are never
+ * searched through, and one instance is kept per calling thread.
+ */
+public class ParallelBreadthFirstSearch implements SearchStatistics {
+	private static final ThreadLocal<ParallelBreadthFirstSearch> SCRATCH = new ThreadLocal<ParallelBreadthFirstSearch>() {
+		@Override
+		protected ParallelBreadthFirstSearch initialValue() {
+			return new ParallelBreadthFirstSearch();
+		}
+	};
+
+	// number of stations below which a task is not split any further
+	private static final int GRAIN = 2048;
+	// go bottom-up once the frontier has more than 1 / ALPHA of the segments
+	// left unexplored, and top-down again once the frontier has fewer than
+	// 1 / BETA of the stations
+	private static final int ALPHA = 14;
+	private static final int BETA = 24;
+
+	// base number of the search that last visited each station plus the
+	// station's level in it
+	private AtomicIntegerArray visited = new AtomicIntegerArray(0);
+	// station each station was discovered from, valid if visited this search
+	private int[] parent = new int[0];
+	// stations of the current and next levels
+	private int[] frontier = new int[0];
+	private int[] next = new int[0];
+	// base number of the current search, greater than any mark of earlier
+	// searches
+	private int base;
+	// number of levels expanded bottom-up by the last search
+	private int lastBottomUp;
+	// stations in the levels expanded by the last search, the segments
+	// leaving them and the most stations in a single level
+	private int lastExpanded;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private ParallelBreadthFirstSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static ParallelBreadthFirstSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds a path with the fewest stops between two stations, on the common
+	 * fork-join pool.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] path(CompactGraph graph, int start, int end) {
+		return path(graph, start, end, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Finds a path with the fewest stops between two stations.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @param pool
+	 *            the pool to expand the levels on
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] path(CompactGraph graph, int start, int end, ForkJoinPool pool) {
+		int stations = graph.stationCount();
+		begin(stations);
+		lastBottomUp = 0;
+		lastExpanded = 0;
+		lastRelaxed = 0;
+		lastQueuePeak = 0;
+		if (!graph.isOpen(start) || !graph.isOpen(end)) {
+			return null;
+		}
+
+		visited.set(start, base);
+		parent[start] = start;
+		frontier[0] = start;
+		int size = 1;
+		long frontierSlots = graph.endSlot(start) - graph.firstSlot(start);
+		long unexplored = graph.slotCount() - frontierSlots;
+		boolean bottomUp = false;
+
+		int depth = 0;
+		for (; size > 0 && visited.get(end) < base; depth++) {
+			lastExpanded += size;
+			lastRelaxed += frontierSlots;
+			lastQueuePeak = Math.max(lastQueuePeak, size);
+
+			// pick the direction of this level from the size of the frontier
+			if (!bottomUp && frontierSlots > unexplored / ALPHA) {
+				bottomUp = true;
+			} else if (bottomUp && size < stations / BETA) {
+				bottomUp = false;
+			}
+
+			AtomicInteger tail = new AtomicInteger();
+			AtomicLong slots = new AtomicLong();
+			if (bottomUp) {
+				lastBottomUp++;
+				pool.invoke(new BottomUp(graph, depth, 0, stations, tail, slots));
+			} else if (size > GRAIN) {
+				pool.invoke(new TopDown(graph, depth, 0, size, tail, slots));
+			} else {
+				// a level too small to split is cheaper to expand here than to
+				// hand over to the pool
+				new TopDown(graph, depth, 0, size, tail, slots).compute();
+			}
+
+			// the next level becomes the frontier
+			int[] swap = frontier;
+			frontier = next;
+			next = swap;
+			size = tail.get();
+			frontierSlots = slots.get();
+			unexplored -= frontierSlots;
+		}
+
+		int[] path = visited.get(end) >= base ? pathTo(start, end) : null;
+		// leave the marks of this search behind the next one's base
+		base += depth + 1;
+		return path;
+	}
+
+	/**
+	 * @return the number of levels the last search expanded bottom-up
+	 */
+	public int lastBottomUp() {
+		return lastBottomUp;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastExpanded;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/*
+	 * Prepares the buffers for a new search over the given number of stations.
+	 */
+	private void begin(int stations) {
+		// grow the buffers if the graph outgrew them, starting the numbering
+		// of searches again with a new array once the marks could overflow
+		if (parent.length < stations || base > Integer.MAX_VALUE - stations - 1) {
+			visited = new AtomicIntegerArray(Math.max(stations, parent.length));
+			if (parent.length < stations) {
+				parent = new int[stations];
+				frontier = new int[stations];
+				next = new int[stations];
+			}
+			base = 1;
+		}
+	}
+
+	/*
+	 * Claims a station for the next level, unless it has been visited already.
+	 */
+	private boolean claim(int station, int from, int depth) {
+		int mark = visited.get(station);
+		if (mark >= base || !visited.compareAndSet(station, mark, base + depth + 1)) {
+			return false;
+		}
+		parent[station] = from;
+		return true;
+	}
+
+	/*
+	 * Appends the stations a task discovered to the next level, reserving
+	 * room for all of them at once.
+	 */
+	private void append(int[] found, int count, AtomicInteger tail) {
+		if (count > 0) {
+			System.arraycopy(found, 0, next, tail.getAndAdd(count), count);
+		}
+	}
+
+	/*
+	 * Rebuilds the path to a visited station by following the parents back to
+	 * the start.
+	 */
+	private int[] pathTo(int start, int end) {
+		int[] path = new int[visited.get(end) - base + 1];
+		int length = path.length;
+		for (int s = end; length > 0; s = parent[s]) {
+			path[--length] = s;
+		}
+		return path;
+	}
+
+	/*
+	 * Expands a range of the frontier top-down, claiming every unvisited
+	 * neighbour of its stations.
+	 */
+	private class TopDown extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CompactGraph graph;
+		private final int depth;
+		private final int from;
+		private final int to;
+		private final AtomicInteger tail;
+		private final AtomicLong slots;
+
+		private TopDown(CompactGraph graph, int depth, int from, int to, AtomicInteger tail, AtomicLong slots) {
+			this.graph = graph;
+			this.depth = depth;
+			this.from = from;
+			this.to = to;
+			this.tail = tail;
+			this.slots = slots;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GRAIN) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TopDown(graph, depth, from, middle, tail, slots),
+						new TopDown(graph, depth, middle, to, tail, slots));
+				return;
+			}
+
+			final int[] offsets = graph.offsets;
+			final int[] targets = graph.targets;
+			final Closures closed = graph.activeClosures();
+			int[] found = new int[64];
+			int count = 0;
+			long degree = 0;
+			for (int i = from; i < to; i++) {
+				int station = frontier[i];
+				for (int slot = offsets[station]; slot < offsets[station + 1]; slot++) {
+					int child = targets[slot];
+					if ((closed == null || !closed.isClosed(slot)) && claim(child, station, depth)) {
+						if (count == found.length) {
+							append(found, count, tail);
+							count = 0;
+						}
+						found[count++] = child;
+						degree += offsets[child + 1] - offsets[child];
+					}
+				}
+			}
+			append(found, count, tail);
+			slots.addAndGet(degree);
+		}
+	}
+
+	/*
+	 * Expands a range of the stations bottom-up, every unvisited station
+	 * joining the next level through the first neighbour it has in the
+	 * frontier.
+	 */
+	private class BottomUp extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CompactGraph graph;
+		private final int depth;
+		private final int from;
+		private final int to;
+		private final AtomicInteger tail;
+		private final AtomicLong slots;
+
+		private BottomUp(CompactGraph graph, int depth, int from, int to, AtomicInteger tail, AtomicLong slots) {
+			this.graph = graph;
+			this.depth = depth;
+			this.from = from;
+			this.to = to;
+			this.tail = tail;
+			this.slots = slots;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > GRAIN * 4) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BottomUp(graph, depth, from, middle, tail, slots),
+						new BottomUp(graph, depth, middle, to, tail, slots));
+				return;
+			}
+
+			final int[] offsets = graph.offsets;
+			final int[] targets = graph.targets;
+			final Closures closed = graph.activeClosures();
+			int[] found = new int[64];
+			int count = 0;
+			long degree = 0;
+			for (int station = from; station < to; station++) {
+				if (visited.get(station) >= base || (closed != null && closed.isStationClosed(station))) {
+					continue;
+				}
+				for (int slot = offsets[station]; slot < offsets[station + 1]; slot++) {
+					int neighbour = targets[slot];
+					// stations claimed during this level are marked with the
+					// next level, so only the frontier matches, and closures
+					// close both ways of a segment so the slot back from the
+					// neighbour is closed if this one is
+					if (visited.get(neighbour) == base + depth && (closed == null || !closed.isClosed(slot))) {
+						// no other task looks at this station, so it cannot
+						// fail to be claimed
+						claim(station, neighbour, depth);
+						if (count == found.length) {
+							append(found, count, tail);
+							count = 0;
+						}
+						found[count++] = station;
+						degree += offsets[station + 1] - offsets[station];
+						break;
+					}
+				}
+			}
+			append(found, count, tail);
+			slots.addAndGet(degree);
+		}
+	}
+}
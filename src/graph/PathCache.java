@@ -0,0 +1,360 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A bounded cache of paths between pairs of stations.
+ *
+ * Lookups never lock nor allocate: entries live in an open-addressing table
+ * keyed by the pair of station ids packed into a long, probed linearly, and
+ * a hit only sets the entry's referenced bit. Insertions and removals take
+ * the cache's own lock, removals shifting the entries after back over the
+ * hole, so a lookup racing with one may miss a path still cached, which only
+ * costs a search. Insertions evict with the CLOCK approximation of
+ * least-recently-used, which sweeps a ring of entries and evicts the first
+ * one not referenced since the last sweep. Slots of the ring left free by
+ * removals are filled before anything is evicted.
+ *
+ * Paths are stored once per unordered pair, as segments can be travelled
+ * both ways, so a cached path from A to B also answers B to A.
+ *
+ * Paths a change to the network makes stale can be removed on their own,
+ * keeping the rest cached.
+ */
+public class PathCache {
+	// rough heap cost of an entry besides its path: entry object and path
+	// array header
+	private static final int ENTRY_OVERHEAD = 48;
+
+	// entries by key, at least twice as many slots as the capacity, changed
+	// under the lock
+	private final AtomicReferenceArray<Entry> table;
+	private final int mask;
+	private volatile int count;
+	// ring of cached entries swept by the clock hand
+	private final Entry[] ring;
+	private int hand;
+	// slots of the ring holding no entry, taken from the top
+	private final int[] free;
+	private int freeCount;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private volatile long bytes;
+
+	/**
+	 * Construct an empty cache.
+	 *
+	 * @param capacity
+	 *            the greatest number of paths to keep
+	 * @throws IllegalArgumentException
+	 *             in case of the capacity not being positive
+	 */
+	public PathCache(int capacity) throws IllegalArgumentException {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		table = new AtomicReferenceArray<Entry>(Integer.highestOneBit(capacity) << 2);
+		mask = table.length() - 1;
+		ring = new Entry[capacity];
+		free = new int[capacity];
+		freeAll();
+	}
+
+	/**
+	 * Looks up the cached path between two stations.
+	 *
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, which must not be modified, or
+	 *         null if the path is not cached
+	 */
+	public int[] get(int start, int end) {
+		Entry entry = find(key(start, end));
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+
+		// only write the bit when it changes, to keep hits read-only
+		if (!entry.referenced) {
+			entry.referenced = true;
+		}
+		hits.increment();
+
+		return start <= end ? entry.path : reverse(entry.path);
+	}
+
+	/**
+	 * Caches the path between two stations, evicting a path if the cache is
+	 * full.
+	 *
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @param path
+	 *            the station ids along the path, which must not be modified
+	 *            afterwards
+	 */
+	public void put(int start, int end, int[] path) {
+		long key = key(start, end);
+		Entry entry = new Entry(key, start <= end ? path : reverse(path));
+
+		synchronized (this) {
+			if (find(key) != null) {
+				return;
+			}
+
+			long size = bytes;
+			if (freeCount > 0) {
+				entry.slot = free[--freeCount];
+			} else {
+				// sweep the full ring, giving referenced entries a second
+				// chance, and evict the entry under the hand
+				while (ring[hand].referenced) {
+					ring[hand].referenced = false;
+					hand = (hand + 1) % ring.length;
+				}
+				Entry victim = ring[hand];
+				delete(victim.key);
+				size -= sizeOf(victim.path);
+				evictions.increment();
+				entry.slot = hand;
+				hand = (hand + 1) % ring.length;
+			}
+
+			ring[entry.slot] = entry;
+			insert(entry);
+			bytes = size + sizeOf(entry.path);
+		}
+	}
+
+	/**
+	 * Removes the cached path between two stations, if any.
+	 *
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 */
+	public synchronized void remove(int start, int end) {
+		Entry entry = delete(key(start, end));
+		if (entry != null) {
+			ring[entry.slot] = null;
+			free[freeCount++] = entry.slot;
+			bytes -= sizeOf(entry.path);
+		}
+	}
+
+	/**
+	 * Removes every cached path matching a condition, keeping the statistics.
+	 *
+	 * @param stale
+	 *            tells whether a path, given from its lower station id to its
+	 *            higher, must be removed
+	 * @return the number of paths removed
+	 */
+	public synchronized int removePaths(Predicate<int[]> stale) {
+		int removed = 0;
+		long size = bytes;
+		for (int i = 0; i < ring.length; i++) {
+			Entry entry = ring[i];
+			if (entry != null && stale.test(entry.path)) {
+				delete(entry.key);
+				ring[i] = null;
+				free[freeCount++] = i;
+				size -= sizeOf(entry.path);
+				removed++;
+			}
+		}
+		bytes = size;
+		return removed;
+	}
+
+	/**
+	 * Removes every cached path, keeping the statistics.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < table.length(); i++) {
+			table.set(i, null);
+		}
+		count = 0;
+		Arrays.fill(ring, null);
+		freeAll();
+		hand = 0;
+		bytes = 0;
+	}
+
+	/**
+	 * @return the number of cached paths
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return the greatest number of paths kept
+	 */
+	public int capacity() {
+		return ring.length;
+	}
+
+	/**
+	 * @return the number of lookups that found a path
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that found no path
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the fraction of lookups that found a path, or 0 if there were
+	 *         none
+	 */
+	public double hitRate() {
+		long hits = hits();
+		long total = hits + misses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the number of paths evicted to make room for others
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return an estimate of the heap taken by the cached paths in bytes
+	 */
+	public long memoryEstimate() {
+		return bytes + ((long) ring.length + table.length()) * 8;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d/%d paths, %.1f%% hits, %d evictions, ~%d KiB", size(), capacity(),
+				hitRate() * 100, evictions(), memoryEstimate() / 1024);
+	}
+
+	/*
+	 * Marks every slot of the ring free, the first slot to be taken first.
+	 */
+	private void freeAll() {
+		for (int i = 0; i < free.length; i++) {
+			free[i] = free.length - 1 - i;
+		}
+		freeCount = free.length;
+	}
+
+	/*
+	 * Finds the entry of a key by probing the table from its home slot up to
+	 * the first empty slot.
+	 */
+	private Entry find(long key) {
+		int i = home(key);
+		for (int probes = 0; probes <= mask; probes++) {
+			Entry entry = table.get(i);
+			if (entry == null || entry.key == key) {
+				return entry;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/*
+	 * Puts an entry whose key is not in the table into the first empty slot
+	 * from its home slot.
+	 */
+	private void insert(Entry entry) {
+		int i = home(entry.key);
+		while (table.get(i) != null) {
+			i = (i + 1) & mask;
+		}
+		table.set(i, entry);
+		count++;
+	}
+
+	/*
+	 * Takes the entry of a key out of the table, if there is one, shifting
+	 * back over the hole every entry after it that probing would otherwise
+	 * no longer reach.
+	 */
+	private Entry delete(long key) {
+		int hole = home(key);
+		Entry removed;
+		while ((removed = table.get(hole)) != null && removed.key != key) {
+			hole = (hole + 1) & mask;
+		}
+		if (removed == null) {
+			return null;
+		}
+		for (int i = (hole + 1) & mask;; i = (i + 1) & mask) {
+			Entry entry = table.get(i);
+			if (entry == null) {
+				break;
+			}
+			// move the entry back unless its home lies after the hole
+			if (((i - home(entry.key)) & mask) >= ((i - hole) & mask)) {
+				table.set(hole, entry);
+				hole = i;
+			}
+		}
+		table.set(hole, null);
+		count--;
+		return removed;
+	}
+
+	private int home(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	/*
+	 * Packs an unordered pair of station ids into a single key.
+	 */
+	private static long key(int start, int end) {
+		return start <= end ? ((long) start << 32) | end : ((long) end << 32) | start;
+	}
+
+	private static long sizeOf(int[] path) {
+		return ENTRY_OVERHEAD + 4L * path.length;
+	}
+
+	private static int[] reverse(int[] path) {
+		int[] reversed = new int[path.length];
+		for (int i = 0; i < path.length; i++) {
+			reversed[i] = path[path.length - 1 - i];
+		}
+		return reversed;
+	}
+
+	/*
+	 * A cached path, stored from the lower station id to the higher.
+	 */
+	private static class Entry {
+		private final long key;
+		private final int[] path;
+		private volatile boolean referenced;
+		// slot of the ring holding the entry, only used under the cache's lock
+		private int slot;
+
+		private Entry(long key, int[] path) {
+			this.key = key;
+			this.path = path;
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for finding the earliest arrival between stations
+ * from a departure time, along the trips of a timetable.
+ *
+ * The search is RAPTOR, the round-based public transit routing of Delling,
+ * Pajor and Werneck. Round k finds the earliest arrival at every station
+ * with at most k trips, by scanning each route serving a station improved in
+ * the round before, once, from the first such station along it: the route is
+ * boarded on the earliest trip that can be caught there, and every stop
+ * after is reached at that trip's time, an earlier trip being caught
+ * wherever the stations reached in the round before allow. A route is so
+ * scanned as consecutive ints of the timetable, with no priority queue, and
+ * the number of rounds caps the number of trips taken, so the number of
+ * changes is capped too.
+ *
+ * Arrivals no earlier than the best found at the end station are pruned, as
+ * are those no earlier than the best already found at the same station.
+ * Changing lines at a station takes its own transfer time, or else a given
+ * penalty, except at the start. A trip cut short by a closure is left before
+ * it, and closed stations are neither boarded at nor left at. Like the other
+ * searches, stations and routes are stamped with the number of the search or
+ * round that marked them, and one instance is kept per thread.
+ */
+public class RaptorSearch implements SearchStatistics {
+	private static final ThreadLocal<RaptorSearch> SCRATCH = new ThreadLocal<RaptorSearch>() {
+		@Override
+		protected RaptorSearch initialValue() {
+			return new RaptorSearch();
+		}
+	};
+
+	// a time later than any arrival
+	private static final int NEVER = Integer.MAX_VALUE;
+
+	// earliest arrival at each station found so far, and with the trips of
+	// the rounds before the current one only, valid if stamped this search
+	private int[] best = new int[0];
+	private int[] earliest = new int[0];
+	private int[] reached = new int[0];
+	// round that last improved each station's earliest arrival
+	private int[] earliestRound = new int[0];
+	// how each station was reached in each round, at round * stations +
+	// station: the route, the position it was boarded at, the trip, and the
+	// round the boarding station was reached in
+	private int[] labelRoute = new int[0];
+	private int[] labelBoard = new int[0];
+	private int[] labelTrip = new int[0];
+	private int[] labelFrom = new int[0];
+	// stations improved in the last round, and in this round along with
+	// the number of the round that last improved each one
+	private int[] marked = new int[0];
+	private int markedCount;
+	private int[] improved = new int[0];
+	private int improvedCount;
+	private int[] improvedMark = new int[0];
+	// routes to scan this round, and the earliest position along each to
+	// scan it from, valid if stamped this round
+	private int[] queue = new int[0];
+	private int[] routeFrom = new int[0];
+	private int[] routeMark = new int[0];
+	// number of the current search, and of the current round overall
+	private int generation;
+	private int round;
+
+	// arrival time, rounds and path of the last search
+	private int lastArrival;
+	private int lastTrips;
+	private int[] lastLines = new int[0];
+	private int[] lastLegs = new int[0];
+	private int[] lastDepartures = new int[0];
+	private int[] lastArrivals = new int[0];
+	// work done by the last search
+	private int lastScanned;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private RaptorSearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static RaptorSearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds the journey arriving earliest at a station when leaving another
+	 * no earlier than a time.
+	 *
+	 * @param timetable
+	 *            the trips to travel along
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @param departure
+	 *            the seconds since midnight from which to leave the starting
+	 *            station
+	 * @param maxTrips
+	 *            the greatest number of trips to take, one more than the
+	 *            greatest number of changes
+	 * @param penalty
+	 *            the seconds taken to change lines at stations which do not
+	 *            have a time of their own
+	 * @return the station ids along the journey, including both ends, or null
+	 *         if the end cannot be reached within the number of trips on the
+	 *         day's timetable
+	 */
+	public int[] path(Timetable timetable, int start, int end, int departure, int maxTrips, int penalty) {
+		int n = timetable.stationCount();
+		int rounds = Math.max(maxTrips, 0);
+		begin(n, timetable.routeCount(), rounds);
+		lastArrival = NEVER;
+		lastTrips = 0;
+		lastLines = new int[0];
+		lastLegs = new int[0];
+		lastDepartures = new int[0];
+		lastArrivals = new int[0];
+		lastScanned = 0;
+		lastRelaxed = 0;
+		lastQueuePeak = 0;
+		Closures closed = timetable.closures != null && !timetable.closures.isEmpty() ? timetable.closures : null;
+		if (closed != null && (closed.isStationClosed(start) || closed.isStationClosed(end))) {
+			return null;
+		} else if (start == end) {
+			lastArrival = departure;
+			return new int[] { start };
+		}
+
+		final int[] stopStart = timetable.stopStart;
+		final int[] routeStops = timetable.routeStops;
+		final int[] routeSlots = timetable.routeSlots;
+		final int[] timeStart = timetable.timeStart;
+		final int[] times = timetable.times;
+		final int[] tripCount = timetable.tripCount;
+		final int[] stationStart = timetable.stationStart;
+		final int[] stationRoutes = timetable.stationRoutes;
+		final int[] stationPositions = timetable.stationPositions;
+		final int[] transfers = timetable.transferTimes;
+
+		nextRound();
+		improve(start, departure);
+		settle(0);
+		int endRound = -1;
+
+		for (int k = 1; k <= rounds && markedCount > 0; k++) {
+			// collect the routes through the stations improved last round,
+			// each from the first of them along it
+			nextRound();
+			int queued = 0;
+			for (int m = 0; m < markedCount; m++) {
+				int station = marked[m];
+				lastRelaxed += stationStart[station + 1] - stationStart[station];
+				for (int i = stationStart[station]; i < stationStart[station + 1]; i++) {
+					int route = stationRoutes[i];
+					int position = stationPositions[i];
+					if (routeMark[route] != round) {
+						routeMark[route] = round;
+						routeFrom[route] = position;
+						queue[queued++] = route;
+					} else if (position < routeFrom[route]) {
+						routeFrom[route] = position;
+					}
+				}
+			}
+			lastQueuePeak = Math.max(lastQueuePeak, queued);
+
+			// scan every route along the earliest trip that can be caught so
+			// far, catching an earlier one wherever possible
+			int label = k * n;
+			for (int q = 0; q < queued; q++) {
+				int route = queue[q];
+				if (closed != null && closed.isLineClosed(timetable.routeLine[route])) {
+					continue;
+				}
+				int first = stopStart[route];
+				int stops = stopStart[route + 1] - first;
+				int trips = tripCount[route];
+				int trip = -1;
+				int tripBase = 0;
+				int board = -1;
+				lastScanned++;
+				for (int i = routeFrom[route]; i < stops; i++) {
+					int station = routeStops[first + i];
+
+					// the trip cannot run on through a closure
+					if (trip != -1 && closed != null && closed.isClosed(routeSlots[first + i])) {
+						trip = -1;
+					}
+
+					// get off here if it is earlier than any way yet
+					if (trip != -1) {
+						int arrival = times[tripBase + i];
+						if (arrival < Math.min(bestAt(end), bestAt(station))) {
+							improve(station, arrival);
+							labelRoute[label + station] = route;
+							labelBoard[label + station] = board;
+							labelTrip[label + station] = trip;
+							labelFrom[label + station] = earliestRound[routeStops[first + board]];
+							if (station == end) {
+								endRound = k;
+							}
+						}
+					}
+
+					// get on an earlier trip if the last round got here in
+					// time to change to it
+					if (reached[station] == generation && earliest[station] != NEVER
+							&& (closed == null || !closed.isStationClosed(station))) {
+						int ready = earliest[station];
+						if (earliestRound[station] > 0) {
+							ready += transfers != null && transfers[station] >= 0 ? transfers[station] : penalty;
+						}
+						if (trip == -1 || ready <= times[tripBase + i]) {
+							int earlier = timetable.earliestTrip(route, i, ready, trip == -1 ? trips : trip + 1);
+							if (earlier != -1 && earlier != trip) {
+								trip = earlier;
+								tripBase = timeStart[route] + trip * stops;
+								board = i;
+							}
+						}
+					}
+				}
+			}
+			settle(k);
+		}
+
+		if (endRound == -1) {
+			return null;
+		}
+		return journey(timetable, start, end, endRound);
+	}
+
+	/**
+	 * @return the seconds since midnight the last journey found arrives at
+	 */
+	public int lastArrival() {
+		return lastArrival;
+	}
+
+	/**
+	 * @return the number of trips taken by the last journey found
+	 */
+	public int lastTrips() {
+		return lastTrips;
+	}
+
+	/**
+	 * @return the line id of every segment of the last journey found, one
+	 *         fewer than its stations
+	 */
+	public int[] lastLines() {
+		return lastLines.clone();
+	}
+
+	/**
+	 * @return the number of the trip, counting from 0, taken along every
+	 *         segment of the last journey found
+	 */
+	public int[] lastLegs() {
+		return lastLegs.clone();
+	}
+
+	/**
+	 * @return the seconds since midnight the last journey found leaves the
+	 *         first station of every segment
+	 */
+	public int[] lastDepartures() {
+		return lastDepartures.clone();
+	}
+
+	/**
+	 * @return the seconds since midnight the last journey found reaches the
+	 *         last station of every segment
+	 */
+	public int[] lastArrivals() {
+		return lastArrivals.clone();
+	}
+
+	/**
+	 * @return the number of routes scanned by the last search, as a measure of
+	 *         the work it did
+	 */
+	public int lastScanned() {
+		return lastScanned;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastScanned;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/*
+	 * Returns the earliest arrival at a station found so far.
+	 */
+	private int bestAt(int station) {
+		return reached[station] == generation ? best[station] : NEVER;
+	}
+
+	/*
+	 * Records an earlier arrival at a station in the current round, to be
+	 * changed from in the next one.
+	 */
+	private void improve(int station, int arrival) {
+		if (reached[station] != generation) {
+			reached[station] = generation;
+			earliest[station] = NEVER;
+		}
+		best[station] = arrival;
+		if (improvedMark[station] != round) {
+			improvedMark[station] = round;
+			improved[improvedCount++] = station;
+		}
+	}
+
+	/*
+	 * Ends round k, letting the stations it improved be changed from in the
+	 * next one.
+	 */
+	private void settle(int k) {
+		markedCount = 0;
+		for (int m = 0; m < improvedCount; m++) {
+			int station = improved[m];
+			earliest[station] = best[station];
+			earliestRound[station] = k;
+			marked[markedCount++] = station;
+		}
+		improvedCount = 0;
+	}
+
+	/*
+	 * Starts a new round, clearing the marks once the counter wraps.
+	 */
+	private void nextRound() {
+		if (++round == 0) {
+			Arrays.fill(routeMark, 0);
+			Arrays.fill(improvedMark, 0);
+			round = 1;
+		}
+	}
+
+	/*
+	 * Rebuilds the journey to the end by following each trip back to where it
+	 * was boarded, and the round that station was reached in.
+	 */
+	private int[] journey(Timetable timetable, int start, int end, int endRound) {
+		int n = timetable.stationCount();
+
+		// count the stops of every trip taken first
+		int length = 1;
+		int trips = 0;
+		for (int station = end, k = endRound; station != start || k > 0; trips++) {
+			int label = k * n + station;
+			int route = labelRoute[label];
+			int first = timetable.stopStart[route];
+			int board = labelBoard[label];
+			length += position(timetable, route, station, board) - board;
+			station = timetable.routeStops[first + board];
+			k = labelFrom[label];
+		}
+
+		int[] path = new int[length];
+		lastLines = new int[length - 1];
+		lastLegs = new int[length - 1];
+		lastDepartures = new int[length - 1];
+		lastArrivals = new int[length - 1];
+		path[0] = start;
+		int leg = trips;
+		for (int station = end, k = endRound; station != start || k > 0;) {
+			leg--;
+			int label = k * n + station;
+			int route = labelRoute[label];
+			int first = timetable.stopStart[route];
+			int stops = timetable.stopStart[route + 1] - first;
+			int base = timetable.timeStart[route] + labelTrip[label] * stops;
+			int board = labelBoard[label];
+			for (int i = position(timetable, route, station, board); i > board; i--) {
+				length--;
+				path[length] = timetable.routeStops[first + i];
+				lastLines[length - 1] = timetable.routeLine[route];
+				lastLegs[length - 1] = leg;
+				lastDepartures[length - 1] = timetable.times[base + i - 1];
+				lastArrivals[length - 1] = timetable.times[base + i];
+			}
+			station = timetable.routeStops[first + board];
+			k = labelFrom[label];
+		}
+		lastArrival = lastArrivals[lastArrivals.length - 1];
+		lastTrips = trips;
+		return path;
+	}
+
+	/*
+	 * Finds where a station was got off a route at, after where it was
+	 * boarded, a route passing a station more than once if it loops.
+	 */
+	private static int position(Timetable timetable, int route, int station, int board) {
+		int first = timetable.stopStart[route];
+		int i = board + 1;
+		while (timetable.routeStops[first + i] != station) {
+			i++;
+		}
+		return i;
+	}
+
+	/*
+	 * Prepares the buffers for a new search over the given number of
+	 * stations, routes and rounds.
+	 */
+	private void begin(int stations, int routes, int rounds) {
+		// grow the buffers if the timetable outgrew them, all together as
+		// stations and routes are stamped with the same round numbers
+		if (reached.length < stations || routeMark.length < routes) {
+			best = new int[stations];
+			earliest = new int[stations];
+			reached = new int[stations];
+			earliestRound = new int[stations];
+			marked = new int[stations];
+			improved = new int[stations];
+			improvedMark = new int[stations];
+			queue = new int[routes];
+			routeFrom = new int[routes];
+			routeMark = new int[routes];
+			generation = 0;
+			round = 0;
+		}
+		long labels = (long) (rounds + 1) * stations;
+		if (labelRoute.length < labels) {
+			if (labels > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("Too many rounds for " + stations + " stations: " + rounds);
+			}
+			labelRoute = new int[(int) labels];
+			labelBoard = new int[(int) labels];
+			labelTrip = new int[(int) labels];
+			labelFrom = new int[(int) labels];
+		}
+		markedCount = 0;
+		improvedCount = 0;
+
+		// start a new generation, clearing the marks once the counter wraps
+		if (++generation == 0) {
+			Arrays.fill(reached, 0);
+			generation = 1;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for finding every station within a number of stops,
+ * or within a number of changes of line, of any of a set of stations.
+ *
+ * Either way a single search from all the sources at once answers the query,
+ * which stops as soon as the budget is spent rather than running on to the
+ * rest of the graph. Within stops, a breadth-first search stops expanding the
+ * stations at the budget. Within changes, a search runs over adjacency slots
+ * as the fewest changes search does, one number of changes at a time, riding
+ * every line as far as it goes before changing to another, and stops after
+ * the round of the budget.
+ *
+ * Stations are found in order of stops or changes, and the stations found
+ * and their distances are returned as int arrays rather than as names. Like
+ * every other search, closed segments, stations and lines are avoided.
+ */
+public class ReachabilitySearch implements SearchStatistics {
+	private static final ThreadLocal<ReachabilitySearch> SCRATCH = new ThreadLocal<ReachabilitySearch>() {
+		@Override
+		protected ReachabilitySearch initialValue() {
+			return new ReachabilitySearch();
+		}
+	};
+
+	// stations found by the last search, in order of distance, which is also
+	// the queue of the search within stops
+	private int[] found = new int[0];
+	private int foundCount;
+	// stops or changes to each station, valid if stamped this search
+	private int[] distance = new int[0];
+	// number of the search that last found each station
+	private int[] visited = new int[0];
+	// slots ridden along this round, and those to change to next round
+	private int[] queue = new int[0];
+	private int[] seeds = new int[0];
+	private int[] nextSeeds = new int[0];
+	// number of the search that last queued, and that last seeded, each slot
+	private int[] reached = new int[0];
+	private int[] seeded = new int[0];
+	// number of the current search
+	private int generation;
+	// work done by the last search
+	private int lastExpanded;
+	private long lastRelaxed;
+	private int lastQueuePeak;
+
+	/*
+	 * Instances are only handed out per thread through local().
+	 */
+	private ReachabilitySearch() {
+	}
+
+	/**
+	 * @return the scratch space of the calling thread
+	 */
+	public static ReachabilitySearch local() {
+		return SCRATCH.get();
+	}
+
+	/**
+	 * Finds every station within a number of stops of any of the sources.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param sources
+	 *            the ids of the stations to start from, which may repeat
+	 * @param maxStops
+	 *            the greatest number of stops to travel
+	 * @return the ids of the stations found, the sources first, in order of
+	 *         the fewest stops to them
+	 * @throws IllegalArgumentException
+	 *             in case of the number of stops being negative
+	 */
+	public int[] withinStops(CompactGraph graph, int[] sources, int maxStops) throws IllegalArgumentException {
+		if (maxStops < 0) {
+			throw new IllegalArgumentException("Stops must not be negative: " + maxStops);
+		}
+		begin(graph);
+		addSources(graph, sources);
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final Closures closed = graph.activeClosures();
+		int expanded = 0;
+		long relaxed = 0;
+		int peak = foundCount;
+
+		// stations are queued in order of stops, so the first one at the
+		// budget ends the search
+		int head = 0;
+		while (head < foundCount) {
+			int station = found[head++];
+			int stops = distance[station] + 1;
+			if (stops > maxStops) {
+				break;
+			}
+			expanded++;
+			int last = offsets[station + 1];
+			relaxed += last - offsets[station];
+			for (int slot = offsets[station]; slot < last; slot++) {
+				int child = targets[slot];
+				if (visited[child] != generation && (closed == null || !closed.isClosed(slot))) {
+					visit(child, stops);
+				}
+			}
+			peak = Math.max(peak, foundCount - head);
+		}
+
+		finish(expanded, relaxed, peak);
+		return Arrays.copyOf(found, foundCount);
+	}
+
+	/**
+	 * Finds every station within a number of changes of line of any of the
+	 * sources, the stations along any line through a source taking none.
+	 *
+	 * @param graph
+	 *            the graph to search
+	 * @param sources
+	 *            the ids of the stations to start from, which may repeat
+	 * @param maxChanges
+	 *            the greatest number of changes of line to make
+	 * @return the ids of the stations found, the sources first, in order of
+	 *         the fewest changes to them
+	 * @throws IllegalArgumentException
+	 *             in case of the number of changes being negative
+	 */
+	public int[] withinChanges(CompactGraph graph, int[] sources, int maxChanges) throws IllegalArgumentException {
+		if (maxChanges < 0) {
+			throw new IllegalArgumentException("Changes must not be negative: " + maxChanges);
+		}
+		begin(graph);
+		addSources(graph, sources);
+
+		final int[] offsets = graph.offsets;
+		final int[] targets = graph.targets;
+		final short[] lines = graph.lines;
+		final Closures closed = graph.activeClosures();
+		int expanded = 0;
+		long relaxed = 0;
+		int peak = 0;
+
+		// board every open line at every source
+		int seedCount = 0;
+		for (int i = 0; i < foundCount; i++) {
+			int source = found[i];
+			for (int slot = offsets[source]; slot < offsets[source + 1]; slot++) {
+				if (seeded[slot] != generation && (closed == null || !closed.isClosed(slot))) {
+					seeded[slot] = generation;
+					seeds[seedCount++] = slot;
+				}
+			}
+		}
+
+		for (int round = 0; round <= maxChanges && seedCount > 0; round++) {
+			int nextCount = 0;
+			int seed = 0;
+			int head = 0;
+			int tail = 0;
+
+			// ride every line boarded this round as far as it goes, the slots
+			// ridden along being queued at most once per search, and those
+			// changed to at most once before the next round
+			while (seed < seedCount || head < tail) {
+				int arrival;
+				if (seed < seedCount) {
+					arrival = seeds[seed++];
+					if (reached[arrival] == generation) {
+						continue;
+					}
+					reached[arrival] = generation;
+				} else {
+					arrival = queue[head++];
+				}
+				expanded++;
+				peak = Math.max(peak, seedCount - seed + tail - head + nextCount);
+
+				int station = targets[arrival];
+				if (visited[station] != generation) {
+					visit(station, round);
+				}
+				int line = lines[arrival];
+				int last = offsets[station + 1];
+				relaxed += last - offsets[station];
+				for (int slot = offsets[station]; slot < last; slot++) {
+					if (reached[slot] == generation || (closed != null && closed.isClosed(slot))) {
+						continue;
+					} else if (lines[slot] == line) {
+						reached[slot] = generation;
+						queue[tail++] = slot;
+					} else if (seeded[slot] != generation) {
+						seeded[slot] = generation;
+						nextSeeds[nextCount++] = slot;
+					}
+				}
+			}
+
+			// the slots changed to are boarded next round
+			int[] swap = seeds;
+			seeds = nextSeeds;
+			nextSeeds = swap;
+			seedCount = nextCount;
+		}
+
+		finish(expanded, relaxed, peak);
+		return Arrays.copyOf(found, foundCount);
+	}
+
+	/**
+	 * Lists the stops or changes to every station found by the last search.
+	 *
+	 * @return the distance to each station found, in the same order
+	 */
+	public int[] lastDistances() {
+		int[] distances = new int[foundCount];
+		for (int i = 0; i < foundCount; i++) {
+			distances[i] = distance[found[i]];
+		}
+		return distances;
+	}
+
+	@Override
+	public int lastExpanded() {
+		return lastExpanded;
+	}
+
+	@Override
+	public long lastRelaxed() {
+		return lastRelaxed;
+	}
+
+	@Override
+	public int lastQueuePeak() {
+		return lastQueuePeak;
+	}
+
+	/*
+	 * Prepares the buffers for a search of a graph.
+	 */
+	private void begin(CompactGraph graph) {
+		int stations = graph.stationCount();
+		int slots = graph.slotCount();
+		if (visited.length < stations) {
+			found = new int[stations];
+			distance = new int[stations];
+			visited = new int[stations];
+			Arrays.fill(reached, 0);
+			Arrays.fill(seeded, 0);
+			generation = 0;
+		}
+		if (reached.length < slots) {
+			queue = new int[slots];
+			seeds = new int[slots];
+			nextSeeds = new int[slots];
+			reached = new int[slots];
+			seeded = new int[slots];
+			Arrays.fill(visited, 0);
+			generation = 0;
+		}
+
+		// start a new generation, clearing the marks once the counter wraps
+		if (++generation == 0) {
+			Arrays.fill(visited, 0);
+			Arrays.fill(reached, 0);
+			Arrays.fill(seeded, 0);
+			generation = 1;
+		}
+		foundCount = 0;
+	}
+
+	/*
+	 * Finds every open source, once however often it is given.
+	 */
+	private void addSources(CompactGraph graph, int[] sources) {
+		for (int source : sources) {
+			if (visited[source] != generation && graph.isOpen(source)) {
+				visit(source, 0);
+			}
+		}
+	}
+
+	/*
+	 * Records a station as found at a distance.
+	 */
+	private void visit(int station, int stops) {
+		visited[station] = generation;
+		distance[station] = stops;
+		found[foundCount++] = station;
+	}
+
+	/*
+	 * Records the work done by a search.
+	 */
+	private void finish(int expanded, long relaxed, int peak) {
+		lastExpanded = expanded;
+		lastRelaxed = relaxed;
+		lastQueuePeak = peak;
+	}
+}
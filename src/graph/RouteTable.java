@@ -0,0 +1,168 @@
+package graph;
+
+import java.util.stream.IntStream;
+
+/**
+ * A precomputed all-pairs table of next hops, so that a shortest path between
+ * any two stations can be followed without searching.
+ *
+ * The table holds one entry per pair of stations, laid out one row per end
+ * station. An entry is the position, within the adjacency of a station, of
+ * the slot to take next towards the end station. Positions are packed into
+ * bytes when every station has fewer than 255 slots, which is the case for
+ * any real metro, and into shorts or ints otherwise.
+ */
+public class RouteTable {
+	// entry marking a station without a path to the end station, or the end
+	// station itself
+	private static final int NONE = -1;
+
+	private final CompactGraph graph;
+	private final int stations;
+	// exactly one of the entry arrays is used, depending on the widest degree
+	private final byte[] bytes;
+	private final short[] shorts;
+	private final int[] ints;
+
+	/**
+	 * Builds the table with one breadth-first search per station, running in
+	 * parallel across all cores.
+	 *
+	 * @param graph
+	 *            the graph to precompute routes of
+	 * @throws IllegalArgumentException
+	 *             in case of the graph having too many stations for a table
+	 */
+	public RouteTable(final CompactGraph graph) throws IllegalArgumentException {
+		this.graph = graph;
+		stations = graph.stationCount();
+
+		long entries = (long) stations * stations;
+		if (entries > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many stations for a route table: " + stations);
+		}
+
+		// pick the narrowest entry that can hold every adjacency position
+		int width = entryWidth(graph);
+		bytes = width == 1 ? new byte[(int) entries] : null;
+		shorts = width == 2 ? new short[(int) entries] : null;
+		ints = width == 4 ? new int[(int) entries] : null;
+
+		// search from every end station, each filling its own row, with one
+		// parent buffer per worker thread
+		final ThreadLocal<int[]> parents = ThreadLocal.withInitial(() -> new int[stations]);
+		IntStream.range(0, stations).parallel().forEach(end -> {
+			BreadthFirstSearch.local().tree(graph, end, parents.get());
+			fillRow(end, parents.get());
+		});
+	}
+
+	/**
+	 * Estimates the memory a table for a graph would take, without building
+	 * it.
+	 *
+	 * @param graph
+	 *            the graph to precompute routes of
+	 * @return the estimated size of the table in bytes
+	 */
+	public static long footprint(CompactGraph graph) {
+		return (long) graph.stationCount() * graph.stationCount() * entryWidth(graph);
+	}
+
+	/**
+	 * @return the size of the table in bytes
+	 */
+	public long footprint() {
+		return footprint(graph);
+	}
+
+	/**
+	 * Follows the next hops between two stations.
+	 *
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, including both ends, or null if
+	 *         there is no path between the stations
+	 */
+	public int[] path(int start, int end) {
+		// count the hops first so the path can be allocated once
+		int length = 1;
+		for (int s = start; s != end; s = next(s, end)) {
+			if (s == NONE) {
+				return null;
+			}
+			length++;
+		}
+
+		int[] path = new int[length];
+		int i = 0;
+		for (int s = start; s != end; s = next(s, end)) {
+			path[i++] = s;
+		}
+		path[i] = end;
+		return path;
+	}
+
+	/**
+	 * @param station
+	 *            the id of a station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the id of the next station on a shortest path to the end
+	 *         station, or -1 if there is none
+	 */
+	public int next(int station, int end) {
+		int index = end * stations + station;
+		int position;
+		if (bytes != null) {
+			position = bytes[index] & 0xff;
+			position = position == 0xff ? NONE : position;
+		} else if (shorts != null) {
+			position = shorts[index] & 0xffff;
+			position = position == 0xffff ? NONE : position;
+		} else {
+			position = ints[index];
+		}
+		return position == NONE ? NONE : graph.targets[graph.offsets[station] + position];
+	}
+
+	/*
+	 * Stores the row of an end station from the parents of a search rooted at
+	 * it, the parent of a station being its next hop towards the root.
+	 */
+	private void fillRow(int end, int[] parents) {
+		int row = end * stations;
+		for (int s = 0; s < stations; s++) {
+			int position = NONE;
+			if (parents[s] != -1 && s != end) {
+				// find which of the station's slots leads to its parent
+				position = 0;
+				while (graph.targets[graph.offsets[s] + position] != parents[s]) {
+					position++;
+				}
+			}
+
+			if (bytes != null) {
+				bytes[row + s] = (byte) position;
+			} else if (shorts != null) {
+				shorts[row + s] = (short) position;
+			} else {
+				ints[row + s] = position;
+			}
+		}
+	}
+
+	/*
+	 * Returns the number of bytes needed per entry to address every slot of
+	 * the widest station, keeping the all-ones value free for NONE.
+	 */
+	private static int entryWidth(CompactGraph graph) {
+		int widest = 0;
+		for (int s = 0; s < graph.stationCount(); s++) {
+			widest = Math.max(widest, graph.offsets[s + 1] - graph.offsets[s]);
+		}
+		return widest < 0xff ? 1 : widest < 0xffff ? 2 : 4;
+	}
+}
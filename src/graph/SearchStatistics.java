@@ -0,0 +1,30 @@
+package graph;
+
+/**
+ * The work done by the last search run on a search's scratch space, as a
+ * measure of how costly searches are on a network.
+ *
+ * The figures are recorded as the search runs at the cost of a few
+ * additions per station expanded, and stay valid until the next search on
+ * the same thread.
+ */
+public interface SearchStatistics {
+
+	/**
+	 * @return the number of stations, or slots for searches over slots, the
+	 *         last search expanded
+	 */
+	int lastExpanded();
+
+	/**
+	 * @return the number of segments the last search looked along from the
+	 *         stations or slots it expanded
+	 */
+	long lastRelaxed();
+
+	/**
+	 * @return the greatest number of stations or slots the last search held
+	 *         queued at once
+	 */
+	int lastQueuePeak();
+}
@@ -0,0 +1,242 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * An immutable timetable of the trips run along the lines of a graph, laid
+ * out for round-based earliest arrival searches.
+ *
+ * Trips are grouped into routes, a route being a line run in one direction,
+ * so every line has up to two: one along its stops in order, and one back.
+ * The trips of a route all take the travel times of the graph between stops,
+ * so they never overtake one another, and are kept in order of departure.
+ *
+ * Everything is kept in flat int arrays, route after route. The stops of
+ * route r are {@code routeStops[stopStart[r] .. stopStart[r + 1] - 1]} and
+ * the time its t-th trip passes its i-th stop is
+ * {@code times[timeStart[r] + t * stops + i]}, so scanning a trip along a
+ * route reads consecutive ints, and the earliest trip at a stop is found by
+ * binary search down a column of the same block. The routes serving every
+ * station, and where along them it is, are indexed the same way.
+ *
+ * Times are seconds since midnight of the service day, and may run past
+ * 24:00 for trips after midnight. Trips do not run through the segments,
+ * stations and lines closed on the graph the timetable was built for.
+ */
+public class Timetable {
+	// line each route runs along, and whether it runs back along it
+	final int[] routeLine;
+	final boolean[] routeBack;
+	// stops of route r are routeStops[stopStart[r] .. stopStart[r + 1] - 1],
+	// each reached from the stop before along the slot at the same position
+	// of routeSlots, or -1 for the first stop
+	final int[] stopStart;
+	final int[] routeStops;
+	final int[] routeSlots;
+	// trip t of route r passes stop i at times[timeStart[r] + t * stops + i]
+	final int[] tripCount;
+	final int[] timeStart;
+	final int[] times;
+	// routes serving station s are stationRoutes[stationStart[s] ..
+	// stationStart[s + 1] - 1], the station being at stationPositions along
+	// each of them
+	final int[] stationStart;
+	final int[] stationRoutes;
+	final int[] stationPositions;
+	// seconds to change lines at each station, -1 where not known, or null
+	final int[] transferTimes;
+	// segments, stations and lines closed on the graph, or null
+	final Closures closures;
+
+	private final int stationCount;
+	private final int tripTotal;
+
+	/**
+	 * Construct a timetable for the lines of a graph from the departure times
+	 * of their trips.
+	 *
+	 * @param graph
+	 *            the graph whose lines the trips run along, and whose travel
+	 *            times they take between stops
+	 * @param departures
+	 *            the seconds since midnight every trip along each line leaves
+	 *            its first stop, indexed by line id, or null or empty for a
+	 *            line without any
+	 * @param backDepartures
+	 *            the seconds since midnight every trip back along each line
+	 *            leaves its last stop, indexed by line id, or null or empty for
+	 *            a line without any
+	 * @throws IllegalArgumentException
+	 *             in case of not giving the departures of every line, or of a
+	 *             departure being negative
+	 */
+	public Timetable(CompactGraph graph, int[][] departures, int[][] backDepartures) throws IllegalArgumentException {
+		int lineCount = graph.lineCount();
+		if (departures.length != lineCount || backDepartures.length != lineCount) {
+			throw new IllegalArgumentException("Departures must be given for each of the " + lineCount + " lines");
+		}
+
+		// a route for every direction of a line with trips and two stops
+		int routes = 0;
+		for (int l = 0; l < lineCount; l++) {
+			if (graph.stopCount(l) > 1) {
+				routes += (isEmpty(departures[l]) ? 0 : 1) + (isEmpty(backDepartures[l]) ? 0 : 1);
+			}
+		}
+		routeLine = new int[routes];
+		routeBack = new boolean[routes];
+		stopStart = new int[routes + 1];
+		tripCount = new int[routes];
+		timeStart = new int[routes + 1];
+		int r = 0;
+		for (int l = 0; l < lineCount; l++) {
+			for (int back = 0; back < 2; back++) {
+				int[] trips = back == 0 ? departures[l] : backDepartures[l];
+				if (graph.stopCount(l) > 1 && !isEmpty(trips)) {
+					routeLine[r] = l;
+					routeBack[r] = back == 1;
+					tripCount[r] = trips.length;
+					stopStart[r + 1] = stopStart[r] + graph.stopCount(l);
+					timeStart[r + 1] = timeStart[r] + trips.length * graph.stopCount(l);
+					r++;
+				}
+			}
+		}
+
+		// lay out the stops of every route, then every trip's times along
+		// them from the travel times between stops
+		routeStops = new int[stopStart[routes]];
+		routeSlots = new int[stopStart[routes]];
+		times = new int[timeStart[routes]];
+		int[] offsets = new int[graph.lineStops.length];
+		int total = 0;
+		for (r = 0; r < routes; r++) {
+			int line = routeLine[r];
+			int stops = stopStart[r + 1] - stopStart[r];
+			for (int i = 0; i < stops; i++) {
+				routeStops[stopStart[r] + i] = graph.stop(line, routeBack[r] ? stops - 1 - i : i);
+			}
+			routeSlots[stopStart[r]] = -1;
+			for (int i = 1; i < stops; i++) {
+				int slot = segmentSlot(graph, line, routeStops[stopStart[r] + i - 1], routeStops[stopStart[r] + i]);
+				routeSlots[stopStart[r] + i] = slot;
+				offsets[i] = offsets[i - 1]
+						+ (graph.times != null ? graph.times[slot] : CompactGraph.DEFAULT_SEGMENT_TIME);
+			}
+
+			int[] trips = (routeBack[r] ? backDepartures[line] : departures[line]).clone();
+			Arrays.sort(trips);
+			if (trips[0] < 0) {
+				throw new IllegalArgumentException("Departure times must not be negative: " + trips[0]);
+			}
+			for (int t = 0; t < trips.length; t++) {
+				int base = timeStart[r] + t * stops;
+				for (int i = 0; i < stops; i++) {
+					times[base + i] = trips[t] + offsets[i];
+				}
+			}
+			total += trips.length;
+		}
+		tripTotal = total;
+
+		// index the routes serving every station, counting them first
+		stationCount = graph.stationCount();
+		stationStart = new int[stationCount + 1];
+		for (int i = 0; i < routeStops.length; i++) {
+			stationStart[routeStops[i] + 1]++;
+		}
+		for (int s = 0; s < stationCount; s++) {
+			stationStart[s + 1] += stationStart[s];
+		}
+		stationRoutes = new int[routeStops.length];
+		stationPositions = new int[routeStops.length];
+		int[] next = Arrays.copyOf(stationStart, stationCount);
+		for (r = 0; r < routes; r++) {
+			for (int i = stopStart[r]; i < stopStart[r + 1]; i++) {
+				int station = routeStops[i];
+				stationRoutes[next[station]] = r;
+				stationPositions[next[station]++] = i - stopStart[r];
+			}
+		}
+		transferTimes = graph.transferTimes;
+		closures = graph.closures;
+	}
+
+	private static boolean isEmpty(int[] trips) {
+		return trips == null || trips.length == 0;
+	}
+
+	/*
+	 * Finds the slot of the segment of a line between two neighbouring stops,
+	 * which the graph always has.
+	 */
+	private static int segmentSlot(CompactGraph graph, int line, int from, int to) {
+		int slot = graph.offsets[from];
+		while (graph.targets[slot] != to || graph.lines[slot] != line) {
+			slot++;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the number of stations the timetable was built for
+	 */
+	public int stationCount() {
+		return stationCount;
+	}
+
+	/**
+	 * @return the number of routes, each being a line run in one direction
+	 */
+	public int routeCount() {
+		return routeLine.length;
+	}
+
+	/**
+	 * @return the number of trips along all routes
+	 */
+	public int tripCount() {
+		return tripTotal;
+	}
+
+	/**
+	 * @param route
+	 *            a route id
+	 * @return the id of the line the route runs along
+	 */
+	public int routeLine(int route) {
+		return routeLine[route];
+	}
+
+	/**
+	 * Reports the memory taken by the timetable, as a measure of how many
+	 * trips can be kept.
+	 *
+	 * @return the size of the arrays of the timetable in bytes
+	 */
+	public long footprint() {
+		return 4L * (routeLine.length * 4L + routeStops.length * 4L + times.length + stationStart.length)
+				+ routeBack.length;
+	}
+
+	/*
+	 * Finds the first trip of a route passing its stop at a position no
+	 * earlier than a time, or -1 if there is none, searching only the trips
+	 * before a given one.
+	 */
+	int earliestTrip(int route, int position, int time, int before) {
+		int stops = stopStart[route + 1] - stopStart[route];
+		int base = timeStart[route] + position;
+		int low = 0;
+		int high = before;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[base + mid * stops] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low < before ? low : -1;
+	}
+}
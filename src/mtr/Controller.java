@@ -52,4 +52,79 @@ public interface Controller {
 	 * @return a String representation of a path between the specified stations
 	 */
 	String showPathBetween(String stationA, String stationB);
+
+	/**
+	 * Lists a path between each of many pairs of stations, answering all of
+	 * them together. Each path is represented in the same way as by
+	 * showPathBetween.
+	 * 
+	 * @param stationsA
+	 *            the name of the starting station of each pair
+	 * @param stationsB
+	 *            the name of the ending station of each pair, in the same
+	 *            order
+	 * @return a String representation of a path between the stations of each
+	 *         pair, in the same order
+	 */
+	String[] showPathsBetween(String[] stationsA, String[] stationsB);
+
+	/**
+	 * Lists a path from one station to each of many others, such as every
+	 * destination on a departure board. Each path is represented in the same
+	 * way as by showPathBetween.
+	 * 
+	 * @param station
+	 *            the name of the starting station
+	 * @param destinations
+	 *            the names of the ending stations
+	 * @return a String representation of a path to each ending station, in
+	 *         the same order
+	 */
+	String[] showPathsFrom(String station, String[] destinations);
+
+	/**
+	 * Lists the path between the specified stations with the fewest changes
+	 * of line, and the fewest stops of those. The path is represented as the
+	 * line taken on each leg of the journey, followed by the name of the
+	 * stations along that leg.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of another station
+	 * @return a String representation of the legs of the path between the
+	 *         specified stations
+	 */
+	String showPathWithFewestInterchanges(String stationA, String stationB);
+
+	/**
+	 * Finds every station within a number of stops of any of the specified
+	 * stations, in a single search from all of them.
+	 * 
+	 * @param stations
+	 *            the names of the stations to start from
+	 * @param maxStops
+	 *            the greatest number of stops to travel
+	 * @return the ids and names of the stations found, each with the fewest
+	 *         stops to it, or the station that does not exist
+	 * @throws IllegalArgumentException
+	 *             in case of the number of stops being negative
+	 */
+	Reachability findStationsWithin(String[] stations, int maxStops) throws IllegalArgumentException;
+
+	/**
+	 * Finds every station within a number of changes of line of any of the
+	 * specified stations, in a single search from all of them.
+	 * 
+	 * @param stations
+	 *            the names of the stations to start from
+	 * @param maxInterchanges
+	 *            the greatest number of changes of line to make
+	 * @return the ids and names of the stations found, each with the fewest
+	 *         changes to it, or the station that does not exist
+	 * @throws IllegalArgumentException
+	 *             in case of the number of changes being negative
+	 */
+	Reachability findStationsWithinInterchanges(String[] stations, int maxInterchanges)
+			throws IllegalArgumentException;
 }
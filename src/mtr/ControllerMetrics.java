@@ -0,0 +1,233 @@
+package mtr;
+
+import graph.SearchStatistics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Records how long every controller operation takes and how much work every
+ * search does, for monitoring a controller in production.
+ *
+ * Everything is recorded into lock-free histograms and counters, so any
+ * number of queries can record at once without waiting on each other. The
+ * figures can be read as a plain snapshot, or through JMX once registered
+ * with the platform MBean server.
+ *
+ * Reading the clock twice costs as much as the quickest queries themselves,
+ * so operations and searches are sampled: only one in every so many, picked
+ * at random, is recorded, which leaves the percentiles unbiased while
+ * keeping the overhead to a few percent. Counts and totals are estimated by
+ * scaling the samples back up. Loads and builds are always recorded, as is
+ * the queue high-water mark, which sampling could miss.
+ */
+public class ControllerMetrics implements ControllerMetricsMXBean {
+	/**
+	 * The operations of a controller whose latency is recorded.
+	 */
+	public enum Operation {
+		LIST_ALL_TERMINI("listAllTermini"),
+		LIST_STATIONS_IN_LINE("listStationsInLine"),
+		LIST_ALL_DIRECTLY_CONNECTED_LINES("listAllDirectlyConnectedLines"),
+		SHOW_PATH_BETWEEN("showPathBetween"),
+		SHOW_PATHS_BETWEEN("showPathsBetween"),
+		SHOW_PATHS_FROM("showPathsFrom"),
+		SHOW_PATH_WITH_FEWEST_INTERCHANGES("showPathWithFewestInterchanges"),
+		FIND_STATIONS_WITHIN("findStationsWithin"),
+		FIND_STATIONS_WITHIN_INTERCHANGES("findStationsWithinInterchanges");
+
+		private final String method;
+
+		private Operation(String method) {
+			this.method = method;
+		}
+
+		/**
+		 * @return the name of the controller method
+		 */
+		public String getMethod() {
+			return method;
+		}
+	}
+
+	// number of metrics registered so far, to give each a distinct name
+	private static final AtomicInteger REGISTERED = new AtomicInteger();
+	// one in how many operations and searches are recorded by default
+	private static final int DEFAULT_SAMPLING = 16;
+
+	// one less than the power of two one in which operations are recorded
+	private final int sampleMask;
+
+	private final Histogram[] latencies = new Histogram[Operation.values().length];
+	private final Histogram expanded = new Histogram();
+	private final Histogram relaxed = new Histogram();
+	private final AtomicInteger queueHighWaterMark = new AtomicInteger();
+	private final Histogram loadTimes = new Histogram();
+	private final Histogram buildTimes = new Histogram();
+	private final AtomicLong lastLoadTime = new AtomicLong();
+
+	/**
+	 * Construct metrics recording one in 16 operations and searches.
+	 */
+	public ControllerMetrics() {
+		this(DEFAULT_SAMPLING);
+	}
+
+	/**
+	 * Construct metrics recording one in the given number of operations and
+	 * searches.
+	 *
+	 * @param sampling
+	 *            one in how many operations and searches to record, a power
+	 *            of two, with 1 recording every one
+	 * @throws IllegalArgumentException
+	 *             in case of the sampling not being a positive power of two
+	 */
+	public ControllerMetrics(int sampling) throws IllegalArgumentException {
+		if (sampling <= 0 || Integer.bitCount(sampling) != 1) {
+			throw new IllegalArgumentException("Sampling must be a positive power of two: " + sampling);
+		}
+		sampleMask = sampling - 1;
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Decides whether to record the operation about to run.
+	 *
+	 * @return if the operation is one of those sampled
+	 */
+	public boolean sample() {
+		return sampleMask == 0 || (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+	}
+
+	@Override
+	public int getSampling() {
+		return sampleMask + 1;
+	}
+
+	/**
+	 * Records the latency of an operation, which should only be called for
+	 * the operations sampled.
+	 *
+	 * @param operation
+	 *            the operation that ran
+	 * @param nanos
+	 *            the nanoseconds it took
+	 */
+	public void record(Operation operation, long nanos) {
+		latencies[operation.ordinal()].record(nanos);
+	}
+
+	/**
+	 * @param search
+	 *            the scratch space of the search that just ran, holding the
+	 *            work it did
+	 */
+	public void recordSearch(SearchStatistics search) {
+		int peak = search.lastQueuePeak();
+		int highest = queueHighWaterMark.get();
+		while (peak > highest && !queueHighWaterMark.compareAndSet(highest, peak)) {
+			highest = queueHighWaterMark.get();
+		}
+		if (sample()) {
+			expanded.record(search.lastExpanded());
+			relaxed.record(search.lastRelaxed());
+		}
+	}
+
+	/**
+	 * @param nanos
+	 *            the nanoseconds taken to load a network and build the
+	 *            indexes loaded with it
+	 */
+	public void recordLoad(long nanos) {
+		loadTimes.record(nanos);
+		lastLoadTime.set(nanos);
+	}
+
+	/**
+	 * @param nanos
+	 *            the nanoseconds taken to build a route table
+	 */
+	public void recordBuild(long nanos) {
+		buildTimes.record(nanos);
+	}
+
+	/**
+	 * @return every figure recorded so far
+	 */
+	public MetricsSnapshot snapshot() {
+		Map<String, HistogramSnapshot> snapshots = new LinkedHashMap<String, HistogramSnapshot>();
+		for (Operation operation : Operation.values()) {
+			snapshots.put(operation.getMethod(), latencies[operation.ordinal()].snapshot());
+		}
+		return new MetricsSnapshot(getSampling(), snapshots, expanded.snapshot(), relaxed.snapshot(),
+				queueHighWaterMark.get(), loadTimes.snapshot(), buildTimes.snapshot());
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, so JMX consoles
+	 * can read them.
+	 *
+	 * @return the name they were registered under
+	 * @throws JMException
+	 *             in case of the MBean server refusing them
+	 */
+	public ObjectName register() throws JMException {
+		ObjectName name = new ObjectName("mtr:type=ControllerMetrics,id=" + REGISTERED.incrementAndGet());
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		return name;
+	}
+
+	@Override
+	public MetricsSnapshot getSnapshot() {
+		return snapshot();
+	}
+
+	@Override
+	public long getSearches() {
+		return expanded.snapshot().getCount() * getSampling();
+	}
+
+	@Override
+	public long getNodesExpanded() {
+		return expanded.snapshot().getTotal() * getSampling();
+	}
+
+	@Override
+	public long getEdgesRelaxed() {
+		return relaxed.snapshot().getTotal() * getSampling();
+	}
+
+	@Override
+	public int getQueueHighWaterMark() {
+		return queueHighWaterMark.get();
+	}
+
+	@Override
+	public long getLastLoadTime() {
+		return lastLoadTime.get();
+	}
+
+	@Override
+	public void reset() {
+		for (Histogram latency : latencies) {
+			latency.clear();
+		}
+		expanded.clear();
+		relaxed.clear();
+		queueHighWaterMark.set(0);
+		loadTimes.clear();
+		buildTimes.clear();
+		lastLoadTime.set(0);
+	}
+}
@@ -0,0 +1,53 @@
+package mtr;
+
+/**
+ * The management interface of a controller's metrics, as shown by JMX
+ * consoles. Latencies and load times are in nanoseconds, and the histograms
+ * of the snapshot only count the operations and searches sampled.
+ */
+public interface ControllerMetricsMXBean {
+
+	/**
+	 * @return every figure recorded so far
+	 */
+	MetricsSnapshot getSnapshot();
+
+	/**
+	 * @return one in how many operations and searches are recorded
+	 */
+	int getSampling();
+
+	/**
+	 * @return the number of searches run, estimated from those sampled
+	 */
+	long getSearches();
+
+	/**
+	 * @return the stations or slots expanded by all searches, estimated from
+	 *         those sampled
+	 */
+	long getNodesExpanded();
+
+	/**
+	 * @return the segments looked along by all searches, estimated from those
+	 *         sampled
+	 */
+	long getEdgesRelaxed();
+
+	/**
+	 * @return the greatest number of stations or slots any search held queued
+	 *         at once
+	 */
+	int getQueueHighWaterMark();
+
+	/**
+	 * @return the nanoseconds taken by the last load of a network, or 0 if
+	 *         none was recorded
+	 */
+	long getLastLoadTime();
+
+	/**
+	 * Forgets every figure recorded so far.
+	 */
+	void reset();
+}
@@ -0,0 +1,461 @@
+package mtr;
+
+import graph.CompactGraph;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Loads an MTR network from a CSV file, where every row is the name of a line
+ * followed by the names of its stations in order.
+ *
+ * The file is memory-mapped and split into chunks at line breaks, which are
+ * parsed in parallel. Each chunk interns the names it meets straight from the
+ * mapped bytes, so a name only becomes a String the first time a chunk sees
+ * it and no row is ever split into an array of Strings. The chunks are then
+ * merged in file order into a compact graph.
+ *
+ * Fields may be quoted, with doubled quotes standing for a quote, so that
+ * names can contain commas. Quoted fields may not contain line breaks, as
+ * chunks are split at every line break. A byte order mark at the start of the
+ * file is skipped, and a line may only appear in one row.
+ *
+ * Rows whose first field starts with {@code #} are not lines, but optional
+ * directives describing the network, and are ignored if not recognised:
+ * <ul>
+ * <li>{@code #time,<line>,<seconds>,...} gives the travel time of each
+ * segment of a line in order. Segments without a time take
+ * {@link CompactGraph#DEFAULT_SEGMENT_TIME}.</li>
+ * <li>{@code #transfer,<station>,<seconds>} gives the time taken to change
+ * lines at a station, in place of the default interchange penalty.</li>
+ * <li>{@code #coord,<station>,<latitude>,<longitude>} gives the coordinates
+ * of a station in degrees.</li>
+ * </ul>
+ */
+public class CsvNetworkLoader {
+	// smallest and largest number of bytes parsed by one task
+	private static final int MIN_CHUNK = 1 << 20;
+	private static final int MAX_CHUNK = 1 << 28;
+
+	// directives recognised in rows starting with a #
+	private static final String TIME = "#time";
+	private static final String TRANSFER = "#transfer";
+	private static final String COORDINATES = "#coord";
+
+	/*
+	 * Only static methods.
+	 */
+	private CsvNetworkLoader() {
+	}
+
+	/**
+	 * Loads the network in a CSV file.
+	 *
+	 * @param path
+	 *            the path to the csv file
+	 * @return a graph of the stations and lines in the file
+	 * @throws FileNotFoundException
+	 *             in case of file path not existing
+	 * @throws IOException
+	 *             in the case of reading the file with insufficient
+	 *             permissions, of a directive holding an invalid number, or of
+	 *             a line appearing in more than one row
+	 */
+	public static CompactGraph load(String path) throws FileNotFoundException, IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+			// split the file into chunks ending at line breaks
+			long[] bounds = chunkBounds(channel);
+
+			// parse every chunk in parallel, mapping each one separately so
+			// files larger than a single mapping are supported
+			Chunk[] chunks = new Chunk[bounds.length - 1];
+			try {
+				IntStream.range(0, chunks.length).parallel().forEach(i -> {
+					try {
+						chunks[i] = new Chunk(channel.map(MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]),
+								bounds[i] == 0);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+
+			return merge(chunks);
+		}
+	}
+
+	/*
+	 * Picks the offsets splitting the file into chunks, each one starting just
+	 * after a line break, with the size of the file as the last offset.
+	 */
+	private static long[] chunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		int tasks = Runtime.getRuntime().availableProcessors() * 4;
+		long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / tasks + 1));
+
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		long position = 0;
+		while (size - position > target) {
+			// look for the first line break past the nominal end of the chunk
+			long end = -1;
+			for (long from = position + target; end == -1 && from < size; from += MIN_CHUNK) {
+				MappedByteBuffer window = channel.map(MapMode.READ_ONLY, from, Math.min(MIN_CHUNK, size - from));
+				for (int i = 0; i < window.limit(); i++) {
+					if (window.get(i) == '\n') {
+						end = from + i + 1;
+						break;
+					}
+				}
+			}
+			if (end == -1 || end == size) {
+				break;
+			}
+			bounds.add(end);
+			position = end;
+		}
+		bounds.add(size);
+
+		long[] offsets = new long[bounds.size()];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = bounds.get(i);
+		}
+		return offsets;
+	}
+
+	/*
+	 * Merges the chunks in file order, giving every distinct station and line
+	 * a global id.
+	 */
+	private static CompactGraph merge(Chunk[] chunks) throws IOException {
+		// size the station index for the worst case of no name being shared
+		// between chunks, so it never has to be rehashed
+		int names = 0;
+		for (Chunk chunk : chunks) {
+			names += chunk.names.size();
+		}
+		Map<String, Integer> stationIds = new HashMap<String, Integer>(names * 4 / 3 + 1);
+		List<String> stations = new ArrayList<String>(names);
+		// keeps the stops of each line in file order
+		Map<String, int[]> lines = new LinkedHashMap<String, int[]>(32);
+
+		for (Chunk chunk : chunks) {
+			// translate the chunk's local ids, looking each name up only once
+			int[] global = new int[chunk.names.size()];
+			for (int local = 0; local < global.length; local++) {
+				if (chunk.isLine[local]) {
+					continue;
+				}
+				String name = chunk.names.get(local);
+				Integer id = stationIds.get(name);
+				if (id == null) {
+					id = stations.size();
+					stationIds.put(name, id);
+					stations.add(name);
+				}
+				global[local] = id;
+			}
+
+			for (int row = 0; row < chunk.rows; row++) {
+				int from = chunk.rowStart[row];
+				int to = chunk.rowStart[row + 1];
+				int[] stops = new int[to - from - 1];
+				for (int i = from + 1; i < to; i++) {
+					stops[i - from - 1] = global[chunk.fields[i]];
+				}
+				String line = chunk.names.get(chunk.fields[from]);
+				if (lines.put(line, stops) != null) {
+					throw new IOException("Line " + line + " appears in more than one row");
+				}
+			}
+		}
+
+		// lay the stops of every line out one after another
+		String[] lineNames = lines.keySet().toArray(new String[lines.size()]);
+		int[] lineStart = new int[lineNames.length + 1];
+		int total = 0;
+		for (int l = 0; l < lineNames.length; l++) {
+			lineStart[l] = total;
+			total += lines.get(lineNames[l]).length;
+		}
+		lineStart[lineNames.length] = total;
+		int[] lineStops = new int[total];
+		for (int l = 0; l < lineNames.length; l++) {
+			int[] stops = lines.get(lineNames[l]);
+			System.arraycopy(stops, 0, lineStops, lineStart[l], stops.length);
+		}
+
+		// apply the directives in file order, the last one for a line or
+		// station winning
+		int[] stopTimes = null;
+		double[] coordinates = null;
+		int[] transferTimes = null;
+		Map<String, Integer> lineIds = new HashMap<String, Integer>(lineNames.length * 2);
+		for (int l = 0; l < lineNames.length; l++) {
+			lineIds.put(lineNames[l], l);
+		}
+		for (Chunk chunk : chunks) {
+			for (String[] directive : chunk.directives) {
+				Integer id;
+				switch (directive[0]) {
+				case TIME:
+					if (directive.length < 2 || (id = lineIds.get(directive[1])) == null) {
+						break;
+					}
+					if (stopTimes == null) {
+						stopTimes = new int[total];
+						Arrays.fill(stopTimes, -1);
+					}
+					// the time of each segment belongs to the stop it reaches
+					for (int i = lineStart[id] + 1; i < lineStart[id + 1]; i++) {
+						int field = i - lineStart[id] + 1;
+						stopTimes[i] = field < directive.length ? parseSeconds(directive, field) : -1;
+					}
+					break;
+				case TRANSFER:
+					if (directive.length < 3 || (id = stationIds.get(directive[1])) == null) {
+						break;
+					}
+					if (transferTimes == null) {
+						transferTimes = new int[stations.size()];
+						Arrays.fill(transferTimes, -1);
+					}
+					transferTimes[id] = parseSeconds(directive, 2);
+					break;
+				case COORDINATES:
+					if (directive.length < 4 || (id = stationIds.get(directive[1])) == null) {
+						break;
+					}
+					if (coordinates == null) {
+						coordinates = new double[stations.size() * 2];
+						Arrays.fill(coordinates, Double.NaN);
+					}
+					coordinates[2 * id] = parseDegrees(directive, 2);
+					coordinates[2 * id + 1] = parseDegrees(directive, 3);
+					break;
+				default:
+					// anything else is a comment
+				}
+			}
+		}
+
+		return new CompactGraph(stations.toArray(new String[stations.size()]), lineNames, lineStart, lineStops,
+				stopTimes, coordinates, transferTimes);
+	}
+
+	private static int parseSeconds(String[] directive, int field) throws IOException {
+		try {
+			int seconds = Integer.parseInt(directive[field].trim());
+			if (seconds < 0) {
+				throw new NumberFormatException();
+			}
+			return seconds;
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid number of seconds " + directive[field] + " in " + directive[0] + " row for "
+					+ directive[1]);
+		}
+	}
+
+	private static double parseDegrees(String[] directive, int field) throws IOException {
+		try {
+			return Double.parseDouble(directive[field].trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid coordinate " + directive[field] + " in " + directive[0] + " row for "
+					+ directive[1]);
+		}
+	}
+
+	/*
+	 * The rows of one chunk, as local ids of the names in each field.
+	 */
+	private static class Chunk {
+		// local id -> name, and whether the name was first seen as a line
+		private final List<String> names = new ArrayList<String>();
+		private boolean[] isLine = new boolean[64];
+		// the fields of row r are fields[rowStart[r] .. rowStart[r + 1] - 1]
+		private int[] fields = new int[1024];
+		private int[] rowStart = new int[64];
+		private int rows;
+		private int fieldCount;
+		// rows starting with a #, kept as they are
+		private final List<String[]> directives = new ArrayList<String[]>();
+
+		// open addressing table from name bytes to local id
+		private int[] table = new int[256];
+		private byte[][] keys = new byte[64][];
+		private int[] hashes = new int[64];
+
+		// the bytes of the field being parsed, without quotes
+		private byte[] field = new byte[256];
+
+		/*
+		 * Parses every row in a chunk of the file, skipping the byte order
+		 * mark if the chunk starts the file.
+		 */
+		private Chunk(MappedByteBuffer buffer, boolean first) {
+			Arrays.fill(table, -1);
+			int limit = buffer.limit();
+			int i = 0;
+			if (first && limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+					&& buffer.get(2) == (byte) 0xBF) {
+				i = 3;
+			}
+
+			while (i < limit) {
+				int rowFields = 0;
+				boolean endOfRow = false;
+				List<String> directive = null;
+
+				// parse the fields of one row
+				while (!endOfRow) {
+					int length = 0;
+					if (i < limit && buffer.get(i) == '"') {
+						// copy a quoted field, turning doubled quotes into one
+						i++;
+						while (i < limit) {
+							byte b = buffer.get(i++);
+							if (b == '"') {
+								if (i < limit && buffer.get(i) == '"') {
+									i++;
+								} else {
+									break;
+								}
+							}
+							length = append(length, b);
+						}
+					}
+					// copy the rest of the field up to the next separator
+					while (i < limit) {
+						byte b = buffer.get(i);
+						if (b == ',' || b == '\n') {
+							break;
+						}
+						length = append(length, b);
+						i++;
+					}
+					if (length > 0 && field[length - 1] == '\r' && (i >= limit || buffer.get(i) == '\n')) {
+						length--;
+					}
+
+					endOfRow = i >= limit || buffer.get(i) == '\n';
+					i++;
+
+					// skip empty fields, and a row of only empty fields
+					if (length > 0) {
+						if (rowFields == 0 && field[0] == '#') {
+							directive = new ArrayList<String>();
+						}
+						if (directive != null) {
+							directive.add(new String(field, 0, length, StandardCharsets.UTF_8));
+						} else {
+							addField(intern(length, rowFields == 0));
+						}
+						rowFields++;
+					}
+				}
+
+				if (directive != null) {
+					directives.add(directive.toArray(new String[directive.size()]));
+				} else if (rowFields > 0) {
+					endRow();
+				}
+			}
+
+			// only the names are needed from now on, so let the table go
+			table = null;
+			keys = null;
+			hashes = null;
+		}
+
+		private int append(int length, byte b) {
+			if (length == field.length) {
+				field = Arrays.copyOf(field, length * 2);
+			}
+			field[length] = b;
+			return length + 1;
+		}
+
+		private void addField(int id) {
+			if (fieldCount == fields.length) {
+				fields = Arrays.copyOf(fields, fieldCount * 2);
+			}
+			fields[fieldCount++] = id;
+		}
+
+		private void endRow() {
+			if (rows + 1 == rowStart.length) {
+				rowStart = Arrays.copyOf(rowStart, rowStart.length * 2);
+			}
+			rowStart[++rows] = fieldCount;
+		}
+
+		/*
+		 * Returns the local id of the name in the field buffer, creating the
+		 * name's String the first time the chunk sees it.
+		 */
+		private int intern(int length, boolean line) {
+			int hash = 1;
+			for (int i = 0; i < length; i++) {
+				hash = 31 * hash + field[i];
+			}
+
+			int mask = table.length - 1;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (table[slot] != -1) {
+				int id = table[slot];
+				if (hashes[id] == hash && Arrays.equals(keys[id], 0, keys[id].length, field, 0, length)
+						&& isLine[id] == line) {
+					return id;
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			// add the name, keeping lines and stations of the same name apart
+			int id = names.size();
+			names.add(new String(field, 0, length, StandardCharsets.UTF_8));
+			if (id == keys.length) {
+				keys = Arrays.copyOf(keys, id * 2);
+				hashes = Arrays.copyOf(hashes, id * 2);
+				isLine = Arrays.copyOf(isLine, id * 2);
+			}
+			keys[id] = Arrays.copyOf(field, length);
+			hashes[id] = hash;
+			isLine[id] = line;
+			table[slot] = id;
+
+			// keep the table at most half full
+			if (names.size() * 2 > table.length) {
+				rehash();
+			}
+			return id;
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			Arrays.fill(table, -1);
+			int mask = table.length - 1;
+			for (int id = 0; id < names.size(); id++) {
+				int slot = (hashes[id] ^ (hashes[id] >>> 16)) & mask;
+				while (table[slot] != -1) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = id;
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package mtr;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, such as latencies in nanoseconds or
+ * stations expanded by searches, that any number of threads can record into
+ * without locking.
+ *
+ * Values are counted in logarithmic buckets, like an HDR histogram: every
+ * power of two is split into 16 buckets of equal width, so any value is
+ * reported within about 6% of its true value while the whole range of a long
+ * fits in under a thousand counters. Recording a value is one atomic
+ * increment of its bucket, one addition to a striped sum and, only when it is
+ * the greatest so far, an update of the maximum.
+ */
+public class Histogram {
+	// values below SUB are counted exactly, one bucket each, and every power
+	// of two above is split into HALF buckets
+	private static final int SUB_BITS = 5;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int HALF = SUB / 2;
+	private static final int BUCKETS = (64 - SUB_BITS) * HALF + SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value, treating negative values as 0.
+	 *
+	 * @param value
+	 *            the value to record
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucket(value));
+		sum.add(value);
+		long greatest = max.get();
+		while (value > greatest && !max.compareAndSet(greatest, value)) {
+			greatest = max.get();
+		}
+	}
+
+	/**
+	 * Forgets every value recorded so far. Values recorded while clearing may
+	 * or may not be forgotten.
+	 */
+	public void clear() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		sum.reset();
+		max.set(0);
+	}
+
+	/**
+	 * Takes a snapshot of the values recorded so far. Values recorded while
+	 * taking it may or may not be included.
+	 *
+	 * @return the count, mean, maximum and percentiles of the values
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		long greatest = max.get();
+		return new HistogramSnapshot(count, sum.sum(), greatest,
+				percentile(copy, count, greatest, 0.50), percentile(copy, count, greatest, 0.90),
+				percentile(copy, count, greatest, 0.99), percentile(copy, count, greatest, 0.999));
+	}
+
+	/*
+	 * Finds the bucket a value is counted in.
+	 */
+	static int bucket(long value) {
+		if (value < SUB) {
+			return (int) value;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	/*
+	 * Finds the greatest value counted in a bucket.
+	 */
+	static long highest(int bucket) {
+		if (bucket < SUB) {
+			return bucket;
+		}
+		int shift = bucket / HALF - 1;
+		long sub = bucket % HALF + HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/*
+	 * Finds the value below or at which the given fraction of the values
+	 * were, as the greatest value of its bucket but never above the maximum.
+	 */
+	private static long percentile(long[] counts, long count, long max, double fraction) {
+		long rank = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				return Math.min(highest(i), max);
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,88 @@
+package mtr;
+
+/**
+ * The values recorded by a histogram at one moment, summarised by their
+ * count, mean, maximum and percentiles. Percentiles are accurate to within
+ * the width of the histogram's buckets.
+ */
+public class HistogramSnapshot {
+	private final long count;
+	private final long total;
+	private final long max;
+	private final long p50;
+	private final long p90;
+	private final long p99;
+	private final long p999;
+
+	HistogramSnapshot(long count, long total, long max, long p50, long p90, long p99, long p999) {
+		this.count = count;
+		this.total = total;
+		this.max = max;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the sum of the values
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the mean of the values, or 0 if none were recorded
+	 */
+	public double getMean() {
+		return count > 0 ? (double) total / count : 0;
+	}
+
+	/**
+	 * @return the greatest value, or 0 if none were recorded
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the median value
+	 */
+	public long getP50() {
+		return p50;
+	}
+
+	/**
+	 * @return the value 90% of the values were at or below
+	 */
+	public long getP90() {
+		return p90;
+	}
+
+	/**
+	 * @return the value 99% of the values were at or below
+	 */
+	public long getP99() {
+		return p99;
+	}
+
+	/**
+	 * @return the value 99.9% of the values were at or below
+	 */
+	public long getP999() {
+		return p999;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count %d, mean %.1f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d", count, getMean(), p50, p90,
+				p99, p999, max);
+	}
+}
@@ -0,0 +1,195 @@
+package mtr;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * A controller recording the latency of every operation of a working
+ * controller it wraps, along with the work done by its searches and the time
+ * taken by its loads, into a set of metrics.
+ *
+ * Only the operations the metrics sample are timed, the others costing a
+ * single random draw, so a controller can stay instrumented in production.
+ */
+public class InstrumentedController implements Controller {
+	private final WorkingController controller;
+	private final ControllerMetrics metrics;
+
+	/**
+	 * Instrument an already loaded controller, recording one in 16 operations
+	 * and searches.
+	 *
+	 * @param controller
+	 *            the controller to record the operations of
+	 */
+	public InstrumentedController(WorkingController controller) {
+		this(controller, new ControllerMetrics());
+	}
+
+	/**
+	 * Instrument an already loaded controller.
+	 *
+	 * @param controller
+	 *            the controller to record the operations of
+	 * @param metrics
+	 *            the metrics to record into
+	 */
+	public InstrumentedController(WorkingController controller, ControllerMetrics metrics) {
+		this.controller = controller;
+		this.metrics = metrics;
+		controller.setMetrics(metrics);
+	}
+
+	/**
+	 * Load given CSV file or snapshot file into a new instrumented
+	 * controller, recording the time taken to load it.
+	 *
+	 * @param path
+	 *            the path to the csv file or snapshot file
+	 * @throws FileNotFoundException
+	 *             in case of file not existing
+	 * @throws IOException
+	 *             in case of the file reading the file with insufficient
+	 *             permissions, or of a snapshot being corrupt
+	 */
+	public InstrumentedController(String path) throws FileNotFoundException, IOException {
+		long start = System.nanoTime();
+		this.controller = new WorkingController(path);
+		this.metrics = new ControllerMetrics();
+		metrics.recordLoad(System.nanoTime() - start);
+		controller.setMetrics(metrics);
+	}
+
+	/**
+	 * @return the controller whose operations are recorded, to configure it
+	 *         or reload its network
+	 */
+	public WorkingController getController() {
+		return controller;
+	}
+
+	/**
+	 * @return the metrics the operations are recorded into
+	 */
+	public ControllerMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public String listAllTermini() {
+		if (!metrics.sample()) {
+			return controller.listAllTermini();
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.listAllTermini();
+		} finally {
+			metrics.record(ControllerMetrics.Operation.LIST_ALL_TERMINI, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public String listStationsInLine(String line) {
+		if (!metrics.sample()) {
+			return controller.listStationsInLine(line);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.listStationsInLine(line);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.LIST_STATIONS_IN_LINE, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public String listAllDirectlyConnectedLines(String line) {
+		if (!metrics.sample()) {
+			return controller.listAllDirectlyConnectedLines(line);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.listAllDirectlyConnectedLines(line);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.LIST_ALL_DIRECTLY_CONNECTED_LINES, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public String showPathBetween(String stationA, String stationB) {
+		if (!metrics.sample()) {
+			return controller.showPathBetween(stationA, stationB);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.showPathBetween(stationA, stationB);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.SHOW_PATH_BETWEEN, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public String[] showPathsBetween(String[] stationsA, String[] stationsB) {
+		if (!metrics.sample()) {
+			return controller.showPathsBetween(stationsA, stationsB);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.showPathsBetween(stationsA, stationsB);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.SHOW_PATHS_BETWEEN, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public String[] showPathsFrom(String station, String[] destinations) {
+		if (!metrics.sample()) {
+			return controller.showPathsFrom(station, destinations);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.showPathsFrom(station, destinations);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.SHOW_PATHS_FROM, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public String showPathWithFewestInterchanges(String stationA, String stationB) {
+		if (!metrics.sample()) {
+			return controller.showPathWithFewestInterchanges(stationA, stationB);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.showPathWithFewestInterchanges(stationA, stationB);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.SHOW_PATH_WITH_FEWEST_INTERCHANGES, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Reachability findStationsWithin(String[] stations, int maxStops) throws IllegalArgumentException {
+		if (!metrics.sample()) {
+			return controller.findStationsWithin(stations, maxStops);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.findStationsWithin(stations, maxStops);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.FIND_STATIONS_WITHIN, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Reachability findStationsWithinInterchanges(String[] stations, int maxInterchanges)
+			throws IllegalArgumentException {
+		if (!metrics.sample()) {
+			return controller.findStationsWithinInterchanges(stations, maxInterchanges);
+		}
+		long start = System.nanoTime();
+		try {
+			return controller.findStationsWithinInterchanges(stations, maxInterchanges);
+		} finally {
+			metrics.record(ControllerMetrics.Operation.FIND_STATIONS_WITHIN_INTERCHANGES, System.nanoTime() - start);
+		}
+	}
+}
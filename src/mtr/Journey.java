@@ -0,0 +1,181 @@
+package mtr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of looking for the earliest arrival between two stations from a
+ * departure time, which is either the trips taken, one leg per trip, or the
+ * reason there is no journey.
+ *
+ * Like a path, finding no journey is an expected answer, so it is returned
+ * rather than thrown.
+ */
+public class Journey {
+	/**
+	 * A trip taken along a line, from the station it is boarded at to the one
+	 * it is left at.
+	 */
+	public static class Leg {
+		private final String line;
+		private final List<String> stations;
+		private final int departure;
+		private final int arrival;
+
+		/**
+		 * @param line
+		 *            the name of the line the trip runs along
+		 * @param stations
+		 *            the names of the stations the trip is taken through,
+		 *            including both ends
+		 * @param departure
+		 *            the seconds since midnight the trip leaves the first
+		 *            station
+		 * @param arrival
+		 *            the seconds since midnight the trip reaches the last
+		 *            station
+		 */
+		public Leg(String line, String[] stations, int departure, int arrival) {
+			this.line = line;
+			this.stations = Collections.unmodifiableList(Arrays.asList(stations));
+			this.departure = departure;
+			this.arrival = arrival;
+		}
+
+		/**
+		 * @return the name of the line the trip runs along
+		 */
+		public String getLine() {
+			return line;
+		}
+
+		/**
+		 * @return the names of the stations the trip is taken through,
+		 *         including both ends
+		 */
+		public List<String> getStations() {
+			return stations;
+		}
+
+		/**
+		 * @return the seconds since midnight the trip leaves the first station
+		 */
+		public int getDeparture() {
+			return departure;
+		}
+
+		/**
+		 * @return the seconds since midnight the trip reaches the last station
+		 */
+		public int getArrival() {
+			return arrival;
+		}
+
+		/**
+		 * @return the leg as its line, then the stations it passes through
+		 *         separated by arrows, each end with its time
+		 */
+		@Override
+		public String toString() {
+			return line + ": " + TimetableLoader.formatTime(departure) + " " + String.join(" -> ", stations) + " "
+					+ TimetableLoader.formatTime(arrival);
+		}
+	}
+
+	private final PathResult.Status status;
+	private final String stationA;
+	private final String stationB;
+	private final List<Leg> legs;
+
+	private Journey(PathResult.Status status, String stationA, String stationB, List<Leg> legs) {
+		this.status = status;
+		this.stationA = stationA;
+		this.stationB = stationB;
+		this.legs = legs;
+	}
+
+	/**
+	 * @param stationA
+	 *            the name of the starting station
+	 * @param stationB
+	 *            the name of the ending station
+	 * @param legs
+	 *            the trips taken, in order, or none if both stations are the
+	 *            same
+	 * @return the result of a journey being found
+	 */
+	public static Journey found(String stationA, String stationB, Leg[] legs) {
+		return new Journey(PathResult.Status.FOUND, stationA, stationB,
+				Collections.unmodifiableList(Arrays.asList(legs)));
+	}
+
+	/**
+	 * @param status
+	 *            why there is no journey, which must not be FOUND
+	 * @param stationA
+	 *            the name of the starting station
+	 * @param stationB
+	 *            the name of the ending station
+	 * @return the result of no journey being found
+	 * @throws IllegalArgumentException
+	 *             in case of the status being FOUND
+	 */
+	public static Journey notFound(PathResult.Status status, String stationA, String stationB)
+			throws IllegalArgumentException {
+		if (status == PathResult.Status.FOUND) {
+			throw new IllegalArgumentException("A found journey needs its legs");
+		}
+		return new Journey(status, stationA, stationB, Collections.<Leg>emptyList());
+	}
+
+	/**
+	 * @return whether a journey was found, and why not if there was none
+	 */
+	public PathResult.Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return if a journey was found
+	 */
+	public boolean isFound() {
+		return status == PathResult.Status.FOUND;
+	}
+
+	/**
+	 * @return the trips taken, in order, or an empty list if no journey was
+	 *         found or both stations are the same
+	 */
+	public List<Leg> getLegs() {
+		return legs;
+	}
+
+	/**
+	 * @return the seconds since midnight the journey reaches the ending
+	 *         station, or -1 if no journey was found or it takes no trips
+	 */
+	public int getArrival() {
+		return legs.isEmpty() ? -1 : legs.get(legs.size() - 1).getArrival();
+	}
+
+	/**
+	 * @return the journey as one leg per line, or the reason there is none
+	 */
+	@Override
+	public String toString() {
+		if (!isFound()) {
+			return PathResult.notFound(status, stationA, stationB).toString();
+		} else if (legs.isEmpty()) {
+			return stationA;
+		}
+		StringBuilder sb = new StringBuilder(128 * legs.size());
+		for (int i = 0; i < legs.size(); i++) {
+			if (i > 0) {
+				sb.append("\n");
+			}
+			sb.append(legs.get(i));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,100 @@
+package mtr;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The figures recorded by a controller's metrics at one moment: the latency
+ * of every controller operation, the work done by searches and the time
+ * taken to load networks and build their indexes.
+ */
+public class MetricsSnapshot {
+	private final int sampling;
+	private final Map<String, HistogramSnapshot> latencies;
+	private final HistogramSnapshot expanded;
+	private final HistogramSnapshot relaxed;
+	private final int queueHighWaterMark;
+	private final HistogramSnapshot loadTimes;
+	private final HistogramSnapshot buildTimes;
+
+	MetricsSnapshot(int sampling, Map<String, HistogramSnapshot> latencies, HistogramSnapshot expanded,
+			HistogramSnapshot relaxed, int queueHighWaterMark, HistogramSnapshot loadTimes,
+			HistogramSnapshot buildTimes) {
+		this.sampling = sampling;
+		this.latencies = Collections.unmodifiableMap(latencies);
+		this.expanded = expanded;
+		this.relaxed = relaxed;
+		this.queueHighWaterMark = queueHighWaterMark;
+		this.loadTimes = loadTimes;
+		this.buildTimes = buildTimes;
+	}
+
+	/**
+	 * @return one in how many operations and searches were recorded, which
+	 *         scales the counts of their histograms back to the true counts
+	 */
+	public int getSampling() {
+		return sampling;
+	}
+
+	/**
+	 * @return the latency in nanoseconds of the sampled calls of every
+	 *         controller operation, by the name of its method
+	 */
+	public Map<String, HistogramSnapshot> getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * @return the stations, or slots for searches over slots, expanded by
+	 *         every sampled search
+	 */
+	public HistogramSnapshot getExpandedPerSearch() {
+		return expanded;
+	}
+
+	/**
+	 * @return the segments looked along by every sampled search
+	 */
+	public HistogramSnapshot getRelaxedPerSearch() {
+		return relaxed;
+	}
+
+	/**
+	 * @return the greatest number of stations or slots any search held queued
+	 *         at once
+	 */
+	public int getQueueHighWaterMark() {
+		return queueHighWaterMark;
+	}
+
+	/**
+	 * @return the nanoseconds taken by every load of a network, along with
+	 *         the indexes built with it
+	 */
+	public HistogramSnapshot getLoadTimes() {
+		return loadTimes;
+	}
+
+	/**
+	 * @return the nanoseconds taken by every build of a route table
+	 */
+	public HistogramSnapshot getBuildTimes() {
+		return buildTimes;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("sampling: one in ").append(sampling).append("\n");
+		for (Map.Entry<String, HistogramSnapshot> latency : latencies.entrySet()) {
+			sb.append(latency.getKey()).append(" ns: ").append(latency.getValue()).append("\n");
+		}
+		sb.append("expanded per search: ").append(expanded).append("\n");
+		sb.append("relaxed per search: ").append(relaxed).append("\n");
+		sb.append("queue high-water mark: ").append(queueHighWaterMark).append("\n");
+		sb.append("load ns: ").append(loadTimes).append("\n");
+		sb.append("build ns: ").append(buildTimes);
+		return sb.toString();
+	}
+}
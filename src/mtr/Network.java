@@ -0,0 +1,217 @@
+package mtr;
+
+import graph.Closures;
+import graph.CompactGraph;
+import graph.ContractionHierarchy;
+import graph.LandmarkIndex;
+import graph.LineIndex;
+import graph.NameIndex;
+import graph.NetworkSnapshot;
+import graph.PathCache;
+import graph.RouteTable;
+import graph.Timetable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * One version of a loaded network: its graph along with every index and cache
+ * built for it.
+ *
+ * A network is never modified once built. Changing any part of it builds a
+ * new network sharing the unchanged parts, which the controller then
+ * publishes in place of the old one, so queries can read a network without
+ * locking and see every part of it from the same version.
+ *
+ * The one exception is the closures of the graph, which disruptions change in
+ * place without building a new network, and which a new version loaded from
+ * a file starts without.
+ */
+final class Network {
+	// stores the stations, their connections and the stations of every line
+	// as a compact graph, along with the segments, stations and lines closed
+	final CompactGraph graph;
+	// stores which lines share stations with each other
+	final LineIndex lineIndex;
+	// looks up station and line names by prefix and despite typos
+	final NameIndex stationNames;
+	final NameIndex lineNames;
+	// stores the next hops between every pair of stations ignoring the
+	// closures, or null if not precomputed
+	final RouteTable routeTable;
+	// stores recently found paths in this version, or null if caching is
+	// disabled
+	final PathCache routeCache;
+	// stores the trips run along the lines, or null if no timetable is loaded
+	final Timetable timetable;
+	// stores the stops from a few landmarks to every station, or null if not
+	// precomputed
+	final LandmarkIndex landmarks;
+	// stores the shortcuts of a contraction hierarchy ignoring the closures,
+	// or null if not precomputed
+	final ContractionHierarchy hierarchy;
+
+	private Network(CompactGraph graph, LineIndex lineIndex, NameIndex stationNames, NameIndex lineNames,
+			RouteTable routeTable, PathCache routeCache, Timetable timetable, LandmarkIndex landmarks,
+			ContractionHierarchy hierarchy) {
+		this.graph = graph;
+		this.lineIndex = lineIndex;
+		this.stationNames = stationNames;
+		this.lineNames = lineNames;
+		this.routeTable = routeTable;
+		this.routeCache = routeCache;
+		this.timetable = timetable;
+		this.landmarks = landmarks;
+		this.hierarchy = hierarchy;
+	}
+
+	/**
+	 * Loads a network from a CSV file or snapshot file, building the indexes
+	 * the file does not include.
+	 *
+	 * @param path
+	 *            the path to the csv file or snapshot file
+	 * @param cacheCapacity
+	 *            the greatest number of paths to cache, or 0 to disable
+	 *            caching
+	 * @return the loaded network
+	 * @throws FileNotFoundException
+	 *             in case of file not existing
+	 * @throws IOException
+	 *             in case of the file reading the file with insufficient
+	 *             permissions, or of a snapshot being corrupt
+	 */
+	static Network load(String path, int cacheCapacity) throws FileNotFoundException, IOException {
+		CompactGraph graph;
+		LineIndex lineIndex = null;
+		ContractionHierarchy hierarchy = null;
+		NameIndex stationNames = null;
+		NameIndex lineNames = null;
+		if (NetworkSnapshot.isSnapshot(path)) {
+			NetworkSnapshot snapshot = new NetworkSnapshot(path);
+			graph = snapshot.getGraph();
+			lineIndex = snapshot.getLineIndex();
+			hierarchy = snapshot.getHierarchy();
+			stationNames = snapshot.getStationNameIndex();
+			lineNames = snapshot.getLineNameIndex();
+		} else {
+			graph = CsvNetworkLoader.load(path);
+		}
+		graph = graph.withClosures(new Closures(graph));
+
+		// build the indexes the snapshot did not include
+		if (lineIndex == null) {
+			lineIndex = new LineIndex(graph);
+		}
+		if (stationNames == null || lineNames == null) {
+			// decoding every name is what makes this slow, so snapshots keep
+			// the indexes to skip it
+			String[] stations = new String[graph.stationCount()];
+			for (int s = 0; s < stations.length; s++) {
+				stations[s] = graph.stationName(s);
+			}
+			String[] lines = new String[graph.lineCount()];
+			for (int l = 0; l < lines.length; l++) {
+				lines[l] = graph.lineName(l);
+			}
+			stationNames = new NameIndex(stations);
+			lineNames = new NameIndex(lines);
+		}
+		return new Network(graph, lineIndex, stationNames, lineNames, null, cache(cacheCapacity), null, null,
+				hierarchy);
+	}
+
+	/**
+	 * @return this network with its route table precomputed
+	 */
+	Network withRouteTable() {
+		return routeTable != null ? this
+				: new Network(graph, lineIndex, stationNames, lineNames, new RouteTable(graph.withClosures(null)),
+						routeCache, timetable, landmarks, hierarchy);
+	}
+
+	/**
+	 * @param count
+	 *            the number of landmarks to pick
+	 * @return this network with its landmark index precomputed
+	 */
+	Network withLandmarks(int count) {
+		return landmarks != null ? this
+				: new Network(graph, lineIndex, stationNames, lineNames, routeTable, routeCache, timetable,
+						new LandmarkIndex(graph, count, LandmarkIndex.Selection.FARTHEST), hierarchy);
+	}
+
+	/**
+	 * @return this network with its contraction hierarchy precomputed
+	 */
+	Network withHierarchy() {
+		return hierarchy != null ? this
+				: new Network(graph, lineIndex, stationNames, lineNames, routeTable, routeCache, timetable, landmarks,
+						new ContractionHierarchy(graph));
+	}
+
+	/**
+	 * @param capacity
+	 *            the greatest number of paths to cache, or 0 to disable
+	 *            caching
+	 * @return this network with an empty route cache of the given size
+	 */
+	Network withRouteCache(int capacity) {
+		return new Network(graph, lineIndex, stationNames, lineNames, routeTable, cache(capacity), timetable,
+				landmarks, hierarchy);
+	}
+
+	/**
+	 * @param timetable
+	 *            the trips run along the lines of this network's graph
+	 * @return this network with the given timetable
+	 */
+	Network withTimetable(Timetable timetable) {
+		return new Network(graph, lineIndex, stationNames, lineNames, routeTable, routeCache, timetable, landmarks,
+				hierarchy);
+	}
+
+	/**
+	 * Looks up a station by its exact name, or failing that by its name
+	 * folded and allowing for a typo or two.
+	 *
+	 * @param name
+	 *            the name of a station, as given
+	 * @return the id of the station, or -1 if none or more than one is meant
+	 */
+	int station(String name) {
+		int id = graph.stationId(name);
+		return id != -1 ? id : stationNames.resolve(name);
+	}
+
+	/**
+	 * Looks up a line by its exact name, or failing that by its name folded
+	 * and allowing for a typo or two.
+	 *
+	 * @param name
+	 *            the name of a line, as given
+	 * @return the id of the line, or -1 if none or more than one is meant
+	 */
+	int line(String name) {
+		int id = graph.lineId(name);
+		return id != -1 ? id : lineNames.resolve(name);
+	}
+
+	/**
+	 * @return the segments, stations and lines closed in this network
+	 */
+	Closures closures() {
+		return graph.closures();
+	}
+
+	/**
+	 * @return the greatest number of paths cached, or 0 if caching is disabled
+	 */
+	int cacheCapacity() {
+		return routeCache != null ? routeCache.capacity() : 0;
+	}
+
+	private static PathCache cache(int capacity) {
+		return capacity > 0 ? new PathCache(capacity) : null;
+	}
+}
@@ -0,0 +1,31 @@
+package mtr;
+
+/**
+ * Compiles a CSV description of an MTR network into a snapshot file, which a
+ * WorkingController loads without parsing or rebuilding the network.
+ */
+public class NetworkCompiler {
+
+	/**
+	 * Compiles a network.
+	 * 
+	 * @param args
+	 *            the path to the csv file and the path of the snapshot file to
+	 *            write
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: NetworkCompiler <network.csv> <network.snapshot>");
+			System.exit(1);
+		}
+
+		try {
+			long start = System.nanoTime();
+			new WorkingController(args[0]).writeSnapshot(args[1]);
+			System.out.printf("Compiled %s to %s in %d ms%n", args[0], args[1], (System.nanoTime() - start) / 1000000);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package mtr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of looking for a path between two stations, which is either the
+ * stations along the path or the reason there is none.
+ *
+ * Finding no path is an expected answer rather than an error, so it is
+ * returned like any other result instead of being thrown, which keeps bulk
+ * queries of unreachable or misspelt stations as cheap as the rest.
+ */
+public class PathResult {
+	/**
+	 * Whether a path was found, and why not if there was none.
+	 */
+	public enum Status {
+		/**
+		 * A path was found.
+		 */
+		FOUND,
+
+		/**
+		 * The starting station does not exist.
+		 */
+		UNKNOWN_START,
+
+		/**
+		 * The ending station does not exist.
+		 */
+		UNKNOWN_END,
+
+		/**
+		 * Neither station exists.
+		 */
+		UNKNOWN_STATIONS,
+
+		/**
+		 * Both stations exist, but no path connects them.
+		 */
+		NO_PATH
+	}
+
+	private final Status status;
+	private final String stationA;
+	private final String stationB;
+	private final List<String> stations;
+
+	private PathResult(Status status, String stationA, String stationB, List<String> stations) {
+		this.status = status;
+		this.stationA = stationA;
+		this.stationB = stationB;
+		this.stations = stations;
+	}
+
+	/**
+	 * @param stations
+	 *            the names of the stations along the path, including both ends
+	 * @return the result of a path being found
+	 */
+	public static PathResult found(String[] stations) {
+		return new PathResult(Status.FOUND, stations[0], stations[stations.length - 1],
+				Collections.unmodifiableList(Arrays.asList(stations)));
+	}
+
+	/**
+	 * @param status
+	 *            why there is no path, which must not be FOUND
+	 * @param stationA
+	 *            the name of the starting station
+	 * @param stationB
+	 *            the name of the ending station
+	 * @return the result of no path being found
+	 * @throws IllegalArgumentException
+	 *             in case of the status being FOUND
+	 */
+	public static PathResult notFound(Status status, String stationA, String stationB)
+			throws IllegalArgumentException {
+		if (status == Status.FOUND) {
+			throw new IllegalArgumentException("A found path needs its stations");
+		}
+		return new PathResult(status, stationA, stationB, Collections.<String>emptyList());
+	}
+
+	/**
+	 * @return whether a path was found, and why not if there was none
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return if a path was found
+	 */
+	public boolean isFound() {
+		return status == Status.FOUND;
+	}
+
+	/**
+	 * @return the names of the stations along the path, including both ends,
+	 *         or an empty list if no path was found
+	 */
+	public List<String> getStations() {
+		return stations;
+	}
+
+	/**
+	 * @return the path as the names of its stations separated by arrows, or
+	 *         the reason there is no path
+	 */
+	@Override
+	public String toString() {
+		switch (status) {
+		case UNKNOWN_STATIONS:
+			return "Both " + stationA + " and " + stationB + " stations do not exist";
+		case UNKNOWN_START:
+			return "Station " + stationA + " does not exist";
+		case UNKNOWN_END:
+			return "Station " + stationB + " does not exist";
+		case NO_PATH:
+			return "Path between nodes do not exist";
+		default:
+			return String.join(" -> ", stations);
+		}
+	}
+}
@@ -0,0 +1,641 @@
+package mtr;
+
+import graph.AlternativePathSearch;
+import graph.CompactGraph;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A lightweight HTTP server answering queries about an MTR network as JSON,
+ * so that the network can be queried by many clients at once rather than
+ * only through the text-based user interface.
+ *
+ * Every request is read and answered on a thread of its own, a virtual
+ * thread when the JVM has them and a platform thread otherwise, which on
+ * Java 17, the release the server is built for, it always is. Its query runs
+ * over a single working controller on a fixed pool of as many platform
+ * threads as requests are answered at once, so the scratch space every
+ * search keeps per thread is allocated once per pooled thread and reused,
+ * rather than allocated again for every request. The number of requests
+ * answered at once is bounded, and requests beyond the bound are rejected
+ * straight away with 503 rather than queued, so overload never builds up a
+ * backlog. A request taking longer than the timeout is answered with 504
+ * from a timer, while its query still holds its place in the bound until it
+ * finishes, so slow queries cannot pile up either.
+ *
+ * The server answers GET requests for:
+ * <ul>
+ * <li>{@code /termini}, the termini of every line</li>
+ * <li>{@code /stations?line=X}, the stations of a line</li>
+ * <li>{@code /connected?line=X}, the lines directly connected to a line</li>
+ * <li>{@code /path?from=A&to=B}, a path between two stations</li>
+ * <li>{@code /alternatives?from=A&to=B&k=N&rank=hops|interchanges}, up to N
+ * alternative paths between two stations, searched for no longer than half
+ * the timeout</li>
+ * <li>{@code /complete?prefix=P&limit=N}, the stations starting with a prefix,
+ * for autocompletion</li>
+ * <li>{@code /arrival?from=A&to=B&at=HH:MM&changes=N}, the journey arriving
+ * earliest when leaving at a time with at most N changes, if a timetable is
+ * loaded</li>
+ * </ul>
+ * Station and line names are matched ignoring case, spacing and punctuation,
+ * and allowing for small typos.
+ */
+public class QueryServer {
+	// requests answered at once, and milliseconds a request may take, unless
+	// configured otherwise
+	private static final int DEFAULT_CONCURRENCY = 256;
+	private static final long DEFAULT_TIMEOUT = 2000;
+	// connections the operating system queues before the server accepts them
+	private static final int BACKLOG = 1024;
+	// stations listed for a prefix at most, however many are asked for
+	private static final int MAX_COMPLETIONS = 100;
+	// alternative paths found at most, however many are asked for
+	private static final int MAX_ALTERNATIVES = 10;
+	// changes between trips of a journey unless asked otherwise, and at most
+	private static final int DEFAULT_CHANGES = 7;
+	private static final int MAX_CHANGES = 15;
+
+	// times out requests for every server, on a single daemon thread
+	private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "query-timeout");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		// cancelled timeouts would otherwise stay queued until they expire
+		TIMER.setRemoveOnCancelPolicy(true);
+		// the built-in server sends headers and body in separate writes, which
+		// Nagle's algorithm holds back for the client's delayed acknowledgement,
+		// adding 40 ms to every response on a kept-alive connection
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final WorkingController controller;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	// runs the queries, one thread per permit
+	private final ExecutorService queries;
+	private final Semaphore permits;
+	private final long timeout;
+
+	/**
+	 * Construct a server answering queries on the given port, with the
+	 * default bound on concurrent requests and timeout.
+	 *
+	 * @param controller
+	 *            the controller to answer the queries with
+	 * @param port
+	 *            the port to listen on, or 0 for any free port
+	 * @throws IOException
+	 *             in case of the port being unavailable
+	 */
+	public QueryServer(WorkingController controller, int port) throws IOException {
+		this(controller, port, DEFAULT_CONCURRENCY, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Construct a server answering queries on the given port.
+	 *
+	 * @param controller
+	 *            the controller to answer the queries with
+	 * @param port
+	 *            the port to listen on, or 0 for any free port
+	 * @param concurrency
+	 *            the greatest number of requests to answer at once
+	 * @param timeout
+	 *            the milliseconds a request may take before being answered
+	 *            with a timeout
+	 * @throws IOException
+	 *             in case of the port being unavailable
+	 * @throws IllegalArgumentException
+	 *             in case of the concurrency or timeout not being positive
+	 */
+	public QueryServer(WorkingController controller, int port, int concurrency, long timeout)
+			throws IOException, IllegalArgumentException {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+		} else if (timeout <= 0) {
+			throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+		}
+		this.controller = controller;
+		this.permits = new Semaphore(concurrency);
+		this.timeout = timeout;
+		this.executor = threadPerTask();
+		this.queries = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "query-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+
+	/**
+	 * Starts answering requests in the background.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops answering requests, waiting up to the given number of seconds for
+	 * the requests being answered to finish.
+	 *
+	 * @param delay
+	 *            the greatest number of seconds to wait
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+		queries.shutdown();
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/*
+	 * Runs every task on a new virtual thread if the JVM has them, and on a
+	 * new or idle daemon platform thread otherwise, as on Java 17.
+	 */
+	private static ExecutorService threadPerTask() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "query-server");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/*
+	 * Answers a request, unless too many are being answered already.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			respond(exchange, 405, error("Only GET is supported"));
+			return;
+		}
+		if (!permits.tryAcquire()) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			respond(exchange, 503, error("Too many requests"));
+			return;
+		}
+
+		// answer on this thread, and time out from the timer's thread if the
+		// query takes too long, whichever happens first sending the response
+		AtomicBoolean responded = new AtomicBoolean();
+		ScheduledFuture<?> expiry = TIMER.schedule(() -> {
+			if (responded.compareAndSet(false, true)) {
+				try {
+					respond(exchange, 504, error("Query took longer than " + timeout + " ms"));
+				} catch (IOException e) {
+					// the client is gone, so there is no one to tell
+				}
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+
+		// there are as many pooled threads as permits, so a query holding a
+		// permit at most waits for a thread to finish releasing its own
+		Future<Response> query = queries.submit(() -> {
+			try {
+				return answer(exchange.getRequestURI().getPath(), parameters(exchange.getRequestURI().getRawQuery()));
+			} finally {
+				// the query holds its permit until it finishes, even once timed
+				// out
+				permits.release();
+			}
+		});
+		Response response;
+		try {
+			response = query.get();
+		} catch (ExecutionException e) {
+			response = new Response(500, error(String.valueOf(e.getCause())));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			response = new Response(500, error("Interrupted"));
+		}
+		expiry.cancel(false);
+		if (responded.compareAndSet(false, true)) {
+			respond(exchange, response.status, response.body);
+		}
+	}
+
+	/*
+	 * Answers a query against the current version of the network.
+	 */
+	private Response answer(String route, Map<String, String> parameters) {
+		Network network = controller.network();
+		CompactGraph graph = network.graph;
+		switch (route) {
+		case "/termini":
+			return termini(graph);
+		case "/stations":
+			return withLine(network, parameters, line -> stations(graph, line));
+		case "/connected":
+			return withLine(network, parameters, line -> connected(network, line));
+		case "/path":
+			return path(parameters);
+		case "/alternatives":
+			return alternatives(parameters);
+		case "/complete":
+			return complete(network, parameters);
+		case "/arrival":
+			return arrival(network, parameters);
+		default:
+			return new Response(404, error("No such query: " + route));
+		}
+	}
+
+	private static Response termini(CompactGraph graph) {
+		StringBuilder sb = new StringBuilder(64 * graph.lineCount() + 16);
+		sb.append("{\"termini\":[");
+		for (int line = 0; line < graph.lineCount(); line++) {
+			if (line > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"line\":");
+			quote(sb, graph.lineName(line));
+			int stops = graph.stopCount(line);
+			if (stops > 0) {
+				sb.append(",\"from\":");
+				quote(sb, graph.stationName(graph.stop(line, 0)));
+				sb.append(",\"to\":");
+				quote(sb, graph.stationName(graph.stop(line, stops - 1)));
+			}
+			sb.append('}');
+		}
+		return new Response(200, sb.append("]}").toString());
+	}
+
+	private static Response stations(CompactGraph graph, int line) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"line\":");
+		quote(sb, graph.lineName(line));
+		sb.append(",\"stations\":[");
+		for (int i = 0; i < graph.stopCount(line); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			quote(sb, graph.stationName(graph.stop(line, i)));
+		}
+		return new Response(200, sb.append("]}").toString());
+	}
+
+	private static Response connected(Network network, int line) {
+		CompactGraph graph = network.graph;
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"line\":");
+		quote(sb, graph.lineName(line));
+		sb.append(",\"connected\":[");
+		int[] others = network.lineIndex.connectedLines(line);
+		for (int i = 0; i < others.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			quote(sb, graph.lineName(others[i]));
+		}
+		return new Response(200, sb.append("]}").toString());
+	}
+
+	private Response path(Map<String, String> parameters) {
+		String from = parameters.get("from");
+		String to = parameters.get("to");
+		if (from == null || to == null) {
+			return new Response(400, error("Both from and to stations are needed"));
+		}
+
+		PathResult result = controller.findPathBetween(from, to);
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"status\":\"").append(result.getStatus()).append('"');
+		if (result.isFound()) {
+			sb.append(",\"stations\":[");
+			List<String> stations = result.getStations();
+			for (int i = 0; i < stations.size(); i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				quote(sb, stations.get(i));
+			}
+			sb.append(']');
+		} else {
+			sb.append(",\"error\":");
+			quote(sb, result.toString());
+		}
+		sb.append('}');
+
+		// a missing path is an answer, but a missing station is not found
+		boolean unknown = !result.isFound() && result.getStatus() != PathResult.Status.NO_PATH;
+		return new Response(unknown ? 404 : 200, sb.toString());
+	}
+
+	private Response alternatives(Map<String, String> parameters) {
+		String from = parameters.get("from");
+		String to = parameters.get("to");
+		if (from == null || to == null) {
+			return new Response(400, error("Both from and to stations are needed"));
+		}
+		int k;
+		try {
+			k = Integer.parseInt(parameters.getOrDefault("k", "3"));
+		} catch (NumberFormatException e) {
+			return new Response(400, error("k must be a number"));
+		}
+		String rank = parameters.getOrDefault("rank", "hops");
+		AlternativePathSearch.Ranking ranking;
+		if (rank.equals("hops")) {
+			ranking = AlternativePathSearch.Ranking.HOPS;
+		} else if (rank.equals("interchanges")) {
+			ranking = AlternativePathSearch.Ranking.INTERCHANGES;
+		} else {
+			return new Response(400, error("rank must be hops or interchanges"));
+		}
+
+		// search for half the timeout, leaving time to answer before it
+		PathResult[] results = controller.findAlternativePaths(from, to, Math.min(Math.max(k, 1), MAX_ALTERNATIVES),
+				ranking, Math.max(timeout / 2, 1), Long.MAX_VALUE);
+		StringBuilder sb = new StringBuilder(256 * results.length);
+		sb.append("{\"status\":\"").append(results[0].getStatus()).append('"');
+		if (results[0].isFound()) {
+			sb.append(",\"routes\":[");
+			for (int r = 0; r < results.length; r++) {
+				if (r > 0) {
+					sb.append(',');
+				}
+				sb.append('[');
+				List<String> stations = results[r].getStations();
+				for (int i = 0; i < stations.size(); i++) {
+					if (i > 0) {
+						sb.append(',');
+					}
+					quote(sb, stations.get(i));
+				}
+				sb.append(']');
+			}
+			sb.append(']');
+		} else {
+			sb.append(",\"error\":");
+			quote(sb, results[0].toString());
+		}
+		sb.append('}');
+
+		boolean unknown = !results[0].isFound() && results[0].getStatus() != PathResult.Status.NO_PATH;
+		return new Response(unknown ? 404 : 200, sb.toString());
+	}
+
+	private static Response complete(Network network, Map<String, String> parameters) {
+		String prefix = parameters.get("prefix");
+		if (prefix == null) {
+			return new Response(400, error("A prefix is needed"));
+		}
+		int limit;
+		try {
+			limit = Integer.parseInt(parameters.getOrDefault("limit", "10"));
+		} catch (NumberFormatException e) {
+			return new Response(400, error("The limit must be a number"));
+		}
+
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"stations\":[");
+		int[] stations = network.stationNames.complete(prefix, Math.min(Math.max(limit, 0), MAX_COMPLETIONS));
+		for (int i = 0; i < stations.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			quote(sb, network.graph.stationName(stations[i]));
+		}
+		return new Response(200, sb.append("]}").toString());
+	}
+
+	private Response arrival(Network network, Map<String, String> parameters) {
+		String from = parameters.get("from");
+		String to = parameters.get("to");
+		String at = parameters.get("at");
+		if (from == null || to == null || at == null) {
+			return new Response(400, error("The from and to stations and the time to leave at are needed"));
+		}
+		if (network.timetable == null) {
+			return new Response(404, error("No timetable is loaded"));
+		}
+		int departure;
+		int changes;
+		try {
+			departure = TimetableLoader.parseTime(at);
+		} catch (IllegalArgumentException e) {
+			return new Response(400, error("The time to leave at must be HH:MM or HH:MM:SS"));
+		}
+		try {
+			changes = Integer.parseInt(parameters.getOrDefault("changes", Integer.toString(DEFAULT_CHANGES)));
+		} catch (NumberFormatException e) {
+			return new Response(400, error("changes must be a number"));
+		}
+
+		Journey journey;
+		try {
+			journey = controller.findEarliestArrival(from, to, departure, Math.min(Math.max(changes, 0), MAX_CHANGES));
+		} catch (IllegalStateException e) {
+			// the network was reloaded without a timetable meanwhile
+			return new Response(404, error(e.getMessage()));
+		}
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"status\":\"").append(journey.getStatus()).append('"');
+		if (journey.isFound()) {
+			sb.append(",\"legs\":[");
+			List<Journey.Leg> legs = journey.getLegs();
+			for (int l = 0; l < legs.size(); l++) {
+				Journey.Leg leg = legs.get(l);
+				if (l > 0) {
+					sb.append(',');
+				}
+				sb.append("{\"line\":");
+				quote(sb, leg.getLine());
+				sb.append(",\"departure\":");
+				quote(sb, TimetableLoader.formatTime(leg.getDeparture()));
+				sb.append(",\"arrival\":");
+				quote(sb, TimetableLoader.formatTime(leg.getArrival()));
+				sb.append(",\"stations\":[");
+				List<String> stations = leg.getStations();
+				for (int i = 0; i < stations.size(); i++) {
+					if (i > 0) {
+						sb.append(',');
+					}
+					quote(sb, stations.get(i));
+				}
+				sb.append("]}");
+			}
+			sb.append(']');
+		} else {
+			sb.append(",\"error\":");
+			quote(sb, journey.toString());
+		}
+		sb.append('}');
+
+		boolean unknown = !journey.isFound() && journey.getStatus() != PathResult.Status.NO_PATH;
+		return new Response(unknown ? 404 : 200, sb.toString());
+	}
+
+	/*
+	 * Looks up the line a query is about before answering it.
+	 */
+	private interface LineQuery {
+		Response answer(int line);
+	}
+
+	private static Response withLine(Network network, Map<String, String> parameters, LineQuery query) {
+		String name = parameters.get("line");
+		if (name == null) {
+			return new Response(400, error("A line is needed"));
+		}
+		int line = network.line(name);
+		if (line == -1) {
+			return new Response(404, error("Station line " + name + " does not exist"));
+		}
+		return query.answer(line);
+	}
+
+	/*
+	 * Decodes the parameters of a query string, the last of any repeated
+	 * parameter winning.
+	 */
+	private static Map<String, String> parameters(String query) {
+		Map<String, String> parameters = new HashMap<String, String>(4);
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				parameters.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+			}
+		}
+		return parameters;
+	}
+
+	private static String decode(String encoded) {
+		try {
+			return URLDecoder.decode(encoded, "UTF-8");
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			return encoded;
+		}
+	}
+
+	private static String error(String message) {
+		StringBuilder sb = new StringBuilder(message.length() + 16);
+		sb.append("{\"error\":");
+		quote(sb, message);
+		return sb.append('}').toString();
+	}
+
+	/*
+	 * Appends a string as a JSON string literal.
+	 */
+	private static void quote(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	/*
+	 * Sends a response and closes the exchange.
+	 */
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		try {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * The status and JSON body of a response.
+	 */
+	private static class Response {
+		private final int status;
+		private final String body;
+
+		private Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * Serves queries about a network until the process is stopped.
+	 *
+	 * @param args
+	 *            the path to the csv file or snapshot file, and optionally the
+	 *            port, the greatest number of requests to answer at once, the
+	 *            timeout in milliseconds and the path to a timetable's csv
+	 *            file
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: QueryServer <network.csv | network.snapshot> [port] [concurrency] [timeout ms]"
+					+ " [timetable.csv]");
+			System.exit(1);
+		}
+
+		try {
+			WorkingController controller = new WorkingController(args[0]);
+			int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+			int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CONCURRENCY;
+			long timeout = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_TIMEOUT;
+			if (args.length > 4) {
+				controller.loadTimetable(args[4]);
+			}
+			QueryServer server = new QueryServer(controller, port, concurrency, timeout);
+			server.start();
+			System.out.printf("Serving %s on port %d%n", args[0], server.getPort());
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
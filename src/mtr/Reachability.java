@@ -0,0 +1,116 @@
+package mtr;
+
+import graph.CompactGraph;
+
+/**
+ * The outcome of looking for every station within a number of stops or
+ * changes of line of some stations, which is either the stations found along
+ * with their distances, or the station that does not exist.
+ *
+ * The stations found are kept as arrays of ids and distances, so that a query
+ * reaching most of a large network costs no more than the search itself.
+ * Their names are looked up only when asked for.
+ */
+public class Reachability {
+	private final CompactGraph graph;
+	private final String unknown;
+	private final int[] stations;
+	private final int[] distances;
+
+	private Reachability(CompactGraph graph, String unknown, int[] stations, int[] distances) {
+		this.graph = graph;
+		this.unknown = unknown;
+		this.stations = stations;
+		this.distances = distances;
+	}
+
+	/**
+	 * @param graph
+	 *            the graph the stations were found in
+	 * @param stations
+	 *            the ids of the stations found, in order of distance
+	 * @param distances
+	 *            the stops or changes to each station, in the same order
+	 * @return the result of the stations being found
+	 */
+	static Reachability found(CompactGraph graph, int[] stations, int[] distances) {
+		return new Reachability(graph, null, stations, distances);
+	}
+
+	/**
+	 * @param station
+	 *            the name of a station to start from that does not exist
+	 * @return the result of nothing being searched
+	 */
+	static Reachability unknown(String station) {
+		return new Reachability(null, station, new int[0], new int[0]);
+	}
+
+	/**
+	 * @return FOUND if the stations were searched from, even if none is open,
+	 *         or UNKNOWN_START if one of them does not exist
+	 */
+	public PathResult.Status getStatus() {
+		return unknown == null ? PathResult.Status.FOUND : PathResult.Status.UNKNOWN_START;
+	}
+
+	/**
+	 * @return if every station to start from exists
+	 */
+	public boolean isFound() {
+		return unknown == null;
+	}
+
+	/**
+	 * @return the number of stations found, including the ones started from
+	 */
+	public int size() {
+		return stations.length;
+	}
+
+	/**
+	 * @return the ids of the stations found, in order of distance, which must
+	 *         not be modified
+	 */
+	public int[] getStationIds() {
+		return stations;
+	}
+
+	/**
+	 * @return the stops or changes to each station found, in the same order
+	 *         as their ids, which must not be modified
+	 */
+	public int[] getDistances() {
+		return distances;
+	}
+
+	/**
+	 * @param index
+	 *            the position of a station among those found
+	 * @return the name of the station
+	 */
+	public String getStationName(int index) {
+		return graph.stationName(stations[index]);
+	}
+
+	/**
+	 * @return every station found with its distance, one per line, or the
+	 *         reason there are none
+	 */
+	@Override
+	public String toString() {
+		if (unknown != null) {
+			return "Station " + unknown + " does not exist";
+		}
+		StringBuilder sb = new StringBuilder(32 * stations.length);
+		for (int i = 0; i < stations.length; i++) {
+			if (i > 0) {
+				sb.append("\n");
+			}
+			sb.append(distances[i]);
+			sb.append(" ");
+			sb.append(graph.stationName(stations[i]));
+		}
+		return sb.toString();
+	}
+}
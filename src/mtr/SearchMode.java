@@ -0,0 +1,61 @@
+package mtr;
+
+/**
+ * The ways in which a path between two stations can be searched for.
+ */
+public enum SearchMode {
+	/**
+	 * A breadth-first search from the starting station.
+	 */
+	BREADTH_FIRST,
+
+	/**
+	 * A breadth-first search grown from both stations until the frontiers meet.
+	 */
+	BIDIRECTIONAL,
+
+	/**
+	 * A breadth-first search on small networks, and a bidirectional one on
+	 * networks large enough for it to pay off.
+	 */
+	AUTOMATIC,
+
+	/**
+	 * A breadth-first search expanding every level of the frontier in
+	 * parallel on the common fork-join pool, for networks of millions of
+	 * stations.
+	 */
+	PARALLEL,
+
+	/**
+	 * A lookup in a table of next hops precomputed for every pair of stations,
+	 * which needs memory quadratic in the number of stations.
+	 */
+	ROUTE_TABLE,
+
+	/**
+	 * An A* search guided towards the ending station by the stops between
+	 * both stations and a few landmarks, precomputed once for the network.
+	 */
+	LANDMARK,
+
+	/**
+	 * A search upwards from both stations through a contraction hierarchy
+	 * precomputed once for the network, unpacked into every station along
+	 * the way.
+	 */
+	CONTRACTION_HIERARCHY,
+
+	/**
+	 * The path taking the least travel time rather than the fewest stops,
+	 * with a penalty for every change of line. The search is guided towards
+	 * the end station if every station has coordinates.
+	 */
+	FASTEST,
+
+	/**
+	 * The path with the fewest changes of line, and the fewest stops of
+	 * those.
+	 */
+	FEWEST_INTERCHANGES
+}
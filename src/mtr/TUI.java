@@ -3,7 +3,19 @@
  */
 package mtr;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.stream.IntStream;
 
 /**
  * A simple text-based user interface for showing various information about an
@@ -16,18 +28,147 @@ public class TUI {
 
 	private static String path = "resources/MTRsystem_partial.csv";
 
+	// commands read and answered together in script mode, which bounds the
+	// answers held before being written
+	private static final int SCRIPT_CHUNK = 4096;
+
 	private Controller controller;
 	private Scanner stdIn;
 
+	/**
+	 * Runs the interactive menu, or with {@code --script} runs the commands of
+	 * the given file, or of standard input if none is given, without the
+	 * menu. Adding {@code --parallel} answers the commands of a script in
+	 * parallel.
+	 * 
+	 * @param args
+	 *            nothing, or {@code --script [--parallel] [file]}
+	 */
 	public static void main(String[] args) throws Exception {
 		try {
 			Controller controllerInstance = new WorkingController(path);
-			new TUI(controllerInstance);
+			if (args.length > 0 && args[0].equals("--script")) {
+				boolean parallel = args.length > 1 && args[1].equals("--parallel");
+				int file = parallel ? 2 : 1;
+				Reader in = args.length > file ? new FileReader(args[file], StandardCharsets.UTF_8)
+						: new InputStreamReader(System.in, StandardCharsets.UTF_8);
+				Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+				runScript(controllerInstance, new BufferedReader(in, 1 << 16), out, parallel);
+				out.flush();
+			} else {
+				new TUI(controllerInstance);
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Runs a script of commands, one per line, writing the answer to each in
+	 * order without any menu or prompt. The commands are:
+	 * <ul>
+	 * <li>{@code termini}, listing all termini</li>
+	 * <li>{@code line X}, listing the stations in line X</li>
+	 * <li>{@code connected X}, listing the lines directly connected to X</li>
+	 * <li>{@code path A, B}, finding a path between stations A and B</li>
+	 * <li>{@code interchanges A, B}, finding the path between stations A and B
+	 * with the fewest interchanges</li>
+	 * </ul>
+	 * Station names may also be given in double quotes, as in
+	 * {@code path "Lo Wu" "Chai Wan"}. Blank lines and lines starting with #
+	 * are skipped.
+	 * 
+	 * The answers are only written to the writer, which is not flushed, so a
+	 * buffered writer writes them in large blocks. Commands do not depend on
+	 * each other, so they can be answered in parallel, chunk by chunk, and
+	 * still be written in the order they were read.
+	 * 
+	 * @param controller
+	 *            the controller to answer the commands with
+	 * @param in
+	 *            the reader to read the commands from
+	 * @param out
+	 *            the writer to write the answers to
+	 * @param parallel
+	 *            whether to answer the commands in parallel
+	 * @throws IOException
+	 *             in case of reading the commands or writing the answers
+	 *             failing
+	 */
+	public static void runScript(Controller controller, BufferedReader in, Writer out, boolean parallel)
+			throws IOException {
+		List<String> commands = new ArrayList<String>(SCRIPT_CHUNK);
+		String[] answers = new String[SCRIPT_CHUNK];
+		String line;
+		do {
+			// read a chunk of commands, answer them all, then write them all
+			commands.clear();
+			while (commands.size() < SCRIPT_CHUNK && (line = in.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					commands.add(line);
+				}
+			}
+
+			IntStream indices = IntStream.range(0, commands.size());
+			(parallel ? indices.parallel() : indices)
+					.forEach(i -> answers[i] = runCommand(controller, commands.get(i)));
+			for (int i = 0; i < commands.size(); i++) {
+				out.write(answers[i]);
+				out.write('\n');
+			}
+		} while (commands.size() == SCRIPT_CHUNK);
+	}
+
+	/*
+	 * Answers a single command of a script.
+	 */
+	private static String runCommand(Controller controller, String command) {
+		int space = command.indexOf(' ');
+		String name = space == -1 ? command : command.substring(0, space);
+		String argument = space == -1 ? "" : command.substring(space + 1).trim();
+		switch (name) {
+		case "termini":
+			return controller.listAllTermini();
+		case "line":
+			return controller.listStationsInLine(argument);
+		case "connected":
+			return controller.listAllDirectlyConnectedLines(argument);
+		case "path":
+		case "interchanges":
+			String[] stations = stations(argument);
+			if (stations == null) {
+				return "Expected two stations, as A, B or \"A\" \"B\": " + command;
+			}
+			return name.equals("path") ? controller.showPathBetween(stations[0], stations[1])
+					: controller.showPathWithFewestInterchanges(stations[0], stations[1]);
+		default:
+			return unrecogniseCommandErrorMsg(command).trim();
+		}
+	}
+
+	/*
+	 * Splits the two station names of a command, given either in double
+	 * quotes or separated by a comma, returning null if there are not two.
+	 */
+	private static String[] stations(String argument) {
+		if (argument.startsWith("\"")) {
+			int first = argument.indexOf('"', 1);
+			int second = first == -1 ? -1 : argument.indexOf('"', first + 1);
+			int third = second == -1 ? -1 : argument.indexOf('"', second + 1);
+			if (third == -1 || !argument.substring(first + 1, second).trim().isEmpty()
+					|| !argument.substring(third + 1).trim().isEmpty()) {
+				return null;
+			}
+			return new String[] { argument.substring(1, first), argument.substring(second + 1, third) };
+		}
+		int comma = argument.indexOf(',');
+		if (comma == -1 || argument.indexOf(',', comma + 1) != -1) {
+			return null;
+		}
+		return new String[] { argument.substring(0, comma).trim(), argument.substring(comma + 1).trim() };
+	}
+
 	public TUI(Controller controller) {
 
 		this.controller = controller;
@@ -80,6 +221,14 @@ public class TUI {
 			display("Goodbye!");
 			System.exit(0);
 			break;
+		case "6": // Finds a path with the fewest interchanges
+			display("Finds a path with the fewest interchanges between two stations...");
+			display("Enter the name of the start station:");
+			String from = stdIn.nextLine().trim();
+			display("Enter the name of the end station:");
+			String to = stdIn.nextLine().trim();
+			display(controller.showPathWithFewestInterchanges(from, to));
+			break;
 		default: // Not a known command option
 			display(unrecogniseCommandErrorMsg(command));
 		}
@@ -104,7 +253,8 @@ public class TUI {
 		return "Enter the number associated with your chosen menu option.\n"
 				+ "1: List all termini in the MTR network\n" + "2: List all stations in a line in the MTR network\n"
 				+ "3: List all lines that are directly connected to a line\n" + "4: Find a path between two stations\n"
-				+ "5: Exit this application\n";
+				+ "5: Exit this application\n"
+				+ "6: Find a path with the fewest interchanges between two stations\n";
 	}
 
 	/*
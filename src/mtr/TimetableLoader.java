@@ -0,0 +1,200 @@
+package mtr;
+
+import graph.CompactGraph;
+import graph.Timetable;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads the timetable of an MTR network from a CSV file, where every row is
+ * the name of a line followed by the times its trips leave the line's first
+ * stop, in the same line and stop order as the network's CSV file.
+ *
+ * Times are given as {@code H:MM} or {@code H:MM:SS} since midnight of the
+ * service day, hours past 23 standing for trips after midnight. Trips take
+ * the network's travel times between stops. A line may be given over several
+ * rows, whose trips are all kept, and a line given no trips is not run.
+ *
+ * Fields may be quoted as in the network's CSV file, and rows whose first
+ * field starts with {@code #} are directives, ignored if not recognised:
+ * <ul>
+ * <li>{@code #back,<line>,<time>,...} gives the times trips back along a line
+ * leave its last stop.</li>
+ * </ul>
+ */
+public class TimetableLoader {
+	// directives recognised in rows starting with a #
+	private static final String BACK = "#back";
+
+	/*
+	 * Only static methods.
+	 */
+	private TimetableLoader() {
+	}
+
+	/**
+	 * Loads the timetable in a CSV file for the lines of a graph.
+	 *
+	 * @param path
+	 *            the path to the csv file
+	 * @param graph
+	 *            the graph whose lines the trips run along
+	 * @return the timetable of the trips in the file
+	 * @throws FileNotFoundException
+	 *             in case of file path not existing
+	 * @throws IOException
+	 *             in the case of reading the file with insufficient
+	 *             permissions, or of a row naming an unknown line or holding
+	 *             an invalid time
+	 */
+	public static Timetable load(String path, CompactGraph graph) throws FileNotFoundException, IOException {
+		int[][] departures = new int[graph.lineCount()][];
+		int[][] backDepartures = new int[graph.lineCount()][];
+		int[] counts = new int[graph.lineCount()];
+		int[] backCounts = new int[graph.lineCount()];
+
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+			String row;
+			int number = 0;
+			while ((row = reader.readLine()) != null) {
+				number++;
+				List<String> fields = fields(row);
+				if (fields.isEmpty() || fields.get(0).isEmpty()) {
+					continue;
+				}
+
+				// pick the trips the row adds to, skipping unknown directives
+				int first = 1;
+				int[][] trips = departures;
+				int[] count = counts;
+				if (fields.get(0).startsWith("#")) {
+					if (!fields.get(0).equals(BACK) || fields.size() < 2) {
+						continue;
+					}
+					first = 2;
+					trips = backDepartures;
+					count = backCounts;
+				}
+				String name = fields.get(first - 1);
+				int line = graph.lineId(name);
+				if (line == -1) {
+					throw new IOException("Unknown line on row " + number + ": " + name);
+				}
+
+				for (int i = first; i < fields.size(); i++) {
+					int time;
+					try {
+						time = parseTime(fields.get(i));
+					} catch (IllegalArgumentException e) {
+						throw new IOException("Invalid time on row " + number + ": " + fields.get(i), e);
+					}
+					if (trips[line] == null) {
+						trips[line] = new int[16];
+					} else if (count[line] == trips[line].length) {
+						trips[line] = Arrays.copyOf(trips[line], count[line] * 2);
+					}
+					trips[line][count[line]++] = time;
+				}
+			}
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(path);
+		}
+
+		for (int l = 0; l < graph.lineCount(); l++) {
+			departures[l] = departures[l] != null ? Arrays.copyOf(departures[l], counts[l]) : null;
+			backDepartures[l] = backDepartures[l] != null ? Arrays.copyOf(backDepartures[l], backCounts[l]) : null;
+		}
+		return new Timetable(graph, departures, backDepartures);
+	}
+
+	/**
+	 * Parses a time of day.
+	 *
+	 * @param time
+	 *            a time as {@code H:MM} or {@code H:MM:SS}
+	 * @return the seconds since midnight
+	 * @throws IllegalArgumentException
+	 *             in case of the time not being in either form
+	 */
+	public static int parseTime(String time) throws IllegalArgumentException {
+		String[] parts = time.trim().split(":", -1);
+		if (parts.length < 2 || parts.length > 3) {
+			throw new IllegalArgumentException("Not a time: " + time);
+		}
+		int seconds = 0;
+		for (int i = 0; i < parts.length; i++) {
+			if (parts[i].isEmpty() || parts[i].length() > (i == 0 ? 3 : 2)) {
+				throw new IllegalArgumentException("Not a time: " + time);
+			}
+			int value;
+			try {
+				value = Integer.parseInt(parts[i]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not a time: " + time, e);
+			}
+			if (value < 0 || (i > 0 && value > 59)) {
+				throw new IllegalArgumentException("Not a time: " + time);
+			}
+			seconds = seconds * 60 + value;
+		}
+		return parts.length == 2 ? seconds * 60 : seconds;
+	}
+
+	/**
+	 * Formats a time of day.
+	 *
+	 * @param seconds
+	 *            the seconds since midnight
+	 * @return the time as {@code HH:MM}, or {@code HH:MM:SS} if it is not on
+	 *         the minute
+	 */
+	public static String formatTime(int seconds) {
+		if (seconds % 60 == 0) {
+			return String.format("%02d:%02d", seconds / 3600, seconds / 60 % 60);
+		}
+		return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
+
+	/*
+	 * Splits a row into its fields, unquoting quoted ones.
+	 */
+	private static List<String> fields(String row) {
+		List<String> fields = new ArrayList<String>();
+		if (row.trim().isEmpty()) {
+			return fields;
+		}
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < row.length(); i++) {
+			char c = row.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c != '\r') {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
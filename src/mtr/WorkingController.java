@@ -1,173 +1,735 @@
 package mtr;
 
-import graph.Edge;
-import graph.Node;
+import graph.AlternativePathSearch;
+import graph.BreadthFirstSearch;
+import graph.Closures;
+import graph.CompactGraph;
+import graph.ContractionSearch;
+import graph.FastestPathSearch;
+import graph.FewestChangesSearch;
+import graph.LandmarkIndex;
+import graph.LandmarkSearch;
+import graph.NetworkSnapshot;
+import graph.ParallelBreadthFirstSearch;
+import graph.PathCache;
+import graph.RaptorSearch;
+import graph.ReachabilitySearch;
+import graph.RouteTable;
+import graph.SearchStatistics;
+import graph.Timetable;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * An implementation of the Controller interface that meets the coursework
  * requirements.
+ *
+ * The loaded network is an immutable snapshot published through an atomic
+ * reference. Every query reads the reference once and answers entirely from
+ * that version, so one controller can be shared by any number of threads
+ * without them ever taking a lock, and the network can be reloaded while
+ * queries are running: queries already in flight finish on the old version.
+ *
+ * Disruptions close and reopen segments, stations and lines of the current
+ * version in place. Every search avoids what is closed from then on, and only
+ * the cached paths a change affects are removed.
  */
 public class WorkingController implements Controller {
-	// stores line name and array of stations in respective line
-	private Map<String, String[]> lineMap;
-	// stores station name and Node object of respective station
-	private Map<String, Node<String, String>> nodesMap;
+	// number of stations from which automatic searches go bidirectional
+	private static final int BIDIRECTIONAL_THRESHOLD = 4096;
+	// number of paths cached unless configured otherwise
+	private static final int DEFAULT_CACHE_CAPACITY = 1024;
+	// seconds taken to change lines at stations without a time of their own
+	private static final int DEFAULT_INTERCHANGE_PENALTY = 180;
+	// milliseconds an alternative paths query may search for unless told
+	// otherwise
+	private static final long DEFAULT_ALTERNATIVES_TIMEOUT = 100;
+	// trips a timetabled journey may take unless told otherwise
+	private static final int DEFAULT_MAX_TRIPS = 8;
+	// landmarks picked to bound the stops between stations
+	private static final int LANDMARKS = 16;
+
+	// builds reloaded networks one at a time, off the calling thread
+	private static final ExecutorService RELOADER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "network-reload");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// stores the current version of the network with its indexes and cache
+	private final AtomicReference<Network> current = new AtomicReference<Network>();
+	// stores how paths between stations are searched for
+	private volatile SearchMode searchMode = SearchMode.AUTOMATIC;
+	// stores the seconds added to the fastest paths for every change of line
+	private volatile int interchangePenalty = DEFAULT_INTERCHANGE_PENALTY;
+	// records the work done by searches and the time taken by loads, or null
+	// if the controller is not instrumented
+	private volatile ControllerMetrics metrics;
+	// stores the path of the timetable file, reloaded along with the network,
+	// or null if no timetable is loaded
+	private volatile String timetablePath;
 
 	/**
-	 * Convert given CSV file to create the respective line map, and use the
-	 * line map to create a nodes map.
+	 * Load given CSV file to create a graph of the stations and lines, or
+	 * load the already built network straight from given snapshot file.
 	 * 
 	 * @param path
-	 *            the path to the csv file
+	 *            the path to the csv file or snapshot file
 	 * @throws FileNotFoundException
 	 *             in case of file not existing
 	 * @throws IOException
 	 *             in case of the file reading the file with insufficient
-	 *             permissions
+	 *             permissions, or of a snapshot being corrupt
 	 */
 	public WorkingController(String path) throws FileNotFoundException, IOException {
-		lineMap = generateLineMap(path);
-		nodesMap = generateNodesMap(lineMap);
+		current.set(Network.load(path, DEFAULT_CACHE_CAPACITY));
 	}
 
 	/**
-	 * Generates a HashMap that represents the MTR network with the station
-	 * lines and respective stations.
+	 * Load given CSV file or snapshot file to create a graph of the stations
+	 * and lines, and search for paths with the given mode. The route table is precomputed
+	 * here if the mode needs it.
 	 * 
 	 * @param path
-	 *            path of the file containing the line information
+	 *            the path to the csv file or snapshot file
+	 * @param searchMode
+	 *            how paths between stations are searched for
 	 * @throws FileNotFoundException
-	 *             in case of file path not existing
+	 *             in case of file not existing
 	 * @throws IOException
-	 *             in the case of reading the file with insufficient permissions
+	 *             in case of the file reading the file with insufficient
+	 *             permissions
 	 */
-	private HashMap<String, String[]> generateLineMap(String path) throws FileNotFoundException, IOException {
-		// initialise map that stores station lines and respective stations
-		HashMap<String, String[]> lineMap = new HashMap<String, String[]>(32);
+	public WorkingController(String path, SearchMode searchMode) throws FileNotFoundException, IOException {
+		this(path);
+		setSearchMode(searchMode);
+	}
 
-		// iterate through each line in the csv
-		try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-			String line = new String();
-			while ((line = br.readLine()) != null) {
-				String[] lineElements = line.split(",");
+	/**
+	 * Writes the network to a snapshot file, which can be loaded much faster
+	 * than the CSV file it was built from, along with the indexes of its
+	 * station and line names and its contraction hierarchy if one was
+	 * precomputed.
+	 * 
+	 * @param path
+	 *            the path of the snapshot file to write
+	 * @throws IOException
+	 *             in case of the file not being writable
+	 */
+	public void writeSnapshot(String path) throws IOException {
+		Network network = current.get();
+		NetworkSnapshot.write(path, network.graph, network.lineIndex, network.hierarchy, network.stationNames,
+				network.lineNames);
+	}
+
+	/**
+	 * Loads a new version of the network in the background and swaps it in
+	 * once it is fully built, along with an empty route cache of the same
+	 * size and whatever the search mode needs precomputed. The new version
+	 * starts with nothing closed. Queries keep being answered from the old
+	 * version until then, and queries already running when it is swapped
+	 * finish on the old version.
+	 * 
+	 * @param path
+	 *            the path to the csv file or snapshot file
+	 * @return a future completing once the new version is in use, or
+	 *         completing exceptionally with the IOException itself if it
+	 *         could not be loaded, in which case the old version stays in use
+	 */
+	public CompletableFuture<Void> reload(String path) {
+		// completed by hand rather than by runAsync, which would hand the
+		// IOException to callers wrapped in a CompletionException
+		CompletableFuture<Void> reloaded = new CompletableFuture<Void>();
+		RELOADER.execute(() -> {
+			try {
+				long start = System.nanoTime();
+				Network loaded = Network.load(path, 0);
+				// the trips run along the lines of the old version, so are
+				// loaded again for the new one
+				String timetable = timetablePath;
+				if (timetable != null) {
+					loaded = loaded.withTimetable(TimetableLoader.load(timetable, loaded.graph));
+				}
+				ControllerMetrics recorder = metrics;
+				if (recorder != null) {
+					recorder.recordLoad(System.nanoTime() - start);
+				}
+				if (searchMode == SearchMode.ROUTE_TABLE) {
+					loaded = withRouteTable(loaded);
+				} else if (searchMode == SearchMode.LANDMARK) {
+					loaded = loaded.withLandmarks(LANDMARKS);
+				} else if (searchMode == SearchMode.CONTRACTION_HIERARCHY) {
+					loaded = loaded.withHierarchy();
+				}
 
-				// add the line name (first element) and associated stations
-				// (subsequent elements)
-				lineMap.put(lineElements[0], Arrays.copyOfRange(lineElements, 1, lineElements.length));
+				// keep the cache size the old version has when swapping, in
+				// case it changed while loading
+				Network built = loaded;
+				current.updateAndGet(old -> built.withRouteCache(old.cacheCapacity()));
+				reloaded.complete(null);
+			} catch (Throwable e) {
+				reloaded.completeExceptionally(e);
 			}
-		} catch (FileNotFoundException fnfe) {
-			fnfe.printStackTrace();
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
+		});
+		return reloaded;
+	}
+
+	/**
+	 * Loads the timetable of the network's lines from a CSV file, to find the
+	 * earliest arrivals from departure times. The timetable is loaded again
+	 * whenever the network is reloaded.
+	 * 
+	 * @param path
+	 *            the path to the timetable's csv file
+	 * @throws FileNotFoundException
+	 *             in case of file not existing
+	 * @throws IOException
+	 *             in case of reading the file with insufficient permissions,
+	 *             or of the file naming a line the network does not have or
+	 *             holding an invalid time
+	 */
+	public void loadTimetable(String path) throws FileNotFoundException, IOException {
+		CompactGraph graph = current.get().graph;
+		Timetable timetable = TimetableLoader.load(path, graph);
+		timetablePath = path;
+		// a version reloaded meanwhile loaded the timetable itself
+		current.updateAndGet(network -> network.graph == graph ? network.withTimetable(timetable) : network);
+	}
+
+	/**
+	 * @return the timetable of the current version of the network, or null
+	 *         if none is loaded
+	 */
+	public Timetable getTimetable() {
+		return current.get().timetable;
+	}
+
+	/**
+	 * Closes every segment between two neighbouring stations, both ways and
+	 * on every line, until it is reopened or the network is reloaded.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of a neighbouring station
+	 * @return if any segment between the stations was open until now
+	 * @throws IllegalArgumentException
+	 *             in case of either station not existing, or of the stations
+	 *             not being neighbours
+	 */
+	public boolean closeSegment(String stationA, String stationB) throws IllegalArgumentException {
+		Network network = current.get();
+		int a = stationId(network, stationA);
+		int b = stationId(network, stationB);
+		boolean changed;
+		try {
+			changed = network.closures().closeSegment(a, b);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(stationA + " and " + stationB + " are not neighbours", e);
 		}
+		if (changed) {
+			removeClosedPaths(network);
+		}
+		return changed;
+	}
 
-		return lineMap;
+	/**
+	 * Reopens every segment between two neighbouring stations.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of a neighbouring station
+	 * @return if any segment between the stations was closed until now
+	 * @throws IllegalArgumentException
+	 *             in case of either station not existing, or of the stations
+	 *             not being neighbours
+	 */
+	public boolean reopenSegment(String stationA, String stationB) throws IllegalArgumentException {
+		Network network = current.get();
+		int a = stationId(network, stationA);
+		int b = stationId(network, stationB);
+		boolean changed;
+		try {
+			changed = network.closures().reopenSegment(a, b);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(stationA + " and " + stationB + " are not neighbours", e);
+		}
+		if (changed) {
+			removeDetours(network, a);
+		}
+		return changed;
 	}
 
 	/**
-	 * Generates a HashMap that represents the MTR network with the stations and
-	 * all their immediate connections.
+	 * Closes a station, so that no path passes through, starts or ends at it,
+	 * until it is reopened or the network is reloaded.
 	 * 
-	 * @param lineMap
-	 *            the lines and their respective stations
-	 * @return a map of the stations and their respective Node object
+	 * @param station
+	 *            the name of the station
+	 * @return if the station was open until now
+	 * @throws IllegalArgumentException
+	 *             in case of the station not existing
 	 */
-	private HashMap<String, Node<String, String>> generateNodesMap(Map<String, String[]> lineMap) {
-		// initialise map that stores all the station nodes, with the respective
-		// station's name as key
-		HashMap<String, Node<String, String>> nodesMap = new HashMap<String, Node<String, String>>(64);
+	public boolean closeStation(String station) throws IllegalArgumentException {
+		Network network = current.get();
+		boolean changed = network.closures().closeStation(stationId(network, station));
+		if (changed) {
+			removeClosedPaths(network);
+		}
+		return changed;
+	}
 
-		// iterate through every station line
-		for (Entry<String, String[]> pair : lineMap.entrySet()) {
-			// retrieve station line
-			String line = pair.getKey();
-			// retrieve stations
-			String[] stations = pair.getValue();
-
-			// declare and initialise a variable to indicate if the current
-			// iteration is the first
-			boolean first = true;
-
-			// store the node found in the previous iteration to be used in
-			// creating an edge
-			Node<String, String> prevNode = null;
-
-			// iterate through the stations
-			Iterator<String> itr = Arrays.asList(stations).iterator();
-			while (itr.hasNext()) {
-				// retrieve the next station
-				String station = itr.next();
-
-				// retrieve already existing node of the station, or create a
-				// new one
-				Node<String, String> node;
-				if (nodesMap.containsKey(station)) {
-					node = nodesMap.get(station);
-				} else {
-					node = new Node<String, String>(station);
-				}
+	/**
+	 * Reopens a closed station.
+	 * 
+	 * @param station
+	 *            the name of the station
+	 * @return if the station was closed until now
+	 * @throws IllegalArgumentException
+	 *             in case of the station not existing
+	 */
+	public boolean reopenStation(String station) throws IllegalArgumentException {
+		Network network = current.get();
+		int id = stationId(network, station);
+		boolean changed = network.closures().reopenStation(id);
+		if (changed) {
+			removeDetours(network, id);
+		}
+		return changed;
+	}
 
-				// check if it is the first iteration
-				if (first) {
-					// ignore creating an edge between a (non-existent) previous
-					// node and tell the subsequent iterations that the first
-					// iteration has occurred
-					first = false;
-					// create edge between current node and previous node
-				} else {
-					// create a new edge between two nodes
-					Edge<String, String> edge = new Edge<String, String>(prevNode, node, line);
-					// add the generated edge to the two stations
-					prevNode.addEdge(edge);
-					node.addEdge(edge);
-				}
-				// add the station to the nodes map with the key as the
-				// station's name
-				nodesMap.put(station, node);
+	/**
+	 * Closes every segment of a line, leaving its stations open to the other
+	 * lines through them, until it is reopened or the network is reloaded.
+	 * 
+	 * @param line
+	 *            the name of the line
+	 * @return if the line was open until now
+	 * @throws IllegalArgumentException
+	 *             in case of the line not existing
+	 */
+	public boolean closeLine(String line) throws IllegalArgumentException {
+		Network network = current.get();
+		boolean changed = network.closures().closeLine(lineId(network, line));
+		if (changed) {
+			removeClosedPaths(network);
+		}
+		return changed;
+	}
+
+	/**
+	 * Reopens a closed line.
+	 * 
+	 * @param line
+	 *            the name of the line
+	 * @return if the line was closed until now
+	 * @throws IllegalArgumentException
+	 *             in case of the line not existing
+	 */
+	public boolean reopenLine(String line) throws IllegalArgumentException {
+		Network network = current.get();
+		int id = lineId(network, line);
+		boolean changed = network.closures().reopenLine(id);
+		if (changed && network.graph.stopCount(id) > 0) {
+			removeDetours(network, network.graph.stop(id, 0));
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the segments, stations and lines closed in the current version
+	 *         of the network
+	 */
+	public Closures getClosures() {
+		return current.get().closures();
+	}
+
+	private static int stationId(Network network, String name) throws IllegalArgumentException {
+		int id = network.station(name);
+		if (id == -1) {
+			throw new IllegalArgumentException("Unknown station: " + name);
+		}
+		return id;
+	}
+
+	private static int lineId(Network network, String name) throws IllegalArgumentException {
+		int id = network.line(name);
+		if (id == -1) {
+			throw new IllegalArgumentException("Unknown line: " + name);
+		}
+		return id;
+	}
+
+	/*
+	 * Removes the cached paths that pass through anything just closed.
+	 */
+	private static void removeClosedPaths(Network network) {
+		if (network.routeCache != null) {
+			network.routeCache.removePaths(network.closures()::touches);
+		}
+	}
+
+	/*
+	 * Removes the cached paths in the component of a station, which may have
+	 * gone around what was just reopened there and be beaten by a path
+	 * through it now. Paths in other components cannot reach it.
+	 */
+	private static void removeDetours(Network network, int station) {
+		if (network.routeCache != null) {
+			Closures closures = network.closures();
+			int component = closures.component(station);
+			network.routeCache.removePaths(path -> closures.component(path[0]) == component);
+		}
+	}
+
+	/**
+	 * @param searchMode
+	 *            how paths between stations are searched for
+	 */
+	public void setSearchMode(SearchMode searchMode) {
+		// precompute the route table, the landmarks or the contraction
+		// hierarchy the first time they are needed
+		if (searchMode == SearchMode.ROUTE_TABLE) {
+			current.updateAndGet(this::withRouteTable);
+		} else if (searchMode == SearchMode.LANDMARK) {
+			current.updateAndGet(network -> network.withLandmarks(LANDMARKS));
+		} else if (searchMode == SearchMode.CONTRACTION_HIERARCHY) {
+			current.updateAndGet(Network::withHierarchy);
+		}
+		// the fastest paths and those with the fewest interchanges are not
+		// the ones with the fewest stops, so cached paths of one kind must
+		// not answer searches of another. The mode is switched before the
+		// cache is cleared, so that searches still running in the old mode
+		// see the switch and take out what they cache after the clear
+		SearchMode old = this.searchMode;
+		this.searchMode = searchMode;
+		if (!isCompatible(searchMode, old)) {
+			clearRouteCache();
+		}
+	}
+
+	/**
+	 * @return how paths between stations are searched for
+	 */
+	public SearchMode getSearchMode() {
+		return searchMode;
+	}
+
+	/*
+	 * Precomputes the route table of a network, recording the time it took if
+	 * it had none yet.
+	 */
+	private Network withRouteTable(Network network) {
+		if (network.routeTable != null) {
+			return network;
+		}
+		long start = System.nanoTime();
+		Network built = network.withRouteTable();
+		ControllerMetrics recorder = metrics;
+		if (recorder != null) {
+			recorder.recordBuild(System.nanoTime() - start);
+		}
+		return built;
+	}
+
+	/**
+	 * @return the current version of the network, for front ends answering
+	 *         queries from it directly
+	 */
+	Network network() {
+		return current.get();
+	}
+
+	/**
+	 * Records the work done by every search, and the time taken by every
+	 * load and build of a route table, from now on.
+	 * 
+	 * @param metrics
+	 *            the metrics to record into, or null to stop recording
+	 */
+	void setMetrics(ControllerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/*
+	 * Tells whether a search mode finds paths other than those with the
+	 * fewest stops.
+	 */
+	private static boolean isWeighted(SearchMode searchMode) {
+		return searchMode == SearchMode.FASTEST || searchMode == SearchMode.FEWEST_INTERCHANGES;
+	}
+
+	/*
+	 * Tells whether paths found in one search mode may answer searches in
+	 * another.
+	 */
+	private static boolean isCompatible(SearchMode a, SearchMode b) {
+		return a == b || (!isWeighted(a) && !isWeighted(b));
+	}
+
+	/**
+	 * @param seconds
+	 *            the seconds added to the fastest paths for every change of
+	 *            line, at stations without a time of their own
+	 * @throws IllegalArgumentException
+	 *             in case of the penalty being negative
+	 */
+	public void setInterchangePenalty(int seconds) throws IllegalArgumentException {
+		if (seconds < 0) {
+			throw new IllegalArgumentException("Interchange penalty must not be negative: " + seconds);
+		}
+		int old = interchangePenalty;
+		interchangePenalty = seconds;
+		if (seconds != old && searchMode == SearchMode.FASTEST) {
+			clearRouteCache();
+		}
+	}
+
+	/**
+	 * @return the seconds added to the fastest paths for every change of line,
+	 *         at stations without a time of their own
+	 */
+	public int getInterchangePenalty() {
+		return interchangePenalty;
+	}
+
+	/**
+	 * Reports the memory taken by the route table, or that it would take if
+	 * it has not been precomputed, to decide whether to use it.
+	 * 
+	 * @return the size of the route table in bytes
+	 */
+	public long getRouteTableFootprint() {
+		Network network = current.get();
+		return network.routeTable != null ? network.routeTable.footprint() : RouteTable.footprint(network.graph);
+	}
+
+	/**
+	 * Bounds the stops between two stations without searching, from the stops
+	 * between each of them and a few landmarks, which are picked the first
+	 * time they are needed. Stations the closures disconnect are told apart,
+	 * but otherwise the bounds ignore closures, so only the lower bound holds
+	 * despite them.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of another station
+	 * @return the least and the greatest number of stops the fewest between
+	 *         the stations can be, both being
+	 *         {@link LandmarkIndex#UNREACHABLE} if the stations are not
+	 *         connected, and the greatest also if no landmark reaches both
+	 * @throws IllegalArgumentException
+	 *             in case of either station not existing
+	 */
+	public int[] getStopBounds(String stationA, String stationB) throws IllegalArgumentException {
+		Network network = current.updateAndGet(version -> version.withLandmarks(LANDMARKS));
+		int a = stationId(network, stationA);
+		int b = stationId(network, stationB);
+		if (!network.graph.isConnected(a, b)) {
+			return new int[] { LandmarkIndex.UNREACHABLE, LandmarkIndex.UNREACHABLE };
+		}
+		return new int[] { network.landmarks.lowerBound(a, b), network.landmarks.upperBound(a, b) };
+	}
+
+	/**
+	 * Replaces the route cache with an empty one of the given size.
+	 * 
+	 * @param capacity
+	 *            the greatest number of paths to cache, or 0 to disable
+	 *            caching
+	 */
+	public void setRouteCacheCapacity(int capacity) {
+		current.updateAndGet(network -> network.withRouteCache(capacity));
+	}
+
+	/**
+	 * @return the route cache of the current version of the network along
+	 *         with its statistics, or null if caching is disabled
+	 */
+	public PathCache getRouteCache() {
+		return current.get().routeCache;
+	}
+
+	private void clearRouteCache() {
+		PathCache cache = current.get().routeCache;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Finds a path between two stations with the current search mode.
+	 * 
+	 * @param network
+	 *            the version of the network to search
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, or null if there is no path
+	 */
+	private int[] findPath(Network network, int start, int end) {
+		// the route table is already a lookup, so it is not worth caching,
+		// but a version reloaded as the mode changed may not have one yet.
+		// It ignores the closures, so its path is only kept if they leave it
+		// alone, and otherwise searched for around them
+		SearchMode mode = searchMode;
+		Closures closures = network.closures();
+		if (mode == SearchMode.ROUTE_TABLE && network.routeTable != null) {
+			int[] path = network.routeTable.path(start, end);
+			if (path == null || !closures.touches(path)) {
+				return path;
+			}
+		}
+
+		// check the cache before searching, and cache what the search found
+		PathCache cache = network.routeCache;
+		int[] path = cache != null ? cache.get(start, end) : null;
+		if (path == null) {
+			int version = closures.version();
+			path = search(network, mode, start, end);
+			if (path != null && cache != null) {
+				cache(cache, closures, version, mode, start, end, path);
+			}
+		}
+		return path;
+	}
+
+	/*
+	 * Caches a path found under a version of the closures in a search mode.
+	 * If either changed since, the cache may already have been cleaned of
+	 * paths the change made stale, so the path is taken out again.
+	 */
+	private void cache(PathCache cache, Closures closures, int version, SearchMode mode, int start, int end,
+			int[] path) {
+		cache.put(start, end, path);
+		if (closures.version() != version || !isCompatible(searchMode, mode)) {
+			cache.remove(start, end);
+		}
+	}
 
-				// store the previously modified station
-				prevNode = node;
+	/**
+	 * Searches for a path between two stations.
+	 * 
+	 * @param network
+	 *            the version of the network to search
+	 * @param mode
+	 *            how to search for the path
+	 * @param start
+	 *            the id of the starting station
+	 * @param end
+	 *            the id of the ending station
+	 * @return the station ids along the path, or null if there is no path
+	 */
+	private int[] search(Network network, SearchMode mode, int start, int end) {
+		CompactGraph graph = network.graph;
+		SearchStatistics statistics;
+		int[] path;
+		// a version reloaded as the mode changed may not have landmarks or a
+		// hierarchy yet
+		if ((mode == SearchMode.LANDMARK && network.landmarks == null)
+				|| (mode == SearchMode.CONTRACTION_HIERARCHY && network.hierarchy == null)) {
+			mode = SearchMode.AUTOMATIC;
+		}
+		switch (mode) {
+		case BIDIRECTIONAL:
+			BreadthFirstSearch bidirectional = BreadthFirstSearch.local();
+			path = bidirectional.bidirectionalPath(graph, start, end);
+			statistics = bidirectional;
+			break;
+		case AUTOMATIC:
+			BreadthFirstSearch automatic = BreadthFirstSearch.local();
+			if (graph.stationCount() >= BIDIRECTIONAL_THRESHOLD) {
+				path = automatic.bidirectionalPath(graph, start, end);
+			} else {
+				path = automatic.path(graph, start, end);
 			}
+			statistics = automatic;
+			break;
+		case PARALLEL:
+			ParallelBreadthFirstSearch parallel = ParallelBreadthFirstSearch.local();
+			path = parallel.path(graph, start, end);
+			statistics = parallel;
+			break;
+		case FASTEST:
+			FastestPathSearch fastest = FastestPathSearch.local();
+			path = fastest.guidedPath(graph, start, end, interchangePenalty);
+			statistics = fastest;
+			break;
+		case LANDMARK:
+			LandmarkSearch guided = LandmarkSearch.local();
+			path = guided.path(graph, network.landmarks, start, end);
+			statistics = guided;
+			break;
+		case CONTRACTION_HIERARCHY:
+			ContractionSearch contracted = ContractionSearch.local();
+			path = contracted.path(network.hierarchy, start, end);
+			// the hierarchy ignores the closures, so a path they touch is
+			// searched for again around them
+			if (path != null && network.closures().touches(path)) {
+				record(contracted);
+				return search(network, SearchMode.AUTOMATIC, start, end);
+			}
+			statistics = contracted;
+			break;
+		case FEWEST_INTERCHANGES:
+			FewestChangesSearch fewest = FewestChangesSearch.local();
+			path = fewest.path(graph, start, end);
+			statistics = fewest;
+			break;
+		default:
+			BreadthFirstSearch search = BreadthFirstSearch.local();
+			path = search.path(graph, start, end);
+			statistics = search;
+			break;
 		}
+		record(statistics);
+		return path;
+	}
 
-		return nodesMap;
+	/*
+	 * Records the work done by the search that just ran, if instrumented.
+	 */
+	private void record(SearchStatistics statistics) {
+		ControllerMetrics recorder = metrics;
+		if (recorder != null) {
+			recorder.recordSearch(statistics);
+		}
 	}
 
 	@Override
 	public String listAllTermini() {
+		CompactGraph graph = current.get().graph;
 		StringBuilder sb = new StringBuilder();
 
 		// iterate through every station line
-		Iterator<Entry<String, String[]>> itr = lineMap.entrySet().iterator();
-		while (itr.hasNext()) {
-			Entry<String, String[]> entry = itr.next();
-
+		for (int line = 0; line < graph.lineCount(); line++) {
 			// add line to buffer
-			sb.append(entry.getKey());
+			sb.append(graph.lineName(line));
 			sb.append(": ");
 
-			// add line's respective stations to buffer
-			String[] stations = entry.getValue();
-			sb.append(stations[0]);
-			sb.append(" <-> ");
-			sb.append(stations[stations.length - 1]);
+			// add line's first and last stations to buffer
+			int stops = graph.stopCount(line);
+			if (stops > 0) {
+				sb.append(graph.stationName(graph.stop(line, 0)));
+				sb.append(" <-> ");
+				sb.append(graph.stationName(graph.stop(line, stops - 1)));
+			}
 
-			if (itr.hasNext()) {
+			if (line < graph.lineCount() - 1) {
 				sb.append("\n");
 			}
 		}
@@ -177,17 +739,23 @@ public class WorkingController implements Controller {
 
 	@Override
 	public String listStationsInLine(String line) {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
 		try {
+			int id = network.line(line);
 			StringBuilder sb = new StringBuilder();
-			sb.append(line);
+			sb.append(id != -1 ? graph.lineName(id) : line);
 			sb.append(": ");
 
-			String[] stations = lineMap.get(line);
-
 			// if the station line exists, concatenate and return the stations
 			// in the line
-			if (stations != null) {
-				sb.append(String.join(" <-> ", stations));
+			if (id != -1) {
+				for (int i = 0; i < graph.stopCount(id); i++) {
+					if (i > 0) {
+						sb.append(" <-> ");
+					}
+					sb.append(graph.stationName(graph.stop(id, i)));
+				}
 				return sb.toString();
 			} else {
 				throw new NoSuchElementException("Station line " + line + " does not exist");
@@ -199,116 +767,552 @@ public class WorkingController implements Controller {
 
 	@Override
 	public String listAllDirectlyConnectedLines(String line) {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
 		try {
-			String[] stations = lineMap.get(line);
+			int id = network.line(line);
 
 			// if station line exists, list all the connected lines
-			if (stations != null) {
-				// find all station nodes in the line
-				List<Node<String, String>> nodes = new ArrayList<Node<String, String>>();
-				for (String station : stations) {
-					nodes.add(nodesMap.get(station));
+			if (id != -1) {
+				// concatenate and return the connected lines
+				StringBuilder sb = new StringBuilder();
+				for (int other : network.lineIndex.connectedLines(id)) {
+					if (sb.length() > 0) {
+						sb.append(", ");
+					}
+					sb.append(graph.lineName(other));
 				}
+				return sb.toString();
+			} else {
+				throw new NoSuchElementException("Station line " + line + " does not exist");
+			}
+		} catch (NoSuchElementException e) {
+			return e.getMessage();
+		}
+	}
 
-				// initialise store of all connected lines
-				Set<String> lines = new HashSet<String>(12);
+	/**
+	 * Lists the interchange stations shared by two lines.
+	 * 
+	 * @param lineA
+	 *            the name of a line
+	 * @param lineB
+	 *            the name of another line
+	 * @return a String representation of the stations shared by both lines
+	 */
+	public String listInterchangesBetween(String lineA, String lineB) {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
+		try {
+			int a = network.line(lineA);
+			int b = network.line(lineB);
 
-				// iterate through every node in the line
-				for (Node<String, String> node : nodes) {
+			// if either of the given lines don't exist throw a suitable
+			// exception
+			if (a == -1) {
+				throw new NoSuchElementException("Station line " + lineA + " does not exist");
+			} else if (b == -1) {
+				throw new NoSuchElementException("Station line " + lineB + " does not exist");
+			}
 
-					// iterate through every edge of the line
-					Set<Edge<String, String>> edges = node.getEdges();
-					for (Edge<String, String> edge : edges) {
-						// store edge's weight (in this case the connection's
-						// line)
-						lines.add(edge.getWeight());
-					}
+			// concatenate and return the shared stations
+			StringBuilder sb = new StringBuilder();
+			for (int station : network.lineIndex.interchanges(a, b)) {
+				if (sb.length() > 0) {
+					sb.append(", ");
 				}
-
-				// remove given line from store as it's useless information
-				lines.remove(line);
-
-				// concatenate and return the connected lines
-				return String.join(", ", lines);
-			} else {
-				throw new NoSuchElementException("Station line " + line + " does not exist");
+				sb.append(graph.stationName(station));
 			}
+			return sb.toString();
 		} catch (NoSuchElementException e) {
 			return e.getMessage();
 		}
 	}
 
-	@SuppressWarnings("finally")
+	/**
+	 * Lists the stations whose names start with a prefix, ignoring case,
+	 * spacing and punctuation, for autocompletion.
+	 * 
+	 * @param prefix
+	 *            the start of a station name
+	 * @param limit
+	 *            the greatest number of stations to list
+	 * @return the names of the stations, in alphabetical order once folded
+	 */
+	public String[] completeStations(String prefix, int limit) {
+		Network network = current.get();
+		return names(network.graph, network.stationNames.complete(prefix, limit));
+	}
+
+	/**
+	 * Lists the stations whose names are within a few typos of a name,
+	 * ignoring case, spacing and punctuation, for suggesting what was meant.
+	 * 
+	 * @param name
+	 *            the name of a station, as given
+	 * @param maxDistance
+	 *            the greatest number of characters inserted, deleted or
+	 *            substituted
+	 * @param limit
+	 *            the greatest number of stations to list
+	 * @return the names of the stations, the closest first
+	 */
+	public String[] suggestStations(String name, int maxDistance, int limit) {
+		Network network = current.get();
+		return names(network.graph, network.stationNames.similar(name, maxDistance, limit));
+	}
+
+	private static String[] names(CompactGraph graph, int[] stations) {
+		String[] names = new String[stations.length];
+		for (int i = 0; i < stations.length; i++) {
+			names[i] = graph.stationName(stations[i]);
+		}
+		return names;
+	}
+
 	@Override
 	public String showPathBetween(String stationA, String stationB) {
-		String output = new String();
-		StringBuilder sb = new StringBuilder();
+		return findPathBetween(stationA, stationB).toString();
+	}
 
-		try {
-			// retrieves the nodes respective to the users inputed station names
-			Node<String, String> start = nodesMap.get(stationA);
-			Node<String, String> end = nodesMap.get(stationB);
-
-			// checks if given stations exist
-			boolean startIsNull = start == null;
-			boolean endIsNull = end == null;
-			// if either of the given stations don't exist throw a suitable
-			// exception
-			if (startIsNull || endIsNull) {
-				if (startIsNull && endIsNull) {
-					throw new NoSuchElementException(
-							"Both " + stationA + " and " + stationB + " stations do not exist");
-				} else if (startIsNull) {
-					throw new NoSuchElementException("Station " + stationA + " does not exist");
-				} else if (endIsNull) {
-					throw new NoSuchElementException("Station " + stationB + " does not exist");
+	/**
+	 * Finds a path between the specified stations with the current search
+	 * mode, without throwing when there is none.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of another station
+	 * @return the stations along the path, or the reason there is no path
+	 */
+	public PathResult findPathBetween(String stationA, String stationB) {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
+
+		// retrieves the ids respective to the users inputed station names,
+		// allowing for differences of case, spacing and small typos
+		int start = network.station(stationA);
+		int end = network.station(stationB);
+		PathResult rejected = reject(graph, stationA, stationB, start, end);
+		if (rejected != null) {
+			return rejected;
+		}
+
+		// find a path between start and end stations
+		int[] path = findPath(network, start, end);
+		if (path == null) {
+			return PathResult.notFound(PathResult.Status.NO_PATH, stationA, stationB);
+		}
+		return found(graph, path);
+	}
+
+	@Override
+	public String[] showPathsBetween(String[] stationsA, String[] stationsB) {
+		PathResult[] results = findPathsBetween(stationsA, stationsB);
+		String[] output = new String[results.length];
+		for (int i = 0; i < results.length; i++) {
+			output[i] = results[i].toString();
+		}
+		return output;
+	}
+
+	@Override
+	public String[] showPathsFrom(String station, String[] destinations) {
+		String[] stations = new String[destinations.length];
+		Arrays.fill(stations, station);
+		return showPathsBetween(stations, destinations);
+	}
+
+	/**
+	 * Finds a path between each of many pairs of stations with the current
+	 * search mode, without throwing when there is none.
+	 * 
+	 * The pairs not answered by the route cache are grouped by their starting
+	 * station. When searching for the fewest stops, each group is answered by
+	 * one breadth-first search that stops once all of the group's ending
+	 * stations are found. The groups are searched in parallel on the common
+	 * fork-join pool.
+	 * 
+	 * @param stationsA
+	 *            the name of the starting station of each pair
+	 * @param stationsB
+	 *            the name of the ending station of each pair, in the same
+	 *            order
+	 * @return the stations along the path, or the reason there is no path, for
+	 *         each pair in the same order
+	 * @throws IllegalArgumentException
+	 *             in case of there not being as many ending stations as
+	 *             starting stations
+	 */
+	public PathResult[] findPathsBetween(String[] stationsA, String[] stationsB) throws IllegalArgumentException {
+		if (stationsA.length != stationsB.length) {
+			throw new IllegalArgumentException(
+					stationsA.length + " starting stations but " + stationsB.length + " ending stations");
+		}
+		Network network = current.get();
+		CompactGraph graph = network.graph;
+		SearchMode mode = searchMode;
+		PathResult[] results = new PathResult[stationsA.length];
+		int[] endIds = new int[stationsB.length];
+
+		// answer what needs no search, grouping the rest by starting station
+		Map<Integer, List<Integer>> groups = new HashMap<Integer, List<Integer>>();
+		for (int i = 0; i < results.length; i++) {
+			int start = network.station(stationsA[i]);
+			int end = network.station(stationsB[i]);
+			endIds[i] = end;
+			results[i] = reject(graph, stationsA[i], stationsB[i], start, end);
+			if (results[i] == null) {
+				int[] path = network.routeCache != null ? network.routeCache.get(start, end) : null;
+				if (path != null) {
+					results[i] = found(graph, path);
+				} else {
+					List<Integer> group = groups.get(start);
+					if (group == null) {
+						group = new ArrayList<Integer>();
+						groups.put(start, group);
+					}
+					group.add(i);
 				}
-			} else {
-				// find a path between start and end stations
-				List<Edge<String, String>> path = Node.bfs(start, end);
-
-				// start output with starting node
-				sb.append(start.toString());
-
-				// check if path is empty (i.e. start station and end station is
-				// the same)
-				if (!path.isEmpty()) {
-					// store previous node of iteration, initialise with start
-					// node
-					Node<String, String> prevNode = start;
-					// append a separator string
-					sb.append(" -> ");
-
-					// iterate through edges in path
-					Iterator<Edge<String, String>> itr = path.iterator();
-					while (itr.hasNext()) {
-						// store next edge of the path
-						Edge<String, String> edge = itr.next();
-						// retrieve the other node of the edge by passing the
-						// known previous node
-						Node<String, String> node = edge.getNode(prevNode);
-
-						// append connecting node to output
-						sb.append(node.getContent());
-
-						// if there are more edges to add, append a separator
-						// string to output
-						if (itr.hasNext()) {
-							sb.append(" -> ");
-						}
+			}
+		}
 
-						// store current node as previous node
-						prevNode = node;
+		// search every group in parallel, each writing only its own results
+		groups.entrySet().parallelStream().forEach(group -> {
+			int start = group.getKey();
+			List<Integer> pairs = group.getValue();
+			int[] ends = new int[pairs.size()];
+			for (int k = 0; k < ends.length; k++) {
+				ends[k] = endIds[pairs.get(k)];
+			}
+
+			int[][] paths;
+			if (mode == SearchMode.BREADTH_FIRST || mode == SearchMode.BIDIRECTIONAL
+					|| mode == SearchMode.AUTOMATIC || mode == SearchMode.PARALLEL) {
+				BreadthFirstSearch search = BreadthFirstSearch.local();
+				int version = network.closures().version();
+				paths = search.paths(graph, start, ends);
+				record(search);
+				if (network.routeCache != null) {
+					for (int k = 0; k < ends.length; k++) {
+						if (paths[k] != null) {
+							cache(network.routeCache, network.closures(), version, mode, start, ends[k],
+									paths[k]);
+						}
 					}
 				}
+			} else {
+				paths = new int[ends.length][];
+				for (int k = 0; k < ends.length; k++) {
+					paths[k] = findPath(network, start, ends[k]);
+				}
+			}
 
-				output = sb.toString();
+			for (int k = 0; k < ends.length; k++) {
+				int i = pairs.get(k);
+				results[i] = paths[k] != null ? found(graph, paths[k])
+						: PathResult.notFound(PathResult.Status.NO_PATH, stationsA[i], stationsB[i]);
 			}
-		} catch (NoSuchElementException e) {
-			output = e.getMessage();
-		} finally {
-			return output;
+		});
+
+		return results;
+	}
+
+	/**
+	 * Lists up to k alternative paths between the specified stations, the
+	 * fewest stops first, searching for at most 100 milliseconds.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of another station
+	 * @param k
+	 *            the greatest number of paths to list
+	 * @return a String representation of every path with its stops and
+	 *         interchanges, one per line, or the reason there is none
+	 */
+	public String showAlternativePaths(String stationA, String stationB, int k) {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
+		int start = network.station(stationA);
+		int end = network.station(stationB);
+		PathResult rejected = reject(graph, stationA, stationB, start, end);
+		if (rejected != null) {
+			return rejected.toString();
+		}
+
+		AlternativePathSearch search = AlternativePathSearch.local();
+		int[][] paths = search.paths(graph, start, end, k, AlternativePathSearch.Ranking.HOPS, Long.MAX_VALUE,
+				DEFAULT_ALTERNATIVES_TIMEOUT * 1000000);
+		record(search);
+		if (paths.length == 0) {
+			return PathResult.notFound(PathResult.Status.NO_PATH, stationA, stationB).toString();
+		}
+		int[] stops = search.lastStops();
+		int[] changes = search.lastChanges();
+		StringBuilder sb = new StringBuilder(256 * paths.length);
+		for (int p = 0; p < paths.length; p++) {
+			if (p > 0) {
+				sb.append("\n");
+			}
+			sb.append(p + 1).append(". (").append(stops[p]).append(" stops, ").append(changes[p])
+					.append(" interchanges) ");
+			sb.append(found(graph, paths[p]));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Finds up to k alternative loopless paths between the specified
+	 * stations, the shortest first, without throwing when there is none.
+	 * 
+	 * Once the budget runs out, the paths found so far are made up to k with
+	 * the best others found on the way, which may not be the next shortest.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of another station
+	 * @param k
+	 *            the greatest number of paths to find
+	 * @param ranking
+	 *            whether to rank the paths by stops or by interchanges
+	 * @param timeoutMillis
+	 *            the greatest number of milliseconds to search for
+	 * @param maxExpanded
+	 *            the greatest number of stations or slots to expand over all
+	 *            the searches run
+	 * @return the stations along every path, or a single result giving the
+	 *         reason there is no path, which is also given if the budget ran
+	 *         out before any path was found
+	 */
+	public PathResult[] findAlternativePaths(String stationA, String stationB, int k,
+			AlternativePathSearch.Ranking ranking, long timeoutMillis, long maxExpanded) {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
+		int start = network.station(stationA);
+		int end = network.station(stationB);
+		PathResult rejected = reject(graph, stationA, stationB, start, end);
+		if (rejected != null) {
+			return new PathResult[] { rejected };
+		}
+
+		AlternativePathSearch search = AlternativePathSearch.local();
+		int[][] paths = search.paths(graph, start, end, k, ranking, maxExpanded,
+				Math.min(timeoutMillis, Long.MAX_VALUE / 1000000) * 1000000);
+		record(search);
+		if (paths.length == 0) {
+			return new PathResult[] { PathResult.notFound(PathResult.Status.NO_PATH, stationA, stationB) };
+		}
+		PathResult[] results = new PathResult[paths.length];
+		for (int p = 0; p < paths.length; p++) {
+			results[p] = found(graph, paths[p]);
+		}
+		return results;
+	}
+
+	/**
+	 * Lists the journey arriving earliest at a station when leaving another
+	 * at a time, along the trips of the timetable, one trip per line, each
+	 * with the times it is boarded and left.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of another station
+	 * @param departure
+	 *            the seconds since midnight from which to leave the first
+	 *            station
+	 * @return a String representation of the journey, or the reason there is
+	 *         none
+	 * @throws IllegalStateException
+	 *             in case of no timetable being loaded
+	 */
+	public String showEarliestArrival(String stationA, String stationB, int departure) throws IllegalStateException {
+		return findEarliestArrival(stationA, stationB, departure, DEFAULT_MAX_TRIPS - 1).toString();
+	}
+
+	/**
+	 * Finds the journey arriving earliest at a station when leaving another
+	 * at a time, along the trips of the timetable, without throwing when
+	 * there is none.
+	 * 
+	 * @param stationA
+	 *            the name of a station
+	 * @param stationB
+	 *            the name of another station
+	 * @param departure
+	 *            the seconds since midnight from which to leave the first
+	 *            station
+	 * @param maxChanges
+	 *            the greatest number of changes between trips
+	 * @return the trips taken, or the reason there is no journey, which is
+	 *         also given if it would take more changes or no trip runs late
+	 *         enough that day
+	 * @throws IllegalStateException
+	 *             in case of no timetable being loaded
+	 */
+	public Journey findEarliestArrival(String stationA, String stationB, int departure, int maxChanges)
+			throws IllegalStateException {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
+		Timetable timetable = network.timetable;
+		if (timetable == null) {
+			throw new IllegalStateException("No timetable is loaded");
+		}
+		int start = network.station(stationA);
+		int end = network.station(stationB);
+		PathResult rejected = reject(graph, stationA, stationB, start, end);
+		if (rejected != null) {
+			return Journey.notFound(rejected.getStatus(), stationA, stationB);
+		}
+
+		RaptorSearch search = RaptorSearch.local();
+		int[] path = search.path(timetable, start, end, departure, Math.max(maxChanges, 0) + 1,
+				interchangePenalty);
+		record(search);
+		if (path == null) {
+			return Journey.notFound(PathResult.Status.NO_PATH, stationA, stationB);
+		}
+
+		// split the journey into a leg per trip, each starting where the
+		// last one was left
+		int[] lines = search.lastLines();
+		int[] legs = search.lastLegs();
+		int[] departures = search.lastDepartures();
+		int[] arrivals = search.lastArrivals();
+		Journey.Leg[] trips = new Journey.Leg[search.lastTrips()];
+		for (int i = 0, from = 0; i < lines.length; i++) {
+			if (i == lines.length - 1 || legs[i + 1] != legs[i]) {
+				String[] names = new String[i + 2 - from];
+				for (int j = 0; j < names.length; j++) {
+					names[j] = graph.stationName(path[from + j]);
+				}
+				trips[legs[i]] = new Journey.Leg(graph.lineName(lines[i]), names, departures[from], arrivals[i]);
+				from = i + 1;
+			}
+		}
+		return Journey.found(graph.stationName(start), graph.stationName(end), trips);
+	}
+
+	/*
+	 * Names the stations along a path.
+	 */
+	private static PathResult found(CompactGraph graph, int[] path) {
+		String[] names = new String[path.length];
+		for (int i = 0; i < path.length; i++) {
+			names[i] = graph.stationName(path[i]);
+		}
+		return PathResult.found(names);
+	}
+
+	@Override
+	public String showPathWithFewestInterchanges(String stationA, String stationB) {
+		Network network = current.get();
+		CompactGraph graph = network.graph;
+		int start = network.station(stationA);
+		int end = network.station(stationB);
+		PathResult rejected = reject(graph, stationA, stationB, start, end);
+		if (rejected != null) {
+			return rejected.toString();
+		}
+
+		// find the path along with the line of every segment, which is not
+		// cached as the lines are needed as well
+		FewestChangesSearch search = FewestChangesSearch.local();
+		int[] path = search.path(graph, start, end);
+		record(search);
+		if (path == null) {
+			return PathResult.notFound(PathResult.Status.NO_PATH, stationA, stationB).toString();
+		}
+		int[] lines = path.length > 1 ? search.lastLines(graph) : new int[0];
+
+		// start a new leg of the journey on every change of line, the
+		// interchange station ending one leg and starting the next
+		StringBuilder sb = new StringBuilder(256);
+		if (lines.length == 0) {
+			sb.append(graph.stationName(start));
+		}
+		for (int i = 0; i < lines.length; i++) {
+			if (i == 0 || lines[i] != lines[i - 1]) {
+				if (i > 0) {
+					sb.append("\n");
+				}
+				sb.append(graph.lineName(lines[i]));
+				sb.append(": ");
+				sb.append(graph.stationName(path[i]));
+			}
+			sb.append(" -> ");
+			sb.append(graph.stationName(path[i + 1]));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public Reachability findStationsWithin(String[] stations, int maxStops) throws IllegalArgumentException {
+		return findReachable(stations, maxStops, false);
+	}
+
+	@Override
+	public Reachability findStationsWithinInterchanges(String[] stations, int maxInterchanges)
+			throws IllegalArgumentException {
+		return findReachable(stations, maxInterchanges, true);
+	}
+
+	/*
+	 * Looks up the stations to start from, then finds every station within a
+	 * number of stops or changes of them.
+	 */
+	private Reachability findReachable(String[] stations, int budget, boolean changes)
+			throws IllegalArgumentException {
+		if (budget < 0) {
+			throw new IllegalArgumentException(
+					(changes ? "Interchanges" : "Stops") + " must not be negative: " + budget);
+		}
+		Network network = current.get();
+		int[] sources = new int[stations.length];
+		for (int i = 0; i < stations.length; i++) {
+			sources[i] = network.station(stations[i]);
+			if (sources[i] == -1) {
+				return Reachability.unknown(stations[i]);
+			}
+		}
+
+		ReachabilitySearch search = ReachabilitySearch.local();
+		int[] found = changes ? search.withinChanges(network.graph, sources, budget)
+				: search.withinStops(network.graph, sources, budget);
+		record(search);
+		return Reachability.found(network.graph, found, search.lastDistances());
+	}
+
+	/**
+	 * Rejects a query between stations that do not exist, or that are in
+	 * different components of the network and so can never be connected,
+	 * without running any search.
+	 * 
+	 * @param graph
+	 *            the graph the stations were looked up in
+	 * @param stationA
+	 *            the name of the starting station
+	 * @param stationB
+	 *            the name of the ending station
+	 * @param start
+	 *            the id of the starting station, or -1 if it does not exist
+	 * @param end
+	 *            the id of the ending station, or -1 if it does not exist
+	 * @return the reason there is no path, or null if a search is needed
+	 */
+	private static PathResult reject(CompactGraph graph, String stationA, String stationB, int start, int end) {
+		if (start == -1 && end == -1) {
+			return PathResult.notFound(PathResult.Status.UNKNOWN_STATIONS, stationA, stationB);
+		} else if (start == -1) {
+			return PathResult.notFound(PathResult.Status.UNKNOWN_START, stationA, stationB);
+		} else if (end == -1) {
+			return PathResult.notFound(PathResult.Status.UNKNOWN_END, stationA, stationB);
+		} else if (!graph.isConnected(start, end)) {
+			return PathResult.notFound(PathResult.Status.NO_PATH, stationA, stationB);
 		}
+		return null;
 	}
 
 }
\ No newline at end of file
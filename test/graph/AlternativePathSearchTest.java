@@ -0,0 +1,32 @@
+package graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import graph.AlternativePathSearch.Ranking;
+
+public class AlternativePathSearchTest {
+
+	@Test
+	public void ranksByInterchangesWithMoreLinesThanStations() {
+		// three parallel lines between the same two stations
+		Map<String, String[]> lineMap = new LinkedHashMap<String, String[]>();
+		lineMap.put("East", new String[] { "A", "B" });
+		lineMap.put("West", new String[] { "A", "B" });
+		lineMap.put("North", new String[] { "A", "B" });
+		CompactGraph graph = CompactGraph.fromLines(lineMap);
+
+		AlternativePathSearch search = AlternativePathSearch.local();
+		int[][] paths = search.paths(graph, 0, 1, 3, Ranking.INTERCHANGES);
+
+		// the same route on parallel lines is only offered once
+		assertEquals(1, paths.length);
+		assertArrayEquals(new int[] { 0, 1 }, paths[0]);
+		assertEquals(0, search.lastChanges()[0]);
+	}
+}
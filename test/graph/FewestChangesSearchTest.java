@@ -0,0 +1,24 @@
+package graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class FewestChangesSearchTest {
+
+	@Test
+	public void pathToItselfHasNoChanges() {
+		Map<String, String[]> lineMap = new LinkedHashMap<String, String[]>();
+		lineMap.put("East", new String[] { "A", "B", "C" });
+		CompactGraph graph = CompactGraph.fromLines(lineMap);
+
+		FewestChangesSearch search = FewestChangesSearch.local();
+		assertArrayEquals(new int[] { 1 }, search.path(graph, 1, 1));
+		assertEquals(0, search.lastChanges());
+		assertArrayEquals(new int[0], search.lastLines(graph));
+	}
+}
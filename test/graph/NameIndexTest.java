@@ -0,0 +1,24 @@
+package graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class NameIndexTest {
+
+	@Test
+	public void resolvesLooselyGivenNames() {
+		NameIndex index = new NameIndex(new String[] { "Mong Kok", "Tsim Sha Tsui", "Admiralty" });
+		assertEquals(0, index.resolve("MONG-KOK"));
+		assertEquals(1, index.resolve("tsim sha tsiu"));
+		assertEquals(-1, index.resolve("Central"));
+	}
+
+	@Test
+	public void namesFoldingToTheSameKeyAreAmbiguous() {
+		NameIndex index = new NameIndex(new String[] { "Mong Kok", "Mongkok", "Admiralty" });
+		assertEquals(-1, index.resolve("mong kok"));
+		assertEquals(-1, index.resolve("Mongkokk"));
+		assertEquals(2, index.resolve("admiralty"));
+	}
+}
@@ -0,0 +1,75 @@
+package graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PathCacheTest {
+
+	@Test
+	public void answersBothDirections() {
+		PathCache cache = new PathCache(4);
+		cache.put(3, 7, new int[] { 3, 5, 7 });
+		assertArrayEquals(new int[] { 3, 5, 7 }, cache.get(3, 7));
+		assertArrayEquals(new int[] { 7, 5, 3 }, cache.get(7, 3));
+		assertNull(cache.get(3, 5));
+	}
+
+	@Test
+	public void fillsFreedSlotsBeforeEvicting() {
+		PathCache cache = new PathCache(4);
+		for (int i = 0; i < 4; i++) {
+			cache.put(i, i + 10, new int[] { i, i + 10 });
+		}
+		cache.remove(1, 11);
+		cache.removePaths(path -> path[0] == 2);
+		cache.put(5, 15, new int[] { 5, 15 });
+		cache.put(6, 16, new int[] { 6, 16 });
+		assertEquals(0, cache.evictions());
+		assertEquals(4, cache.size());
+		cache.put(7, 17, new int[] { 7, 17 });
+		assertEquals(1, cache.evictions());
+		assertEquals(4, cache.size());
+	}
+
+	@Test
+	public void keepsEveryCachedPathReachable() {
+		// few stations and a small capacity, so keys collide and removals
+		// shift many entries back
+		Random random = new Random(42);
+		PathCache cache = new PathCache(13);
+		int stations = 24;
+		for (int op = 0; op < 200000; op++) {
+			int start = random.nextInt(stations);
+			int end = random.nextInt(stations);
+			int kind = random.nextInt(4);
+			if (kind == 0) {
+				cache.remove(start, end);
+				assertNull(cache.get(start, end));
+			} else if (kind == 1 && op % 100 == 0) {
+				cache.removePaths(path -> path[0] % 5 == start % 5);
+			} else {
+				cache.put(start, end, new int[] { start, end });
+				assertArrayEquals(new int[] { start, end }, cache.get(start, end));
+			}
+		}
+
+		int found = 0;
+		for (int a = 0; a < stations; a++) {
+			for (int b = a; b < stations; b++) {
+				int[] path = cache.get(a, b);
+				if (path != null) {
+					assertArrayEquals(new int[] { a, b }, path);
+					found++;
+				}
+			}
+		}
+		assertEquals(cache.size(), found);
+		assertTrue(cache.size() <= cache.capacity());
+	}
+}